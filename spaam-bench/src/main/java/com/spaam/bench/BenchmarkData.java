@@ -0,0 +1,53 @@
+/**************************************************************************************
+ * This file contains the shared JMH state of the solver benchmarks: a synthetic set
+ * of screen-world correspondence pairs of the requested size.
+ *************************************************************************************/
+
+package com.spaam.bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.spaam.util.CorrespondenceBuffer;
+import com.spaam.util.SyntheticCalibration;
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+/*******************************************************************************
+ * The pairs are generated by SyntheticCalibration from a fixed pinhole
+ * projection of the 960x540 Moverio screen (focal length 1100px), with
+ * world points 250 to 700mm in front of the eye and 1 pixel of alignment
+ * noise. The generator is seeded so every run (and every fork) benchmarks
+ * exactly the same data.
+ ******************************************************************************/
+@State(Scope.Benchmark)
+public class BenchmarkData {
+	public static final long SEED = 0x5350414dL;
+
+	@Param({"6", "20", "100", "1000", "10000", "100000"})
+	public int n;
+
+	//The pairs in the structure of arrays layout used by the solvers//
+	public CorrespondenceBuffer points;
+
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		final double[] identity = { 1, 0, 0, 0, 1, 0, 0, 0, 1 };
+		final SyntheticCalibration generator = new SyntheticCalibration(
+				SyntheticCalibration.fromIntrinsics(1100.0, 1100.0, 480.0, 270.0, identity, new double[3]), SEED);
+		points = new CorrespondenceBuffer(n);
+		generator.generate(points, n, null);
+	}
+
+	//Returns a solver holding all of the generated pairs//
+	public SPAAM_SVD newSolver()
+	{
+		final SPAAM_SVD svd = new SPAAM_SVD();
+		for ( int i = 0; i < points.size(); i++ )
+			svd.addCorrespondence(points.worldX(i), points.worldY(i), points.worldZ(i), points.screenX(i), points.screenY(i));
+		return svd;
+	}
+}
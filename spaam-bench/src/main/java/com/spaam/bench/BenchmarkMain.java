@@ -0,0 +1,37 @@
+/**************************************************************************************
+ * This file contains the entry point of the benchmarks jar. It runs the JMH suite
+ * with the gc profiler enabled so the allocation rate of every solver is reported
+ * next to its throughput and latency.
+ *************************************************************************************/
+
+package com.spaam.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*******************************************************************************
+ * Usage: java -jar target/benchmarks.jar [regular JMH options]
+ *
+ * e.g. "-p n=6,100" to limit the data set sizes or "dltPrimitive" to run a
+ * single benchmark. The results are also written to spaam-bench.json so two
+ * runs can be compared.
+ ******************************************************************************/
+public class BenchmarkMain {
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException
+	{
+		final CommandLineOptions cmd = new CommandLineOptions(args);
+		final Options options = new OptionsBuilder()
+				.parent(cmd)
+				.addProfiler(GCProfiler.class)
+				.resultFormat(cmd.getResultFormat().hasValue() ? cmd.getResultFormat().get() : ResultFormatType.JSON)
+				.result(cmd.getResult().hasValue() ? cmd.getResult().get() : "spaam-bench.json")
+				.build();
+		new Runner(options).run();
+	}
+}
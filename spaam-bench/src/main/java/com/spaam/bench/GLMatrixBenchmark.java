@@ -0,0 +1,86 @@
+/**************************************************************************************
+ * This file contains the JMH benchmarks of the conversion of a SPAAM result into the
+ * OpenGL projection (BuildGLMatrix3x4( ) and the fused GLProjection.buildProjection( )).
+ *************************************************************************************/
+
+package com.spaam.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.spaam.util.GLProjection;
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+/*******************************************************************************
+ * The conversion does not depend on the number of pairs, so it is timed
+ * once on the result of a 100 pair solve.
+ ******************************************************************************/
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class GLMatrixBenchmark {
+	SPAAM_SVD svd;
+	final double[] projection = new double[12];
+	final float[] glMatrix = new float[16];
+	final FloatBuffer glBuffer = ByteBuffer.allocateDirect(16 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		final BenchmarkData data = new BenchmarkData();
+		data.n = 100;
+		data.generate();
+		svd = data.newSolver();
+		svd.projectionDLTPrimitive();
+		svd.getProjection(projection);
+	}
+
+	@Benchmark
+	public double[] buildGLMatrix()
+	{
+		//Same clip planes and screen as the renderer//
+		svd.BuildGLMatrix3x4(.1, 100.0, 960, 0, 540, 0);
+		return svd.projMat3x4;
+	}
+
+	//Old path of the renderer: build into projMat3x4, then cast every element to float//
+	@Benchmark
+	public float[] buildGLMatrixToFloat()
+	{
+		svd.BuildGLMatrix3x4(.1, 100.0, 960, 0, 540, 0);
+		for ( int i = 0; i < 16; i++ )
+			glMatrix[i] = (float)svd.projMat3x4[i];
+		return glMatrix;
+	}
+
+	@Benchmark
+	public float[] buildProjectionFloat()
+	{
+		GLProjection.buildProjection(projection, 0, 960, 540, 0, .1, 100.0, glMatrix, 0);
+		return glMatrix;
+	}
+
+	@Benchmark
+	public FloatBuffer buildProjectionBuffer()
+	{
+		GLProjection.buildProjection(projection, 0, 960, 540, 0, .1, 100.0, glBuffer);
+		return glBuffer;
+	}
+}
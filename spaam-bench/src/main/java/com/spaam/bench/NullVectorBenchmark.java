@@ -0,0 +1,110 @@
+/**************************************************************************************
+ * This file contains the JMH benchmarks of the null vector step of the DLT: the Jama
+ * thin SVD of the design matrix against the eigen solves of the 12x12 normal matrix.
+ *************************************************************************************/
+
+package com.spaam.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Jama.Matrix;
+
+import com.spaam.util.DLTMath;
+import com.spaam.util.PointStatistics;
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+/*******************************************************************************
+ * The normalized design matrix A of the benchmark data and its normal matrix
+ * A^T A are built once. Each benchmark copies its input if the decomposition
+ * works in place and returns the decomposition result.
+ ******************************************************************************/
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class NullVectorBenchmark {
+
+	@State(Scope.Thread)
+	public static class Input {
+		Matrix design;
+		final double[] gram = new double[144];
+		final double[] work = new double[144];
+		final double[] v = new double[144];
+		final double[] d = new double[12];
+		final double[] factor = new double[144];
+		final double[] y = new double[12];
+		final double[] nullVector = new double[12];
+
+		@Setup(Level.Trial)
+		public void setup(BenchmarkData data)
+		{
+			final SPAAM_SVD svd = data.newSolver();
+			final PointStatistics statistics = svd.getConditioning().getStatistics();
+
+			final int n = data.points.size();
+			final double[] rows = new double[24];
+			design = new Matrix(2 * n, 12);
+			for ( int i = 0; i < n; i++ )
+			{
+				DLTMath.fillDesignRows(rows, 0,
+						( data.points.worldX(i) - statistics.worldMean(0) ) / statistics.worldStdDev(0),
+						( data.points.worldY(i) - statistics.worldMean(1) ) / statistics.worldStdDev(1),
+						( data.points.worldZ(i) - statistics.worldMean(2) ) / statistics.worldStdDev(2),
+						( data.points.screenX(i) - statistics.screenMean(0) ) / statistics.screenStdDev(0),
+						( data.points.screenY(i) - statistics.screenMean(1) ) / statistics.screenStdDev(1));
+				for ( int c = 0; c < 12; c++ )
+				{
+					design.set(2 * i, c, rows[c]);
+					design.set(2 * i + 1, c, rows[12 + c]);
+				}
+				for ( int r = 0; r < 12; r++ )
+					for ( int c = 0; c < 12; c++ )
+						gram[r * 12 + c] += rows[r] * rows[c] + rows[12 + r] * rows[12 + c];
+			}
+		}
+	}
+
+	//The projectionDLTImpl( ) step: thin SVD of the 2N x 12 design matrix//
+	@Benchmark
+	public Matrix jamaSvd(Input in)
+	{
+		return in.design.svd().getV();
+	}
+
+	//Jama's symmetric eigen decomposition of the normal matrix//
+	@Benchmark
+	public Matrix jamaEigen(Input in)
+	{
+		return new Matrix(in.gram, 12).eig().getV();
+	}
+
+	//The cyclic Jacobi of DLTMath (all eigen pairs, used by the covariance and validation)//
+	@Benchmark
+	public double[] jacobi(Input in)
+	{
+		System.arraycopy(in.gram, 0, in.work, 0, 144);
+		DLTMath.symmetricEigen(in.work, 12, in.v, in.d);
+		return in.v;
+	}
+
+	//The fixed size inverse iteration used by the incremental solve (null vector only)//
+	@Benchmark
+	public double[] inverseIteration(Input in)
+	{
+		DLTMath.nullVector12(in.gram, in.factor, in.y, in.nullVector);
+		return in.nullVector;
+	}
+}
@@ -0,0 +1,167 @@
+/**************************************************************************************
+ * This file contains the JMH benchmarks of the SPAAM solve pipeline. Every solver
+ * variant of SPAAM_SVD is timed side by side on the same synthetic data sets.
+ *************************************************************************************/
+
+package com.spaam.bench;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Jama.Matrix;
+
+import com.spaam.util.RansacEstimator;
+import com.spaam.util.ReprojectionRefiner;
+import com.spaam.util.TsqrSolver;
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+/*******************************************************************************
+ * Benchmarks which return the solver's Proj3x4 (or its normalization state)
+ * so JMH keeps the work alive. Run through BenchmarkMain to also get the
+ * allocation rate per operation (the gc profiler).
+ ******************************************************************************/
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class SolverBenchmark {
+
+	//Per thread solver loaded with the benchmark data//
+	@State(Scope.Thread)
+	public static class Solver {
+		SPAAM_SVD svd;
+		RansacEstimator ransac;
+		ReprojectionRefiner refiner;
+		TsqrSolver tsqr;
+		TsqrSolver tsqrParallel;
+		ExecutorService executor;
+		double[] initial = new double[12];
+		double[] worldShift = new double[3], worldScale = new double[3];
+		double[] screenShift = new double[2], screenScale = new double[2];
+
+		@Setup(Level.Trial)
+		public void setup(BenchmarkData data)
+		{
+			svd = data.newSolver();
+
+			ransac = new RansacEstimator();
+			ransac.setSeed(BenchmarkData.SEED);
+			ransac.setParallelism(1);
+
+			refiner = new ReprojectionRefiner();
+
+			tsqr = new TsqrSolver();
+			tsqr.setParallelism(1);
+			executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+			tsqrParallel = new TsqrSolver();
+			tsqrParallel.setChunkSize(Math.max(6, data.points.size() / ( 4 * Runtime.getRuntime().availableProcessors() )));
+			tsqrParallel.setExecutor(executor);
+
+			////the refinement always starts from the plain DLT result////
+			svd.projectionDLTPrimitive();
+			for ( int r = 0; r < 3; r++ )
+				for ( int c = 0; c < 4; c++ )
+					initial[r * 4 + c] = svd.Proj3x4.get(r, c);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown()
+		{
+			executor.shutdown();
+		}
+	}
+
+	////Normalization////
+
+	//The shift and scale the primitive solves read from the running point statistics//
+	@Benchmark
+	public double[] normalization(Solver s)
+	{
+		s.svd.getConditioning().getStatistics().normalization(s.worldShift, s.worldScale, s.screenShift, s.screenScale);
+		return s.worldScale;
+	}
+
+	////Linear solves////
+
+	@Benchmark
+	public Matrix dltJama(Solver s)
+	{
+		s.svd.projectionDLTImpl();
+		return s.svd.Proj3x4;
+	}
+
+	@Benchmark
+	public Matrix dltPrimitive(Solver s)
+	{
+		s.svd.projectionDLTPrimitive();
+		return s.svd.Proj3x4;
+	}
+
+	//Solve from normal equations which are already up to date (the per tap cost)//
+	@Benchmark
+	public Matrix dltIncremental(Solver s)
+	{
+		s.svd.projectionDLTIncremental();
+		return s.svd.Proj3x4;
+	}
+
+	//Solve after the normal equations have to be rebuilt from all pairs//
+	@Benchmark
+	public Matrix dltIncrementalRebuild(Solver s, BenchmarkData data)
+	{
+		s.svd.clearCorrespondences();
+		s.svd.corr_points.addAll(data.points);
+		s.svd.projectionDLTIncremental();
+		return s.svd.Proj3x4;
+	}
+
+	//Chunked tall-skinny QR on the calling thread//
+	@Benchmark
+	public Matrix dltTsqr(Solver s)
+	{
+		s.svd.projectionDLTTsqr(s.tsqr);
+		return s.svd.Proj3x4;
+	}
+
+	//Chunked tall-skinny QR with the chunks factored on all cores//
+	@Benchmark
+	public Matrix dltTsqrParallel(Solver s)
+	{
+		s.svd.projectionDLTTsqr(s.tsqrParallel);
+		return s.svd.Proj3x4;
+	}
+
+	////Robust estimation and refinement////
+
+	@Benchmark
+	public Matrix dltRobust(Solver s)
+	{
+		s.svd.projectionDLTRobust(s.ransac);
+		return s.svd.Proj3x4;
+	}
+
+	@Benchmark
+	public Matrix refine(Solver s)
+	{
+		for ( int r = 0; r < 3; r++ )
+			for ( int c = 0; c < 4; c++ )
+				s.svd.Proj3x4.set(r, c, s.initial[r * 4 + c]);
+		s.svd.refineProjection(s.refiner);
+		return s.svd.Proj3x4;
+	}
+}
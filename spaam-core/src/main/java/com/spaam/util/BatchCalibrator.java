@@ -0,0 +1,285 @@
+/**************************************************************************************
+ * This file contains the BatchCalibrator which solves many independent calibration
+ * sessions (e.g. one per eye per participant of a user study) concurrently and streams
+ * the results to a sink as they complete.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+/*******************************************************************************
+ * SPAAM_SVD exposes mutable state (Proj3x4, projMat3x4, corr_points) and is not
+ * thread safe, so the batch relies on confinement. Every session gets its own
+ * SPAAM_SVD when it is added, whose corr_points are filled directly from the
+ * caller's pairs (the only copy of the session). During a run each solver is
+ * only touched by the one task solving its session, which also creates its
+ * own refiner and hands back an immutable Result holding a copy of the
+ * projection. No solver is shared between the tasks or with the caller.
+ *
+ * The tasks run on the configured executor (or on the calling thread if no
+ * executor is set). Results are passed to the sink on the calling thread in
+ * the order the tasks complete, so the sink does not need to be thread safe.
+ * The projection of a session does not depend on the executor or on the order
+ * of completion.
+ *
+ * An instance is not thread safe, add the sessions and run the batch from one
+ * thread.
+ ******************************************************************************/
+public class BatchCalibrator {
+
+	/********************************************************************
+	 * Receives the result of every session as soon as it is solved.
+	 *******************************************************************/
+	public interface Sink {
+		void accept(Result result);
+	}
+
+	/********************************************************************
+	 * Immutable result of one session.
+	 *******************************************************************/
+	public static final class Result {
+		private final String id;
+		private final int index;
+		private final int pairs;
+		private final boolean solved;
+		private final double[] projection;
+		private final double rms;
+		private final long solveNanos;
+
+		Result(String id, int index, int pairs, boolean solved, double[] projection, double rms, long solveNanos)
+		{
+			this.id = id;
+			this.index = index;
+			this.pairs = pairs;
+			this.solved = solved;
+			this.projection = projection;
+			this.rms = rms;
+			this.solveNanos = solveNanos;
+		}
+
+		//Identifier passed to add( ), e.g. the session file name//
+		public String getId() { return id; }
+		//Position of the session in the batch//
+		public int getIndex() { return index; }
+		public int getPairs() { return pairs; }
+		//false if the session has too few or too poorly spread pairs to solve//
+		public boolean isSolved() { return solved; }
+		//RMS reprojection error (pixels) over the pairs of the session, NaN if not solved//
+		public double getRms() { return rms; }
+		public long getSolveNanos() { return solveNanos; }
+
+		//Element (r, c) of the 3x4 projection, 0 if not solved//
+		public double getProjection(int r, int c) { return projection[r * 4 + c]; }
+
+		//Copies the 3x4 projection (row major) into result//
+		public void getProjection(double[] result)
+		{
+			System.arraycopy(projection, 0, result, 0, 12);
+		}
+	}
+
+	/********************************************************************
+	 * Aggregate throughput of one run( ).
+	 *******************************************************************/
+	public static final class Statistics {
+		private final int sessions;
+		private final int solved;
+		private final long pairs;
+		private final long wallNanos;
+		private final long busyNanos;
+
+		Statistics(int sessions, int solved, long pairs, long wallNanos, long busyNanos)
+		{
+			this.sessions = sessions;
+			this.solved = solved;
+			this.pairs = pairs;
+			this.wallNanos = wallNanos;
+			this.busyNanos = busyNanos;
+		}
+
+		public int getSessions() { return sessions; }
+		public int getSolved() { return solved; }
+		public long getPairs() { return pairs; }
+		//Wall clock time of the whole batch//
+		public long getWallNanos() { return wallNanos; }
+		//Sum of the solve times of all sessions//
+		public long getBusyNanos() { return busyNanos; }
+
+		public double sessionsPerSecond() { return wallNanos > 0 ? sessions * 1e9 / wallNanos : 0.0; }
+		public double pairsPerSecond() { return wallNanos > 0 ? pairs * 1e9 / wallNanos : 0.0; }
+		//Mean solve time of a session in milliseconds//
+		public double meanSolveMillis() { return sessions > 0 ? busyNanos * 1e-6 / sessions : 0.0; }
+		//Busy to wall time, the number of sessions solved in parallel on average//
+		public double concurrency() { return wallNanos > 0 ? (double) busyNanos / wallNanos : 0.0; }
+	}
+
+	////Configuration////
+	private ExecutorService executor = null;
+	private boolean refine = false;
+
+	////Sessions (one private solver each)////
+	private final List<String> ids = new ArrayList<String>();
+	private final List<SPAAM_SVD> sessions = new ArrayList<SPAAM_SVD>();
+
+	//Default Constructor that does nothing//
+	public BatchCalibrator()
+	{	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Configuration////
+
+	//Executor the sessions are solved on, null solves them one after the other on the calling thread//
+	public void setExecutor(ExecutorService executor) { this.executor = executor; }
+
+	//Refine every DLT result with a ReprojectionRefiner//
+	public void setRefine(boolean refine) { this.refine = refine; }
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	/*************************************************************
+	 * @param id - identifier reported with the result
+	 * @param points - pairs of the session, copied so the caller may reuse the buffer
+	 * Adds a session to the batch and returns its index
+	 ************************************************************/
+	public int add(String id, CorrespondenceBuffer points)
+	{
+		final SPAAM_SVD svd = new SPAAM_SVD();
+		svd.corr_points.copyFrom(points);
+		ids.add(id);
+		sessions.add(svd);
+		return sessions.size() - 1;
+	}
+
+	public int size() { return sessions.size(); }
+
+	public void clear()
+	{
+		ids.clear();
+		sessions.clear();
+	}
+
+	/*************************************************************
+	 * @param sink - receives every result as it completes, on the calling thread
+	 * Solves all sessions added so far and returns the aggregate throughput.
+	 * The sessions stay in the batch, so it can be run again (e.g. with
+	 * another executor). If a task or the sink fails, the remaining tasks
+	 * are cancelled but may still be running, so clear( ) the batch before
+	 * adding or running again.
+	 ************************************************************/
+	public Statistics run(Sink sink)
+	{
+		final int n = sessions.size();
+		final long start = System.nanoTime();
+		int solved = 0;
+		long pairs = 0L;
+		long busy = 0L;
+
+		if ( executor == null || n <= 1 )
+		{
+			for ( int i = 0; i < n; i++ )
+			{
+				final Result result = new Task(i).call();
+				solved += result.isSolved() ? 1 : 0;
+				pairs += result.getPairs();
+				busy += result.getSolveNanos();
+				sink.accept(result);
+			}
+			return new Statistics(n, solved, pairs, System.nanoTime() - start, busy);
+		}
+
+		final CompletionService<Result> completion = new ExecutorCompletionService<Result>(executor);
+		final List<Future<Result>> futures = new ArrayList<Future<Result>>(n);
+		try {
+			for ( int i = 0; i < n; i++ )
+				futures.add(completion.submit(new Task(i)));
+			for ( int i = 0; i < n; i++ )
+			{
+				final Result result = completion.take().get();
+				solved += result.isSolved() ? 1 : 0;
+				pairs += result.getPairs();
+				busy += result.getSolveNanos();
+				sink.accept(result);
+			}
+		} catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Batch calibration interrupted", e);
+		} catch (ExecutionException e) {
+			cancel(futures);
+			throw new RuntimeException("Batch calibration task failed", e.getCause());
+		} catch (RuntimeException e) {
+			////a failing sink stops the batch as well////
+			cancel(futures);
+			throw e;
+		}
+		return new Statistics(n, solved, pairs, System.nanoTime() - start, busy);
+	}
+
+	private static void cancel(List<Future<Result>> futures)
+	{
+		for ( int i = 0; i < futures.size(); i++ )
+			futures.get(i).cancel(true);
+	}
+
+	/********************************************************************
+	 * Solves one session with its solver, confined to the task for the run.
+	 *******************************************************************/
+	private class Task implements Callable<Result> {
+		private final int index;
+		private final String id;
+		private final SPAAM_SVD svd;
+		private final boolean refineResult;
+
+		Task(int index)
+		{
+			this.index = index;
+			this.id = ids.get(index);
+			this.svd = sessions.get(index);
+			this.refineResult = refine;
+		}
+
+		@Override
+		public Result call()
+		{
+			final long start = System.nanoTime();
+			final CorrespondenceBuffer points = svd.corr_points;
+			final double[] projection = new double[12];
+			boolean solved = svd.projectionDLTPrimitive();
+			if ( solved && refineResult )
+				svd.refineProjection(new ReprojectionRefiner());
+			if ( solved )
+				svd.getProjection(projection);
+			final double rms = solved ? reprojectionRms(projection, points) : Double.NaN;
+			return new Result(id, index, points.size(), solved, projection, rms, System.nanoTime() - start);
+		}
+	}
+
+	//Weighted RMS reprojection error (pixels) of the pairs under p//
+	private static double reprojectionRms(double[] p, CorrespondenceBuffer points)
+	{
+		final double[] wx = points.worldXColumn(), wy = points.worldYColumn(), wz = points.worldZColumn();
+		final double[] sx = points.screenXColumn(), sy = points.screenYColumn();
+		final double[] weight = points.weightColumn();
+		double sum = 0.0, total = 0.0;
+		for ( int i = 0; i < points.size(); i++ )
+		{
+			final double w = weight == null ? 1.0 : weight[i];
+			final double z = p[8] * wx[i] + p[9] * wy[i] + p[10] * wz[i] + p[11];
+			final double du = ( p[0] * wx[i] + p[1] * wy[i] + p[2] * wz[i] + p[3] ) / z - sx[i];
+			final double dv = ( p[4] * wx[i] + p[5] * wy[i] + p[6] * wz[i] + p[7] ) / z - sy[i];
+			sum += w * ( du * du + dv * dv );
+			total += w;
+		}
+		return total > 0.0 ? Math.sqrt(sum / total) : Double.NaN;
+	}
+}
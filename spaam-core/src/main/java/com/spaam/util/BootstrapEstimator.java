@@ -0,0 +1,312 @@
+/**************************************************************************************
+ * This file contains the BootstrapEstimator which puts error bars on a SPAAM
+ * calibration. The correspondence pairs are resampled with replacement, every
+ * replicate is solved, and the spread of the replicates gives confidence intervals
+ * for the projection elements and for the reprojection of points on the screen.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/*******************************************************************************
+ * Nonparametric (percentile) bootstrap of the 3x4 SPAAM projection.
+ *
+ * Replicate r draws N pair indices with replacement from FastRandom.stream(
+ * seed, r) and solves the DLT from the running normal equations of the
+ * drawn pairs. The replicates are split into blocks which run in parallel on
+ * the configured executor (or on the calling thread if no executor is set).
+ * Every replicate is written to its own slot and the statistics are taken
+ * over the slots in index order, so the result is the same for any executor
+ * or block count. All replicates are scaled to a unit viewing direction in
+ * front of the viewer, which makes the elements comparable.
+ *
+ * A replicate is only solved if its drawn pairs pass the same test as the
+ * point solves (ConditioningMonitor.isWellConditioned( ): at least 6
+ * distinct pairs with a positive weight and a spread of the world and screen
+ * points within the accepted condition). Replicates failing it would give an
+ * arbitrary matrix and are left out of the statistics (see
+ * getValidReplicates( )).
+ *
+ * An instance keeps its workspace between calls and is not thread safe.
+ ******************************************************************************/
+public class BootstrapEstimator {
+	////Configuration////
+	private int replicates = 200;
+	private double confidence = 0.95;
+	private long seed = 0xb0075L;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private ExecutorService executor = null;
+	private double maxCondition = ConditioningMonitor.DEFAULT_MAX_CONDITION;
+
+	////Replicates////
+	private double[] samples = new double[0];
+	private boolean[] valid = new boolean[0];
+	private int validCount = 0;
+	private int replicateCount = 0;
+
+	////Result////
+	private final NormalEquationAccumulator fullEquations = new NormalEquationAccumulator();
+	private final double[] projection = new double[12];
+	private final double[] lower = new double[12];
+	private final double[] upper = new double[12];
+	private final double[] standardError = new double[12];
+	private double meanDepth = 0.0;
+	private double[] sorted = new double[0];
+	private final double[] point = new double[3];
+
+	//Default Constructor that does nothing//
+	public BootstrapEstimator()
+	{	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Configuration////
+
+	//Number of bootstrap replicates//
+	public void setReplicates(int count) { replicates = Math.max(2, count); }
+	public int getReplicates() { return replicates; }
+
+	//Coverage of the reported intervals (0.95 gives the 2.5% and 97.5% percentiles)//
+	public void setConfidence(double level) { confidence = level; }
+	public double getConfidence() { return confidence; }
+
+	public void setSeed(long seed) { this.seed = seed; }
+
+	//Number of blocks the replicates are split into//
+	public void setParallelism(int blocks) { parallelism = Math.max(1, blocks); }
+
+	//Executor used to solve the blocks, null runs everything on the calling thread//
+	public void setExecutor(ExecutorService executor) { this.executor = executor; }
+
+	//Largest accepted condition of the drawn pairs, see ConditioningMonitor.setMaxCondition( )//
+	public void setMaxCondition(double condition) { maxCondition = condition; }
+	public double getMaxCondition() { return maxCondition; }
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Results of the last estimate( )////
+
+	//3x4 projection (row major) solved from all pairs, the centre of the intervals//
+	public double[] getProjection() { return projection; }
+	//Per element percentile interval and bootstrap standard error (row major 3x4)//
+	public double[] getLower() { return lower; }
+	public double[] getUpper() { return upper; }
+	public double[] getStandardErrors() { return standardError; }
+	public int getValidReplicates() { return validCount; }
+	//Mean depth of the pairs along the viewing direction//
+	public double getMeanDepth() { return meanDepth; }
+
+	//Projection of replicate r (row major), only meaningful if isValid(r)//
+	public void getReplicate(int r, double[] result)
+	{
+		System.arraycopy(samples, r * 12, result, 0, 12);
+	}
+
+	public boolean isValid(int r) { return valid[r]; }
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	/*************************************************************
+	 * @param points - the correspondence pairs (at least 6)
+	 * Solves all replicates and the per element intervals.
+	 * Returns false if the pairs cannot be solved at all.
+	 ************************************************************/
+	public boolean estimate(CorrespondenceBuffer points)
+	{
+		final int n = points.size();
+		validCount = 0;
+		replicateCount = replicates;
+		final double[] wx = points.worldXColumn(), wy = points.worldYColumn(), wz = points.worldZColumn();
+		final double[] sx = points.screenXColumn(), sy = points.screenYColumn();
+		final double[] weight = points.weightColumn();
+
+		fullEquations.clear();
+		for ( int i = 0; i < n; i++ )
+			fullEquations.add(wx[i], wy[i], wz[i], sx[i], sy[i], weight == null ? 1.0 : weight[i]);
+		if ( !fullEquations.solve(projection) )
+			return false;
+
+		double depth = 0.0;
+		for ( int i = 0; i < n; i++ )
+			depth += projection[8] * wx[i] + projection[9] * wy[i] + projection[10] * wz[i] + projection[11];
+		meanDepth = depth / n;
+
+		if ( samples.length < 12 * replicateCount )
+		{
+			samples = new double[12 * replicateCount];
+			valid = new boolean[replicateCount];
+		}
+		if ( sorted.length < replicateCount )
+			sorted = new double[replicateCount];
+
+		final int blocks = Math.min(parallelism, replicateCount);
+		final List<Block> workers = new ArrayList<Block>(blocks);
+		for ( int b = 0; b < blocks; b++ )
+			workers.add(new Block(points, (replicateCount * b) / blocks, (replicateCount * (b + 1)) / blocks));
+		runBlocks(workers);
+
+		for ( int r = 0; r < replicateCount; r++ )
+			if ( valid[r] )
+				validCount++;
+		if ( validCount < 2 )
+			return false;
+
+		////per element percentile intervals and standard errors////
+		for ( int k = 0; k < 12; k++ )
+		{
+			int m = 0;
+			double mean = 0.0;
+			for ( int r = 0; r < replicateCount; r++ )
+				if ( valid[r] )
+				{
+					sorted[m++] = samples[r * 12 + k];
+					mean += samples[r * 12 + k];
+				}
+			mean /= m;
+			double var = 0.0;
+			for ( int j = 0; j < m; j++ )
+				var += ( sorted[j] - mean ) * ( sorted[j] - mean );
+			standardError[k] = Math.sqrt(var / ( m - 1 ));
+
+			Arrays.sort(sorted, 0, m);
+			lower[k] = percentile(sorted, m, ( 1.0 - confidence ) / 2.0);
+			upper[k] = percentile(sorted, m, ( 1.0 + confidence ) / 2.0);
+		}
+		return true;
+	}
+
+	/*************************************************************
+	 * @param x, y, z - 3D point, e.g. a corner of the verification square
+	 * Returns the radius (pixels) around the reprojection by getProjection( )
+	 * which contains the configured fraction of the replicate reprojections.
+	 ************************************************************/
+	public double pixelInterval(double x, double y, double z)
+	{
+		final double[] p = projection;
+		final double w = p[8] * x + p[9] * y + p[10] * z + p[11];
+		final double u = ( p[0] * x + p[1] * y + p[2] * z + p[3] ) / w;
+		final double v = ( p[4] * x + p[5] * y + p[6] * z + p[7] ) / w;
+
+		int m = 0;
+		for ( int r = 0; r < replicateCount; r++ )
+			if ( valid[r] )
+				sorted[m++] = Math.sqrt(RansacEstimator.reprojectionError2(samples, r * 12, x, y, z, u, v));
+		Arrays.sort(sorted, 0, m);
+		return percentile(sorted, m, confidence);
+	}
+
+	/*************************************************************
+	 * @param cols, rows - grid of screen regions over width x height pixels
+	 * @param depth - depth of the evaluated points, e.g. getMeanDepth( )
+	 * @param result - receives cols*rows radii (row by row, from the top left)
+	 * Evaluates pixelInterval( ) at the centre of every screen region for the
+	 * point at the given depth that getProjection( ) projects there.
+	 ************************************************************/
+	public void regionIntervals(int cols, int rows, double width, double height, double depth, double[] result)
+	{
+		for ( int r = 0; r < rows; r++ )
+			for ( int c = 0; c < cols; c++ )
+			{
+				DLTMath.backProject(projection, ( c + 0.5 ) * width / cols, ( r + 0.5 ) * height / rows, depth, point);
+				result[r * cols + c] = pixelInterval(point[0], point[1], point[2]);
+			}
+	}
+
+	//Linear interpolation between the closest ranks of the m sorted values//
+	private static double percentile(double[] sorted, int m, double q)
+	{
+		final double pos = q * ( m - 1 );
+		final int i = (int) Math.floor(pos);
+		if ( i >= m - 1 )
+			return sorted[m - 1];
+		return sorted[i] + ( pos - i ) * ( sorted[i + 1] - sorted[i] );
+	}
+
+	//Solves all blocks, in parallel when an executor is available//
+	private void runBlocks(List<Block> workers)
+	{
+		if ( executor == null || workers.size() == 1 )
+		{
+			for ( int b = 0; b < workers.size(); b++ )
+				workers.get(b).call();
+			return;
+		}
+		try {
+			final List<Future<Void>> futures = executor.invokeAll(workers);
+			for ( int b = 0; b < futures.size(); b++ )
+				futures.get(b).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Bootstrap estimation interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Bootstrap replicate solve failed", e.getCause());
+		}
+	}
+
+	/********************************************************************
+	 * A contiguous range of replicates solved by one task. Each block
+	 * owns its normal equations, conditioning check, generator and
+	 * multiplicity workspace.
+	 *******************************************************************/
+	private class Block implements Callable<Void> {
+		private final CorrespondenceBuffer points;
+		private final int from, to;
+		private final NormalEquationAccumulator equations = new NormalEquationAccumulator();
+		private final ConditioningMonitor conditioning = new ConditioningMonitor();
+		//reseeded for every replicate, see FastRandom.setStream( )//
+		private final FastRandom random = new FastRandom(0L);
+		private final int[] multiplicity;
+		private final double[] p = new double[12];
+
+		Block(CorrespondenceBuffer points, int from, int to)
+		{
+			this.points = points;
+			this.from = from;
+			this.to = to;
+			this.multiplicity = new int[points.size()];
+			conditioning.setMaxCondition(maxCondition);
+		}
+
+		@Override
+		public Void call()
+		{
+			final int n = points.size();
+			final double[] wx = points.worldXColumn(), wy = points.worldYColumn(), wz = points.worldZColumn();
+			final double[] sx = points.screenXColumn(), sy = points.screenYColumn();
+			final double[] weight = points.weightColumn();
+
+			for ( int r = from; r < to; r++ )
+			{
+				////draw N indices with replacement////
+				random.setStream(seed, r);
+				Arrays.fill(multiplicity, 0);
+				for ( int k = 0; k < n; k++ )
+					multiplicity[random.nextInt(n)]++;
+
+				//a pair drawn m times enters with m times its weight, so the monitor counts distinct pairs//
+				valid[r] = false;
+				conditioning.clear();
+				for ( int i = 0; i < n; i++ )
+					if ( multiplicity[i] > 0 )
+						conditioning.add(wx[i], wy[i], wz[i], sx[i], sy[i], multiplicity[i] * ( weight == null ? 1.0 : weight[i] ));
+				if ( !conditioning.isWellConditioned() )
+					continue;
+
+				equations.clear();
+				for ( int i = 0; i < n; i++ )
+					if ( multiplicity[i] > 0 )
+						equations.add(wx[i], wy[i], wz[i], sx[i], sy[i], multiplicity[i] * ( weight == null ? 1.0 : weight[i] ));
+				if ( !equations.solve(p) )
+					continue;
+				System.arraycopy(p, 0, samples, r * 12, 12);
+				valid[r] = true;
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/**************************************************************************************
+ * This file contains the CalibrationFile helper which reads and writes the files
+ * produced by a SPAAM calibration: the per eye projection (Left.calib / Right.calib)
+ * and the recorded correspondence pairs of a session (Left.session / Right.session).
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/*******************************************************************************
+ * File formats (all values big endian, as written by java.io.DataOutput):
+ *
+ * .calib   - 16 doubles, the 4x4 OpenGL projection in column major order,
+ *            built for the SCREEN_WIDTH x SCREEN_HEIGHT per eye screen.
+ *            Files shorter than 16 doubles (freshly created) hold no result.
+ *
+ * .session - int magic 'SPSN', int version (1), int pair count, then per pair
+ *            the doubles wx, wy, wz, sx, sy, weight and the long timestamp.
+ ******************************************************************************/
+public final class CalibrationFile {
+	public static final int CALIB_BYTES = 16 * 8;
+	public static final int SESSION_MAGIC = 0x5350534e;
+	public static final int SESSION_VERSION = 1;
+	//Per eye screen (pixels) of the headset the .calib projections are built for//
+	public static final int SCREEN_WIDTH = 960;
+	public static final int SCREEN_HEIGHT = 540;
+
+	private CalibrationFile()
+	{	}
+
+	/*************************************************************
+	 * @param file - the .calib file
+	 * @param projection - 16 float array receiving the OpenGL projection (column major)
+	 * Returns false (leaving projection untouched) if the file does not hold a result yet.
+	 ************************************************************/
+	public static boolean readProjection(File file, float[] projection) throws IOException
+	{
+		if ( file.length() < CALIB_BYTES )
+			return false;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			for ( int i = 0; i < 16; i++ )
+				projection[i] = (float)in.readDouble();
+		} finally {
+			in.close();
+		}
+		return true;
+	}
+
+	//Same as readProjection( ) but keeps the full double precision of the file//
+	public static boolean readProjection(File file, double[] projection) throws IOException
+	{
+		if ( file.length() < CALIB_BYTES )
+			return false;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			for ( int i = 0; i < 16; i++ )
+				projection[i] = in.readDouble();
+		} finally {
+			in.close();
+		}
+		return true;
+	}
+
+	/*************************************************************
+	 * @param file - the .calib file
+	 * @param p - 12 double array receiving the 3x4 projection (row major)
+	 * Reads the OpenGL projection and undoes its construction for the per eye
+	 * screen, see GLProjection.toProjection3x4( ). The result is determined up
+	 * to the scale of the viewing direction, like a DLT result. Returns false
+	 * (leaving p untouched) if the file does not hold a result yet.
+	 ************************************************************/
+	public static boolean readProjection3x4(File file, double[] p) throws IOException
+	{
+		final double[] gl = new double[16];
+		if ( !readProjection(file, gl) )
+			return false;
+		GLProjection.toProjection3x4(gl, 0, SCREEN_WIDTH, SCREEN_HEIGHT, 0, p);
+		return true;
+	}
+
+	/*************************************************************
+	 * @param file - the .calib file, replaced by the new result
+	 * @param projection - 16 float OpenGL projection (column major)
+	 ************************************************************/
+	public static void writeProjection(File file, float[] projection) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			for ( int i = 0; i < 16; i++ )
+				out.writeDouble((double)projection[i]);
+		} finally {
+			out.close();
+		}
+	}
+
+	//Empties the .calib file, afterwards it holds no result (like a freshly created file)//
+	public static void clearProjection(File file) throws IOException
+	{
+		new FileOutputStream(file).close();
+	}
+
+	/*************************************************************
+	 * @param file - the .session file, replaced by the recorded pairs
+	 * @param points - the correspondence pairs of the session
+	 ************************************************************/
+	public static void writeSession(File file, CorrespondenceBuffer points) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(SESSION_MAGIC);
+			out.writeInt(SESSION_VERSION);
+			out.writeInt(points.size());
+			for ( int i = 0; i < points.size(); i++ )
+			{
+				out.writeDouble(points.worldX(i));
+				out.writeDouble(points.worldY(i));
+				out.writeDouble(points.worldZ(i));
+				out.writeDouble(points.screenX(i));
+				out.writeDouble(points.screenY(i));
+				out.writeDouble(points.weight(i));
+				out.writeLong(points.timestamp(i));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/*************************************************************
+	 * @param file - the .session file
+	 * @param points - buffer the recorded pairs are appended to
+	 * Returns the number of pairs read.
+	 ************************************************************/
+	public static int readSession(File file, CorrespondenceBuffer points) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if ( in.readInt() != SESSION_MAGIC )
+				throw new IOException("Not a SPAAM session file: " + file.getAbsolutePath());
+			final int version = in.readInt();
+			if ( version != SESSION_VERSION )
+				throw new IOException("Unsupported session version " + version + ": " + file.getAbsolutePath());
+			final int count = in.readInt();
+			if ( count < 0 )
+				throw new IOException("Corrupt session file: " + file.getAbsolutePath());
+			points.ensureCapacity(points.size() + count);
+			for ( int i = 0; i < count; i++ )
+			{
+				final double wx = in.readDouble(), wy = in.readDouble(), wz = in.readDouble();
+				final double sx = in.readDouble(), sy = in.readDouble();
+				final double weight = in.readDouble();
+				final long time = in.readLong();
+				points.add(wx, wy, wz, sx, sy, weight, time);
+			}
+			return count;
+		} catch (EOFException e) {
+			throw new IOException("Truncated session file: " + file.getAbsolutePath(), e);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/**************************************************************************************
+ * This file contains the CalibrationReport command line tool which decomposes archived
+ * calibration results (.calib files) into eye intrinsics and eye pose in bulk.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Locale;
+
+/*******************************************************************************
+ * Usage: java -cp spaam-core.jar com.spaam.util.CalibrationReport <file|dir>...
+ *
+ * Prints one CSV line per calibration: file, focal lengths, principal point
+ * and skew (pixels), eye position (world units) and the world to eye
+ * rotation (row major). Directories are searched (not recursively) for
+ * .calib files. The files are assumed to be written by the application for
+ * its per eye screen (see CalibrationFile.readProjection3x4( )). One
+ * decomposition and one projection buffer serve all files.
+ ******************************************************************************/
+public class CalibrationReport {
+	public static void main(String[] args)
+	{
+		final PrintStream out = System.out;
+		final double[] projection = new double[12];
+		final double[] rotation = new double[9];
+		final ProjectionDecomposition decomposition = new ProjectionDecomposition();
+
+		out.println("file,fx,fy,cx,cy,skew,eye_x,eye_y,eye_z,r11,r12,r13,r21,r22,r23,r31,r32,r33");
+		for ( String arg : args )
+		{
+			final File file = new File(arg);
+			final File[] files = file.isDirectory() ? file.listFiles() : new File[] { file };
+			if ( files == null )
+				continue;
+			for ( File calib : files )
+			{
+				if ( file.isDirectory() && !calib.getName().endsWith(".calib") )
+					continue;
+				try {
+					if ( !CalibrationFile.readProjection3x4(calib, projection) )
+					{
+						out.println(calib.getPath() + ",,,,,,,,,,,,,,,,,");
+						continue;
+					}
+				} catch (IOException e) {
+					System.err.println(calib.getPath() + ": " + e.getMessage());
+					continue;
+				}
+				if ( !decomposition.decompose(projection) )
+				{
+					out.println(calib.getPath() + ",,,,,,,,,,,,,,,,,");
+					continue;
+				}
+				decomposition.getRotation(rotation);
+				final StringBuilder line = new StringBuilder(calib.getPath());
+				line.append(String.format(Locale.US, ",%.3f,%.3f,%.3f,%.3f,%.4f,%.4f,%.4f,%.4f",
+						decomposition.focalX(), decomposition.focalY(), decomposition.principalX(), decomposition.principalY(),
+						decomposition.skew(), decomposition.positionX(), decomposition.positionY(), decomposition.positionZ()));
+				for ( int k = 0; k < 9; k++ )
+					line.append(String.format(Locale.US, ",%.6f", rotation[k]));
+				out.println(line);
+			}
+		}
+	}
+}
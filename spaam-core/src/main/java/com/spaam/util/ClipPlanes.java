@@ -0,0 +1,132 @@
+/**************************************************************************************
+ * This file contains ClipPlanes, the near and far clip planes of the OpenGL projection
+ * built from a SPAAM result. They can be fixed (a per application profile) or derived
+ * from the depth range of the recorded world points.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+/*******************************************************************************
+ * The depth buffer resolution is spent roughly in proportion to near / z, so
+ * a range much wider than the content (e.g. the former fixed 0.1 to 100 for
+ * content at 0.3 to 2 world units) wastes most of it. The depth of a world
+ * point X under a projection p is its distance along the viewing direction,
+ *
+ * 		depth = ( p[8..10] . X + p[11] ) / |p[8..10]|
+ *
+ * and the data driven planes enclose the depths of the recorded points,
+ * widened by a margin factor (near / margin, far * margin). The far to near
+ * ratio is capped by MAX_RANGE_RATIO. A margin below 1 would shrink the range
+ * around the content and is rejected with an IllegalArgumentException.
+ *
+ * The planes only enter the 4x4 matrix, never the SVD, so the same 3x4 result
+ * can be rebuilt for any range with GLProjection.buildProjection( ).
+ *
+ * Instances are immutable and can be handed between threads.
+ ******************************************************************************/
+public final class ClipPlanes {
+	//The range the application used before the planes were configurable//
+	public static final ClipPlanes LEGACY = new ClipPlanes(0.1, 100.0);
+	//Default widening of the recorded depth range//
+	public static final double DEFAULT_MARGIN = 1.5;
+	//Largest far to near ratio of data driven planes//
+	public static final double MAX_RANGE_RATIO = 1000.0;
+
+	private final double near;
+	private final double far;
+
+	public ClipPlanes(double near, double far)
+	{
+		if ( !( near > 0.0 && far > near ) )
+			throw new IllegalArgumentException("Clip planes need 0 < near < far, got " + near + " and " + far);
+		this.near = near;
+		this.far = far;
+	}
+
+	public double near() { return near; }
+	public double far() { return far; }
+
+	/*************************************************************
+	 * @param p - 12 double 3x4 projection (row major)
+	 * @param left, right, top, bottom - pixels of the viewport edges
+	 * @param dst - 16 float array receiving the OpenGL 4x4 projection (column major)
+	 * @param offset - index of the first element written in dst
+	 * Builds the OpenGL projection of p with these planes, see GLProjection.buildProjection( )
+	 ************************************************************/
+	public void buildProjection(double[] p, int left, int right, int top, int bottom, float[] dst, int offset)
+	{
+		GLProjection.buildProjection(p, left, right, top, bottom, near, far, dst, offset);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Data Driven Planes////
+
+	/*************************************************************
+	 * @param nearest, farthest - depth range of the content
+	 * @param margin - factor (>= 1) the range is widened by on both sides
+	 * @param fallback - returned if no content lies in front of the viewer, or if the
+	 *   range is empty (a single depth and a margin of 1)
+	 ************************************************************/
+	public static ClipPlanes fromDepthRange(double nearest, double farthest, double margin, ClipPlanes fallback)
+	{
+		checkMargin(margin);
+		if ( !( farthest > 0.0 ) || Double.isInfinite(farthest) )
+			return fallback;
+		final double far = farthest * margin;
+		final double near = Math.max(nearest / margin, far / MAX_RANGE_RATIO);
+		if ( !( near < far ) )
+			return fallback;
+		return new ClipPlanes(near, far);
+	}
+
+	private static void checkMargin(double margin)
+	{
+		if ( !( margin >= 1.0 ) || Double.isInfinite(margin) )
+			throw new IllegalArgumentException("Clip plane margin must be a finite factor >= 1, got " + margin);
+	}
+
+	/*************************************************************
+	 * @param p - 12 double 3x4 projection (row major)
+	 * @param points - the recorded pairs, only the world points are used
+	 * @param margin - factor (>= 1) the range is widened by on both sides
+	 * @param fallback - returned if no point lies in front of the viewer
+	 * Returns planes enclosing the depths of all world points
+	 ************************************************************/
+	public static ClipPlanes fromPoints(double[] p, CorrespondenceBuffer points, double margin, ClipPlanes fallback)
+	{
+		checkMargin(margin);
+		final double[] wx = points.worldXColumn(), wy = points.worldYColumn(), wz = points.worldZColumn();
+		final double inv = 1.0 / Math.sqrt(p[8] * p[8] + p[9] * p[9] + p[10] * p[10]);
+		double nearest = Double.POSITIVE_INFINITY, farthest = Double.NEGATIVE_INFINITY;
+		for ( int i = 0; i < points.size(); i++ )
+		{
+			final double depth = ( p[8] * wx[i] + p[9] * wy[i] + p[10] * wz[i] + p[11] ) * inv;
+			nearest = Math.min(nearest, depth);
+			farthest = Math.max(farthest, depth);
+		}
+		return fromDepthRange(nearest, farthest, margin, fallback);
+	}
+
+	/*************************************************************
+	 * @param p - 12 double 3x4 projection (row major)
+	 * @param min, max - 3 double corners of the axis aligned box around the world points
+	 * @param margin - factor (>= 1) the range is widened by on both sides
+	 * @param fallback - returned if the box lies behind the viewer
+	 * Returns planes enclosing the box, for sessions which only keep the bounds of
+	 * their points (e.g. streamed samples). The range is a little wider than that of
+	 * the points themselves.
+	 ************************************************************/
+	public static ClipPlanes fromBounds(double[] p, double[] min, double[] max, double margin, ClipPlanes fallback)
+	{
+		checkMargin(margin);
+		final double inv = 1.0 / Math.sqrt(p[8] * p[8] + p[9] * p[9] + p[10] * p[10]);
+		double nearest = p[11], farthest = p[11];
+		for ( int k = 0; k < 3; k++ )
+		{
+			final double a = p[8 + k] * min[k], b = p[8 + k] * max[k];
+			nearest += Math.min(a, b);
+			farthest += Math.max(a, b);
+		}
+		return fromDepthRange(nearest * inv, farthest * inv, margin, fallback);
+	}
+}
@@ -0,0 +1,113 @@
+/**************************************************************************************
+ * This file contains the ConditioningMonitor which decides, as correspondence pairs
+ * arrive, whether they can constrain all 11 degrees of freedom of the projection or
+ * whether a DLT solve would only return an arbitrary matrix.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+/*******************************************************************************
+ * The DLT is degenerate when the world points are (nearly) coplanar or
+ * collinear, or when the screen points are (nearly) collinear, no matter how
+ * many pairs there are. The monitor keeps the running weighted covariance of
+ * both point sets (PointStatistics, constant cost per pair, pairs can be
+ * removed again) and estimates the conditioning from their spread:
+ *
+ * 		condition = sqrt( l_max / l_min )
+ *
+ * of the 3x3 world and 2x2 screen covariance matrices, i.e. the ratio of the
+ * widest to the thinnest axis of the point clouds. A flat cloud (all pairs
+ * recorded at the same distance) drives the world condition to infinity.
+ *
+ * An instance is not thread safe.
+ ******************************************************************************/
+public class ConditioningMonitor {
+	//Widest to thinnest spread accepted by default//
+	public static final double DEFAULT_MAX_CONDITION = 30.0;
+
+	private double maxCondition = DEFAULT_MAX_CONDITION;
+
+	////Running mean and covariance of the points////
+	private final PointStatistics statistics = new PointStatistics();
+
+	////Workspace////
+	private final double[] scatter = new double[9];
+	private final double[] vectors = new double[9];
+	private final double[] values = new double[3];
+	private final double[] screen = new double[3];
+
+	//Default Constructor that does nothing//
+	public ConditioningMonitor()
+	{	}
+
+	//Largest accepted condition of the world and of the screen point spread//
+	public void setMaxCondition(double condition) { maxCondition = condition; }
+	public double getMaxCondition() { return maxCondition; }
+
+	public int size() { return statistics.size(); }
+	//Number of pairs with a positive weight//
+	public int weightedSize() { return statistics.weightedSize(); }
+
+	//The running statistics of the monitored pairs, which also give the DLT normalization//
+	public PointStatistics getStatistics() { return statistics; }
+
+	public void clear()
+	{
+		statistics.clear();
+	}
+
+	public void add(double wx, double wy, double wz, double sx, double sy, double weight)
+	{
+		statistics.add(wx, wy, wz, sx, sy, weight);
+	}
+
+	//Removes a pair previously added with the same weight//
+	public void remove(double wx, double wy, double wz, double sx, double sy, double weight)
+	{
+		statistics.remove(wx, wy, wz, sx, sy, weight);
+	}
+
+	/*************************************************************
+	 * Returns true if at least 6 pairs have a positive weight and neither
+	 * the world nor the screen points are too flat to constrain the
+	 * projection, i.e. a DLT solve is worth running.
+	 ************************************************************/
+	public boolean isWellConditioned()
+	{
+		return statistics.weightedSize() >= 6 && worldCondition() <= maxCondition && screenCondition() <= maxCondition;
+	}
+
+	//Ratio of the widest to the thinnest axis of the world points, infinite if they are coplanar//
+	public double worldCondition()
+	{
+		if ( statistics.totalWeight() <= 0.0 )
+			return Double.POSITIVE_INFINITY;
+		statistics.worldCovariance(scatter);
+		DLTMath.symmetricEigen(scatter, 3, vectors, values);
+		final double largest = Math.max(values[0], Math.max(values[1], values[2]));
+		final double smallest = Math.min(values[0], Math.min(values[1], values[2]));
+		return condition(largest, smallest);
+	}
+
+	//Ratio of the widest to the thinnest axis of the screen points, infinite if they are collinear//
+	public double screenCondition()
+	{
+		if ( statistics.totalWeight() <= 0.0 )
+			return Double.POSITIVE_INFINITY;
+		statistics.screenCovariance(screen);
+		final double a = screen[0], b = screen[1], c = screen[2];
+
+		//closed form eigenvalues of [ a b ; b c ]//
+		final double mean = 0.5 * ( a + c );
+		final double radius = Math.sqrt(0.25 * ( a - c ) * ( a - c ) + b * b);
+		return condition(mean + radius, mean - radius);
+	}
+
+	private static double condition(double largest, double smallest)
+	{
+		//rounding can leave the spread of a flat cloud slightly negative//
+		if ( smallest <= largest * 1e-14 )
+			return Double.POSITIVE_INFINITY;
+		return Math.sqrt(largest / smallest);
+	}
+}
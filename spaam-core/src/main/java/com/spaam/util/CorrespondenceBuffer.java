@@ -0,0 +1,342 @@
+/**************************************************************************************
+ * This file contains the CorrespondenceBuffer which stores the 2D screen - 3D world
+ * correspondence pairs of a SPAAM session as contiguous primitive columns.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import com.spaam.util.spaamutil.SPAAM_SVD.Correspondence_Pair;
+
+/*******************************************************************************
+ * Growable structure-of-arrays store for correspondence pairs. Each component
+ * (world x, y, z and screen x, y) lives in its own double[] column, so walking
+ * all pairs touches memory sequentially and no per pair objects are created.
+ *
+ * The optional weight and timestamp columns are only allocated once a pair
+ * with a non default value is added; until then every weight reads as 1.0
+ * and every timestamp as 0.
+ *
+ * The column arrays returned by the accessors are the backing storage of the
+ * buffer. They are valid for indices below size() and are replaced when the
+ * buffer grows, so they must be fetched again after any add.
+ ******************************************************************************/
+public class CorrespondenceBuffer {
+	private static final int DEFAULT_CAPACITY = 32;
+
+	/********************************************************************
+	 * Callback used by forEach( ) to walk the stored pairs in order.
+	 *******************************************************************/
+	public interface Visitor {
+		void visit(int index, double wx, double wy, double wz, double sx, double sy, double weight);
+	}
+
+	////Correspondence Columns////
+	private double[] wx;
+	private double[] wy;
+	private double[] wz;
+	private double[] sx;
+	private double[] sy;
+	////Optional Columns (null until used)////
+	private double[] weight = null;
+	private long[] timestamp = null;
+
+	private int size = 0;
+	//Incremented on every structural change so that derived state can detect stale copies//
+	private int modCount = 0;
+
+	public CorrespondenceBuffer()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	public CorrespondenceBuffer(int capacity)
+	{
+		capacity = Math.max(capacity, 1);
+		wx = new double[capacity];
+		wy = new double[capacity];
+		wz = new double[capacity];
+		sx = new double[capacity];
+		sy = new double[capacity];
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Size and State////
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public int modCount()
+	{
+		return modCount;
+	}
+
+	public boolean hasWeights()
+	{
+		return weight != null;
+	}
+
+	public boolean hasTimestamps()
+	{
+		return timestamp != null;
+	}
+
+	public void clear()
+	{
+		size = 0;
+		weight = null;
+		timestamp = null;
+		modCount++;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Adding Pairs////
+
+	//Appends a pair with weight 1 and timestamp 0 and returns its index//
+	public int add(double wx, double wy, double wz, double sx, double sy)
+	{
+		ensureCapacity(size + 1);
+		this.wx[size] = wx; this.wy[size] = wy; this.wz[size] = wz;
+		this.sx[size] = sx; this.sy[size] = sy;
+		if ( weight != null )
+			weight[size] = 1.0;
+		if ( timestamp != null )
+			timestamp[size] = 0L;
+		modCount++;
+		return size++;
+	}
+
+	//Appends a pair with an explicit weight and timestamp and returns its index//
+	public int add(double wx, double wy, double wz, double sx, double sy, double w, long time)
+	{
+		final int index = add(wx, wy, wz, sx, sy);
+		if ( w != 1.0 )
+		{
+			ensureWeights();
+			weight[index] = w;
+		}
+		if ( time != 0L )
+		{
+			ensureTimestamps();
+			timestamp[index] = time;
+		}
+		return index;
+	}
+
+	//Appends a copy of the values held by a Correspondence_Pair and returns its index//
+	public int add(Correspondence_Pair pair)
+	{
+		return add(pair.worldPoint.get(0, 0), pair.worldPoint.get(0, 1), pair.worldPoint.get(0, 2),
+				pair.screenPoint.get(0, 0), pair.screenPoint.get(0, 1), pair.weight, 0L);
+	}
+
+	/*************************************************************
+	 * @param packed - pairs laid out as wx, wy, wz, sx, sy, wx, wy, ...
+	 * @param offset - index of the first value in packed
+	 * @param count - number of pairs to append
+	 * Bulk append of pairs stored in the Correspondence_Pair layout
+	 ************************************************************/
+	public void addAll(double[] packed, int offset, int count)
+	{
+		ensureCapacity(size + count);
+		for ( int i = 0, o = offset; i < count; i++, o += 5 )
+		{
+			final int d = size + i;
+			wx[d] = packed[o]; wy[d] = packed[o + 1]; wz[d] = packed[o + 2];
+			sx[d] = packed[o + 3]; sy[d] = packed[o + 4];
+			if ( weight != null )
+				weight[d] = 1.0;
+			if ( timestamp != null )
+				timestamp[d] = 0L;
+		}
+		size += count;
+		modCount++;
+	}
+
+	//Bulk append of all pairs (including weights and timestamps) held by another buffer//
+	public void addAll(CorrespondenceBuffer other)
+	{
+		final int count = other.size;
+		ensureCapacity(size + count);
+		System.arraycopy(other.wx, 0, wx, size, count);
+		System.arraycopy(other.wy, 0, wy, size, count);
+		System.arraycopy(other.wz, 0, wz, size, count);
+		System.arraycopy(other.sx, 0, sx, size, count);
+		System.arraycopy(other.sy, 0, sy, size, count);
+		if ( other.weight != null )
+			ensureWeights();
+		if ( weight != null )
+		{
+			for ( int i = 0; i < count; i++ )
+				weight[size + i] = other.weight(i);
+		}
+		if ( other.timestamp != null )
+			ensureTimestamps();
+		if ( timestamp != null )
+		{
+			for ( int i = 0; i < count; i++ )
+				timestamp[size + i] = other.timestamp(i);
+		}
+		size += count;
+		modCount++;
+	}
+
+	//Replaces the contents of this buffer with a copy of another buffer//
+	public void copyFrom(CorrespondenceBuffer other)
+	{
+		if ( other == this )
+			return;
+		size = 0;
+		weight = null;
+		timestamp = null;
+		addAll(other);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Removing Pairs////
+
+	//Removes the pair at index, later pairs keep their order and move down by one//
+	public void remove(int index)
+	{
+		removeRange(index, index + 1);
+	}
+
+	//Removes the most recently added pair//
+	public void removeLast()
+	{
+		removeRange(size - 1, size);
+	}
+
+	//Removes the pairs with indices from (inclusive) to (exclusive)//
+	public void removeRange(int from, int to)
+	{
+		if ( from < 0 || to > size || from > to )
+			throw new IndexOutOfBoundsException("Range " + from + " to " + to + " with size " + size);
+
+		final int tail = size - to;
+		System.arraycopy(wx, to, wx, from, tail);
+		System.arraycopy(wy, to, wy, from, tail);
+		System.arraycopy(wz, to, wz, from, tail);
+		System.arraycopy(sx, to, sx, from, tail);
+		System.arraycopy(sy, to, sy, from, tail);
+		if ( weight != null )
+			System.arraycopy(weight, to, weight, from, tail);
+		if ( timestamp != null )
+			System.arraycopy(timestamp, to, timestamp, from, tail);
+		size -= to - from;
+		modCount++;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Element Access////
+	public double worldX(int i) { checkIndex(i); return wx[i]; }
+	public double worldY(int i) { checkIndex(i); return wy[i]; }
+	public double worldZ(int i) { checkIndex(i); return wz[i]; }
+	public double screenX(int i) { checkIndex(i); return sx[i]; }
+	public double screenY(int i) { checkIndex(i); return sy[i]; }
+
+	public double weight(int i)
+	{
+		checkIndex(i);
+		return weight == null ? 1.0 : weight[i];
+	}
+
+	public long timestamp(int i)
+	{
+		checkIndex(i);
+		return timestamp == null ? 0L : timestamp[i];
+	}
+
+	//Sets the weight of an existing pair//
+	public void setWeight(int i, double w)
+	{
+		checkIndex(i);
+		if ( weight == null && w == 1.0 )
+			return;
+		ensureWeights();
+		weight[i] = w;
+		modCount++;
+	}
+
+	//Returns a newly allocated Correspondence_Pair holding the values of pair i//
+	public Correspondence_Pair get(int i)
+	{
+		checkIndex(i);
+		return new Correspondence_Pair(wx[i], wy[i], wz[i], sx[i], sy[i], weight == null ? 1.0 : weight[i]);
+	}
+
+	////Direct Column Access (backing storage, valid up to size())////
+	public double[] worldXColumn() { return wx; }
+	public double[] worldYColumn() { return wy; }
+	public double[] worldZColumn() { return wz; }
+	public double[] screenXColumn() { return sx; }
+	public double[] screenYColumn() { return sy; }
+	//null if no pair carries a weight other than 1//
+	public double[] weightColumn() { return weight; }
+	//null if no pair carries a timestamp//
+	public long[] timestampColumn() { return timestamp; }
+
+	//Visits every pair in index order//
+	public void forEach(Visitor visitor)
+	{
+		for ( int i = 0; i < size; i++ )
+			visitor.visit(i, wx[i], wy[i], wz[i], sx[i], sy[i], weight == null ? 1.0 : weight[i]);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Storage Management////
+
+	//Makes sure that at least capacity pairs can be stored without reallocating//
+	public void ensureCapacity(int capacity)
+	{
+		if ( capacity <= wx.length )
+			return;
+		final int grown = Math.max(capacity, wx.length + (wx.length >> 1));
+		wx = grow(wx, grown);
+		wy = grow(wy, grown);
+		wz = grow(wz, grown);
+		sx = grow(sx, grown);
+		sy = grow(sy, grown);
+		if ( weight != null )
+			weight = grow(weight, grown);
+		if ( timestamp != null )
+		{
+			final long[] t = new long[grown];
+			System.arraycopy(timestamp, 0, t, 0, size);
+			timestamp = t;
+		}
+	}
+
+	private double[] grow(double[] column, int capacity)
+	{
+		final double[] c = new double[capacity];
+		System.arraycopy(column, 0, c, 0, size);
+		return c;
+	}
+
+	private void ensureWeights()
+	{
+		if ( weight != null )
+			return;
+		weight = new double[wx.length];
+		for ( int i = 0; i < size; i++ )
+			weight[i] = 1.0;
+	}
+
+	private void ensureTimestamps()
+	{
+		if ( timestamp == null )
+			timestamp = new long[wx.length];
+	}
+
+	private void checkIndex(int i)
+	{
+		if ( i < 0 || i >= size )
+			throw new IndexOutOfBoundsException("Index " + i + " with size " + size);
+	}
+}
@@ -0,0 +1,555 @@
+/**************************************************************************************
+ * This file contains the DLTMath helper which provides the primitive (double[] based)
+ * building blocks of the SPAAM Direct Linear Transform solve. None of the functions
+ * in this file allocate memory, all work buffers are supplied by the caller so that
+ * the solver can run on the rendering thread without triggering garbage collection.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+/*******************************************************************
+ * Static helpers operating on flat, row major double arrays. The
+ * 3x4 projection matrix is stored as 12 doubles in row major order,
+ * the design matrix as rows of 12 doubles.
+ ******************************************************************/
+public final class DLTMath {
+	//Relative threshold below which two columns are treated as orthogonal//
+	private static final double JACOBI_EPS = 1e-15;
+	//Upper bound on the number of Jacobi sweeps (convergence is normally reached in < 10)//
+	private static final int JACOBI_MAX_SWEEPS = 60;
+	//Inverse iteration of nullVector12( ): step limit, convergence threshold and shift retries//
+	private static final int NULL_MAX_ITERATIONS = 64;
+	private static final double NULL_TOLERANCE = 1e-14;
+	private static final int NULL_MAX_SHIFTS = 12;
+
+	private DLTMath()
+	{	}
+
+	/*************************************************************
+	 * @param a - design matrix (row major, 12 columns)
+	 * @param pair - index of the correspondence pair, rows 2*pair and 2*pair+1 are written
+	 * @param fx, fy, fz - normalized world point
+	 * @param tx, ty - normalized screen point
+	 * Writes the two DLT equations of one correspondence pair into the design matrix
+	 ************************************************************/
+	public static void fillDesignRows(double[] a, int pair, double fx, double fy, double fz, double tx, double ty)
+	{
+		final int r0 = pair * 24;
+		final int r1 = r0 + 12;
+
+		a[r0] = 0; a[r0 + 1] = 0; a[r0 + 2] = 0; a[r0 + 3] = 0;
+		a[r0 + 4] = -fx; a[r0 + 5] = -fy; a[r0 + 6] = -fz; a[r0 + 7] = -1;
+		a[r0 + 8] = ty * fx; a[r0 + 9] = ty * fy; a[r0 + 10] = ty * fz; a[r0 + 11] = ty;
+
+		a[r1] = fx; a[r1 + 1] = fy; a[r1 + 2] = fz; a[r1 + 3] = 1;
+		a[r1 + 4] = 0; a[r1 + 5] = 0; a[r1 + 6] = 0; a[r1 + 7] = 0;
+		a[r1 + 8] = -tx * fx; a[r1 + 9] = -tx * fy; a[r1 + 10] = -tx * fz; a[r1 + 11] = -tx;
+	}
+
+	//Scales both rows of a pair written by fillDesignRows( ), e.g. by sqrt(weight) for a weighted DLT//
+	public static void scaleDesignRows(double[] a, int pair, double scale)
+	{
+		for ( int k = pair * 24; k < pair * 24 + 24; k++ )
+			a[k] *= scale;
+	}
+
+	/*************************************************************
+	 * @param a - matrix with 12 columns (row major, at least 12 rows), overwritten
+	 * @param rows - number of rows in a
+	 * Householder QR of a. On return the first 12 rows of a hold the upper
+	 * triangular factor R (zeros below the diagonal), R^T R = a^T a, so R has
+	 * the same right singular vectors as a. The rows below are scratch.
+	 ************************************************************/
+	public static void householderR(double[] a, int rows)
+	{
+		for ( int j = 0; j < 12; j++ )
+		{
+			double norm = 0.0;
+			for ( int i = j; i < rows; i++ )
+				norm += a[i * 12 + j] * a[i * 12 + j];
+			norm = Math.sqrt(norm);
+			if ( norm == 0.0 )
+				continue;
+
+			//reflect the column onto alpha e_j, v = x - alpha e_j (stored in place)//
+			final double ajj = a[j * 12 + j];
+			final double alpha = ajj > 0.0 ? -norm : norm;
+			final double v0 = ajj - alpha;
+			final double vv = norm * norm - ajj * ajj + v0 * v0;
+			a[j * 12 + j] = v0;
+			for ( int c = j + 1; c < 12; c++ )
+			{
+				double dot = 0.0;
+				for ( int i = j; i < rows; i++ )
+					dot += a[i * 12 + j] * a[i * 12 + c];
+				final double f = 2.0 * dot / vv;
+				for ( int i = j; i < rows; i++ )
+					a[i * 12 + c] -= f * a[i * 12 + j];
+			}
+			a[j * 12 + j] = alpha;
+			for ( int i = j + 1; i < rows; i++ )
+				a[i * 12 + j] = 0.0;
+		}
+	}
+
+	/*************************************************************
+	 * @param a - design matrix (row major, 12 columns), overwritten by the decomposition
+	 * @param rows - number of valid rows in a
+	 * @param v - 144 double work array receiving the right singular vectors (row major, one per column)
+	 * @param norms - 12 double work array receiving the singular values
+	 * @param result - 12 double array receiving the right singular vector of the smallest singular value
+	 * Computes the null vector of a using the one sided (Hestenes) Jacobi SVD. The columns of a
+	 * are rotated in place until mutually orthogonal, the rotations are accumulated in v.
+	 * Returns the number of sweeps performed.
+	 ************************************************************/
+	public static int nullVectorOneSided(double[] a, int rows, double[] v, double[] norms, double[] result)
+	{
+		//Start with V as the identity//
+		for ( int i = 0; i < 144; i++ )
+			v[i] = 0.0;
+		for ( int i = 0; i < 12; i++ )
+			v[i * 13] = 1.0;
+
+		int sweep = 0;
+		boolean rotated = true;
+		while ( rotated && sweep < JACOBI_MAX_SWEEPS )
+		{
+			rotated = false;
+			sweep++;
+			for ( int p = 0; p < 11; p++ )
+			{
+				for ( int q = p + 1; q < 12; q++ )
+				{
+					double alpha = 0.0, beta = 0.0, gamma = 0.0;
+					for ( int i = 0, o = 0; i < rows; i++, o += 12 )
+					{
+						final double ap = a[o + p];
+						final double aq = a[o + q];
+						alpha += ap * ap;
+						beta += aq * aq;
+						gamma += ap * aq;
+					}
+					if ( gamma == 0.0 || Math.abs(gamma) <= JACOBI_EPS * Math.sqrt(alpha * beta) )
+						continue;
+
+					rotated = true;
+					final double zeta = (beta - alpha) / (2.0 * gamma);
+					final double t = (zeta >= 0.0 ? 1.0 : -1.0) / (Math.abs(zeta) + Math.sqrt(1.0 + zeta * zeta));
+					final double c = 1.0 / Math.sqrt(1.0 + t * t);
+					final double s = c * t;
+
+					for ( int i = 0, o = 0; i < rows; i++, o += 12 )
+					{
+						final double ap = a[o + p];
+						final double aq = a[o + q];
+						a[o + p] = c * ap - s * aq;
+						a[o + q] = s * ap + c * aq;
+					}
+					for ( int i = 0, o = 0; i < 12; i++, o += 12 )
+					{
+						final double vp = v[o + p];
+						final double vq = v[o + q];
+						v[o + p] = c * vp - s * vq;
+						v[o + q] = s * vp + c * vq;
+					}
+				}
+			}
+		}
+
+		//The singular values are the norms of the rotated columns//
+		int smallest = 0;
+		for ( int j = 0; j < 12; j++ )
+		{
+			double sum = 0.0;
+			for ( int i = 0, o = 0; i < rows; i++, o += 12 )
+				sum += a[o + j] * a[o + j];
+			norms[j] = Math.sqrt(sum);
+			if ( norms[j] < norms[smallest] )
+				smallest = j;
+		}
+		for ( int i = 0; i < 12; i++ )
+			result[i] = v[i * 12 + smallest];
+
+		return sweep;
+	}
+
+	/*************************************************************
+	 * @param a - n x n symmetric matrix (row major), destroyed by the decomposition
+	 * @param n - dimension of the matrix
+	 * @param v - n x n array receiving the eigenvectors (row major, one per column)
+	 * @param d - n double array receiving the eigenvalues
+	 * Cyclic Jacobi eigen decomposition of a symmetric matrix. Off diagonal elements are
+	 * rotated away until they are negligible relative to their diagonal elements, which
+	 * keeps the small eigenvalues (the ones the DLT cares about) accurate. Every rotation
+	 * updates both triangles in a single pass over the two affected rows/columns, and the
+	 * pivots are visited in a fixed cyclic order, so the same input always gives bit for
+	 * bit the same result.
+	 * Returns the number of sweeps performed.
+	 ************************************************************/
+	public static int symmetricEigen(double[] a, int n, double[] v, double[] d)
+	{
+		for ( int i = 0; i < n * n; i++ )
+			v[i] = 0.0;
+		for ( int i = 0; i < n; i++ )
+			v[i * n + i] = 1.0;
+
+		int sweep = 0;
+		boolean rotated = true;
+		while ( rotated && sweep < JACOBI_MAX_SWEEPS )
+		{
+			rotated = false;
+			sweep++;
+			for ( int p = 0; p < n - 1; p++ )
+			{
+				for ( int q = p + 1; q < n; q++ )
+				{
+					final double apq = a[p * n + q];
+					final double app = a[p * n + p];
+					final double aqq = a[q * n + q];
+					if ( apq == 0.0 || Math.abs(apq) <= JACOBI_EPS * Math.sqrt(Math.abs(app * aqq)) )
+						continue;
+
+					rotated = true;
+					final double theta = (aqq - app) / (2.0 * apq);
+					final double t = (theta >= 0.0 ? 1.0 : -1.0) / (Math.abs(theta) + Math.sqrt(1.0 + theta * theta));
+					final double c = 1.0 / Math.sqrt(1.0 + t * t);
+					final double s = c * t;
+
+					//A = J^T A J on the symmetric matrix, the (p, q) block directly//
+					a[p * n + p] = app - t * apq;
+					a[q * n + q] = aqq + t * apq;
+					a[p * n + q] = 0.0;
+					a[q * n + p] = 0.0;
+					for ( int k = 0; k < n; k++ )
+					{
+						if ( k == p || k == q )
+							continue;
+						final double akp = a[k * n + p];
+						final double akq = a[k * n + q];
+						final double np = c * akp - s * akq;
+						final double nq = s * akp + c * akq;
+						a[k * n + p] = np; a[p * n + k] = np;
+						a[k * n + q] = nq; a[q * n + k] = nq;
+					}
+					for ( int k = 0; k < n; k++ )
+					{
+						final double vkp = v[k * n + p];
+						final double vkq = v[k * n + q];
+						v[k * n + p] = c * vkp - s * vkq;
+						v[k * n + q] = s * vkp + c * vkq;
+					}
+				}
+			}
+		}
+
+		for ( int i = 0; i < n; i++ )
+			d[i] = a[i * n + i];
+
+		return sweep;
+	}
+
+	/*************************************************************
+	 * @param a - 12x12 symmetric positive semi definite matrix (row major, e.g. the
+	 *   normalized A^T A), not modified
+	 * @param l - 144 double work array, receives the Cholesky factor of a + dI
+	 * @param y - 12 double work array
+	 * @param result - 12 double array receiving the unit eigenvector of the smallest eigenvalue
+	 * Null vector of the DLT from its normal equations by shifted inverse
+	 * iteration. a + dI (d a tiny multiple of the trace, which does not change
+	 * the eigenvectors) is factored once, the iteration starts from the
+	 * direction of the smallest Cholesky pivot and each step costs two 12x12
+	 * triangular solves. The error shrinks by (l1 + d) / (l2 + d) per step,
+	 * so the few steps needed for a well spread set of pairs are far cheaper
+	 * than a full decomposition. All loop bounds are constants and the steps
+	 * run in a fixed order, so the same input always gives bit for bit the
+	 * same result.
+	 * Returns the smallest eigenvalue (the Rayleigh quotient of the result).
+	 ************************************************************/
+	public static double nullVector12(double[] a, double[] l, double[] y, double[] result)
+	{
+		final int n = 12;
+		double trace = 0.0;
+		for ( int i = 0; i < n; i++ )
+			trace += a[i * n + i];
+
+		//grow the shift until rounding can no longer make a + dI indefinite//
+		double shift = 1e-13 * trace;
+		int attempt = 0;
+		while ( !cholesky12(a, shift, l) && attempt++ < NULL_MAX_SHIFTS )
+			shift *= 100.0;
+
+		//x = L^-T e_k for the smallest pivot k is already close to the null vector//
+		int k = 0;
+		for ( int i = 1; i < n; i++ )
+			if ( l[i * n + i] < l[k * n + k] )
+				k = i;
+		for ( int i = 0; i < n; i++ )
+			result[i] = i == k ? 1.0 : 0.0;
+		backSubstitute12(l, result);
+		normalize12(result);
+
+		for ( int it = 0; it < NULL_MAX_ITERATIONS; it++ )
+		{
+			//y = (L L^T)^-1 x//
+			for ( int i = 0; i < n; i++ )
+				y[i] = result[i];
+			forwardSubstitute12(l, y);
+			backSubstitute12(l, y);
+			normalize12(y);
+
+			double dot = 0.0;
+			for ( int i = 0; i < n; i++ )
+				dot += y[i] * result[i];
+			final double sign = dot < 0.0 ? -1.0 : 1.0;
+			double change = 0.0;
+			for ( int i = 0; i < n; i++ )
+			{
+				final double value = sign * y[i];
+				change = Math.max(change, Math.abs(value - result[i]));
+				result[i] = value;
+			}
+			if ( change <= NULL_TOLERANCE )
+				break;
+		}
+
+		double rayleigh = 0.0;
+		for ( int r = 0; r < n; r++ )
+		{
+			double row = 0.0;
+			for ( int c = 0; c < n; c++ )
+				row += a[r * n + c] * result[c];
+			rayleigh += result[r] * row;
+		}
+		return rayleigh;
+	}
+
+	//Cholesky factor of a + shift I into the lower triangle of l, false if not positive definite//
+	private static boolean cholesky12(double[] a, double shift, double[] l)
+	{
+		final int n = 12;
+		for ( int j = 0; j < n; j++ )
+		{
+			double diag = a[j * n + j] + shift;
+			for ( int k = 0; k < j; k++ )
+				diag -= l[j * n + k] * l[j * n + k];
+			if ( !( diag > 0.0 ) )
+				return false;
+			diag = Math.sqrt(diag);
+			l[j * n + j] = diag;
+			for ( int i = j + 1; i < n; i++ )
+			{
+				double value = a[i * n + j];
+				for ( int k = 0; k < j; k++ )
+					value -= l[i * n + k] * l[j * n + k];
+				l[i * n + j] = value / diag;
+				l[j * n + i] = 0.0;
+			}
+		}
+		return true;
+	}
+
+	//x = L^-1 x//
+	private static void forwardSubstitute12(double[] l, double[] x)
+	{
+		final int n = 12;
+		for ( int i = 0; i < n; i++ )
+		{
+			double value = x[i];
+			for ( int k = 0; k < i; k++ )
+				value -= l[i * n + k] * x[k];
+			x[i] = value / l[i * n + i];
+		}
+	}
+
+	//x = L^-T x//
+	private static void backSubstitute12(double[] l, double[] x)
+	{
+		final int n = 12;
+		for ( int i = n - 1; i >= 0; i-- )
+		{
+			double value = x[i];
+			for ( int k = i + 1; k < n; k++ )
+				value -= l[k * n + i] * x[k];
+			x[i] = value / l[i * n + i];
+		}
+	}
+
+	private static void normalize12(double[] x)
+	{
+		double norm = 0.0;
+		for ( int i = 0; i < 12; i++ )
+			norm += x[i] * x[i];
+		norm = Math.sqrt(norm);
+		for ( int i = 0; i < 12; i++ )
+			x[i] /= norm;
+	}
+
+	/*************************************************************
+	 * @param a - n x n symmetric positive definite matrix (row major), overwritten by its
+	 * Cholesky factor (lower triangle)
+	 * @param n - dimension of the matrix
+	 * @param b - n double right hand side, overwritten by the solution of a x = b
+	 * Solves a symmetric positive definite system in place.
+	 * Returns false if the matrix is not positive definite.
+	 ************************************************************/
+	public static boolean choleskySolve(double[] a, int n, double[] b)
+	{
+		//factor a = L L^T//
+		for ( int j = 0; j < n; j++ )
+		{
+			double d = a[j * n + j];
+			for ( int k = 0; k < j; k++ )
+				d -= a[j * n + k] * a[j * n + k];
+			if ( !(d > 0.0) )
+				return false;
+			d = Math.sqrt(d);
+			a[j * n + j] = d;
+			for ( int i = j + 1; i < n; i++ )
+			{
+				double sum = a[i * n + j];
+				for ( int k = 0; k < j; k++ )
+					sum -= a[i * n + k] * a[j * n + k];
+				a[i * n + j] = sum / d;
+			}
+		}
+		//forward substitution L y = b//
+		for ( int i = 0; i < n; i++ )
+		{
+			double sum = b[i];
+			for ( int k = 0; k < i; k++ )
+				sum -= a[i * n + k] * b[k];
+			b[i] = sum / a[i * n + i];
+		}
+		//back substitution L^T x = y//
+		for ( int i = n - 1; i >= 0; i-- )
+		{
+			double sum = b[i];
+			for ( int k = i + 1; k < n; k++ )
+				sum -= a[k * n + i] * b[k];
+			b[i] = sum / a[i * n + i];
+		}
+		return true;
+	}
+
+	/*************************************************************
+	 * @param pn - 12 double projection in normalized coordinates (row major)
+	 * @param worldShift, worldScale - 3 double world point normalization (mean and deviation)
+	 * @param screenShift, screenScale - 2 double screen point normalization (mean and deviation)
+	 * @param result - 12 double array receiving the projection in the original coordinates
+	 * Reverses the normalization: result = modMatrixScreen * pn * modMatrixWorld, computed
+	 * directly without forming the 3x3 and 4x4 correction matrices.
+	 ************************************************************/
+	public static void denormalize(double[] pn, double[] worldShift, double[] worldScale,
+			double[] screenShift, double[] screenScale, double[] result)
+	{
+		//pn * modMatrixWorld//
+		for ( int r = 0; r < 3; r++ )
+		{
+			final int o = r * 4;
+			double last = pn[o + 3];
+			for ( int j = 0; j < 3; j++ )
+			{
+				result[o + j] = pn[o + j] / worldScale[j];
+				last -= result[o + j] * worldShift[j];
+			}
+			result[o + 3] = last;
+		}
+
+		//modMatrixScreen * (pn * modMatrixWorld), the third row is unchanged//
+		for ( int j = 0; j < 4; j++ )
+		{
+			result[j] = screenScale[0] * result[j] + screenShift[0] * result[8 + j];
+			result[4 + j] = screenScale[1] * result[4 + j] + screenShift[1] * result[8 + j];
+		}
+	}
+
+	/*************************************************************
+	 * @param p - 12 double projection (row major), scaled in place
+	 * @param x, y, z - world point which must be projected in front of the viewer
+	 * Normalizes the projection to have a viewing direction of length 1 and flips the
+	 * sign if the passed in point is projected onto a negative z value.
+	 ************************************************************/
+	public static void normalizeViewDirection(double[] p, double x, double y, double z)
+	{
+		double fViewDirLen = Math.sqrt(p[8] * p[8] + p[9] * p[9] + p[10] * p[10]);
+
+		if ( p[8] * x + p[9] * y + p[10] * z + p[11] < 0 )
+			fViewDirLen = -fViewDirLen;
+
+		final double inv = 1.0 / fViewDirLen;
+		for ( int i = 0; i < 12; i++ )
+			p[i] *= inv;
+	}
+
+	/*************************************************************
+	 * @param p - 12 double projection (row major) with a unit viewing direction
+	 * @param u, v - screen point
+	 * @param depth - distance of the point along the viewing direction
+	 * @param result - 3 double array receiving the world point
+	 * Returns the world point which p projects onto (u, v) at the given depth,
+	 * i.e. solves M X = depth * (u, v, 1) - p4 for the left 3x3 block M.
+	 * Returns false if M is singular.
+	 ************************************************************/
+	public static boolean backProject(double[] p, double u, double v, double depth, double[] result)
+	{
+		final double bx = u * depth - p[3], by = v * depth - p[7], bz = depth - p[11];
+		final double c0 = p[5] * p[10] - p[6] * p[9];
+		final double c1 = p[6] * p[8] - p[4] * p[10];
+		final double c2 = p[4] * p[9] - p[5] * p[8];
+		final double det = p[0] * c0 + p[1] * c1 + p[2] * c2;
+		if ( det == 0.0 )
+			return false;
+
+		//Cramer's rule//
+		result[0] = ( bx * c0 + p[1] * ( p[6] * bz - by * p[10] ) + p[2] * ( by * p[9] - p[5] * bz ) ) / det;
+		result[1] = ( p[0] * ( by * p[10] - p[6] * bz ) + bx * c1 + p[2] * ( p[4] * bz - by * p[8] ) ) / det;
+		result[2] = ( p[0] * ( p[5] * bz - by * p[9] ) + p[1] * ( by * p[8] - p[4] * bz ) + bx * c2 ) / det;
+		return true;
+	}
+
+	/*************************************************************
+	 * @param p - 12 double projection (row major)
+	 * @param cov - 144 double covariance of p (row major)
+	 * @param points - packed x, y, z world points starting at offset
+	 * @param count - number of points
+	 * @param result - receives var(u), cov(u, v), var(v) per point (3 * count)
+	 * First order propagation of the projection covariance to the screen:
+	 * with the gradients g_u = (X, 0, -u X) / w and g_v = (0, X, -v X) / w
+	 * of u = p0.X / w, v = p1.X / w (w = p2.X) the pixel covariance is
+	 * [ g_u g_v ]^T cov [ g_u g_v ]. Only the non zero blocks are visited,
+	 * nothing is allocated.
+	 ************************************************************/
+	public static void pixelCovariance(double[] p, double[] cov, double[] points, int offset, int count, double[] result)
+	{
+		for ( int i = 0; i < count; i++ )
+		{
+			final int o = offset + 3 * i;
+			final double x = points[o], y = points[o + 1], z = points[o + 2];
+			final double w = p[8] * x + p[9] * y + p[10] * z + p[11];
+			final double u = ( p[0] * x + p[1] * y + p[2] * z + p[3] ) / w;
+			final double v = ( p[4] * x + p[5] * y + p[6] * z + p[7] ) / w;
+
+			double uu = 0.0, uv = 0.0, vv = 0.0;
+			for ( int a = 0; a < 4; a++ )
+			{
+				final double xa = ( a == 0 ? x : a == 1 ? y : a == 2 ? z : 1.0 ) / w;
+				for ( int b = 0; b < 4; b++ )
+				{
+					final double xb = ( b == 0 ? x : b == 1 ? y : b == 2 ? z : 1.0 ) / w;
+					final double xx = xa * xb;
+					//blocks of cov between the rows (0, 1, 2) of the projection//
+					final double c00 = cov[a * 12 + b], c01 = cov[a * 12 + 4 + b], c02 = cov[a * 12 + 8 + b];
+					final double c11 = cov[( 4 + a ) * 12 + 4 + b], c12 = cov[( 4 + a ) * 12 + 8 + b];
+					final double c20 = cov[( 8 + a ) * 12 + b], c21 = cov[( 8 + a ) * 12 + 4 + b];
+					final double c22 = cov[( 8 + a ) * 12 + 8 + b];
+					uu += xx * ( c00 - u * ( c02 + c20 ) + u * u * c22 );
+					vv += xx * ( c11 - v * ( c12 + c21 ) + v * v * c22 );
+					uv += xx * ( c01 - v * c02 - u * c21 + u * v * c22 );
+				}
+			}
+			result[3 * i] = uu;
+			result[3 * i + 1] = uv;
+			result[3 * i + 2] = vv;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/**************************************************************************************
+ * This file contains FastRandom, a small deterministic pseudo random generator used by
+ * the randomized estimators (sampling of minimal sets, resampling, synthetic data).
+ *************************************************************************************/
+
+package com.spaam.util;
+
+/*******************************************************************************
+ * SplitMix64 generator. It is not thread safe, every worker is expected to own
+ * its own instance. stream( ) derives independent generators from a seed and an
+ * index so that randomized work split across threads produces the same numbers
+ * no matter how the indices are distributed over the threads.
+ ******************************************************************************/
+public final class FastRandom {
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private long state;
+	private double spareGaussian;
+	private boolean hasSpareGaussian = false;
+
+	public FastRandom(long seed)
+	{
+		setSeed(seed);
+	}
+
+	//Returns a generator for the given index of a seeded family of generators//
+	public static FastRandom stream(long seed, long index)
+	{
+		final FastRandom random = new FastRandom(0L);
+		random.setStream(seed, index);
+		return random;
+	}
+
+	//Reseeds this generator to the given index of a seeded family, same numbers as stream( )//
+	//without allocating a generator per index//
+	public void setStream(long seed, long index)
+	{
+		setSeed(mix(seed + mix(index + GOLDEN_GAMMA)));
+	}
+
+	public void setSeed(long seed)
+	{
+		state = seed;
+		hasSpareGaussian = false;
+	}
+
+	//SplitMix64 finalizer, a bijective scrambling of the 64 input bits//
+	public static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	public long nextLong()
+	{
+		state += GOLDEN_GAMMA;
+		return mix(state);
+	}
+
+	//Uniform integer in [0, bound), bound must be positive//
+	public int nextInt(int bound)
+	{
+		return (int) (((nextLong() >>> 33) * bound) >>> 31);
+	}
+
+	//Uniform double in [0, 1)//
+	public double nextDouble()
+	{
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	//Standard normal deviate (Marsaglia polar method)//
+	public double nextGaussian()
+	{
+		if ( hasSpareGaussian )
+		{
+			hasSpareGaussian = false;
+			return spareGaussian;
+		}
+		double u, v, s;
+		do {
+			u = 2.0 * nextDouble() - 1.0;
+			v = 2.0 * nextDouble() - 1.0;
+			s = u * u + v * v;
+		} while ( s >= 1.0 || s == 0.0 );
+		final double m = Math.sqrt(-2.0 * Math.log(s) / s);
+		spareGaussian = v * m;
+		hasSpareGaussian = true;
+		return u * m;
+	}
+}
@@ -0,0 +1,147 @@
+/**************************************************************************************
+ * This file contains the GLProjection helper with the pure projection math needed to
+ * turn a SPAAM 3x4 projection into the 4x4 projection matrix used by OpenGL. It has no
+ * dependency on the Android OpenGL bindings so it can be used off the device as well.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import java.nio.FloatBuffer;
+
+/*******************************************************************
+ * Orthographic and perspective matrix helpers (float based, row major
+ * unless stated otherwise).
+ ******************************************************************/
+public final class GLProjection {
+
+	private GLProjection()
+	{	}
+
+	/*************************************************************
+	 * @param ortho - 16 float array where the result will be stored (assumes row major order)
+	 * @param left - left most pixel of the viewport
+	 * @param right - right most pixel of the viewport
+	 * @param top - top most pixel of the viewport
+	 * @param bottom - bottom most pixel of the viewport
+	 * @param near - value representing the near plane
+	 * @param far - value representing the far plane
+	 * Returns an orthographic matrix with the passed in values for near and far clip plane
+	 * and screen resolutions
+	 ***********************************************************/
+	public static float[] createOrthoMatrix( float[] ortho, int left, int right, int top, int bottom, float near, float far){
+		ortho[0] = 2.0f/(right - left); ortho[1] = 0.0f; ortho[2] = 0.0f; ortho[3] = (right + left)/(left - right);
+		ortho[4] = 0.0f; ortho[5] = 2.0f/(top - bottom); ortho[6] = 0.0f; ortho[7] = (top + bottom)/(bottom - top);
+		ortho[8] = 0.0f; ortho[9] = 0.0f; ortho[10] = 2.0f/(near - far); ortho[11] = (far + near)/(near - far);
+		ortho[12] = 0.0f; ortho[13] = 0.0f; ortho[14] = 0.0f; ortho[15] = 1.0f;
+		
+		return ortho;
+	}
+	
+	/***********************************************************
+	 * @param proj3x4 - 12 float array with the initial 3x4 projection matrix (assumes row major order)
+	 * @param proj4x4 - 16 float array where the result will be stored (assumes row major order)
+	 * @param near - value representing the near plane
+	 * @param far - value representing the far plane
+	 * Combines an orthographic matrix with a 3x4 projection amtrix to produce a 4x4 projection matrix used by OpenGL
+	 **********************************************************/
+	public static float[] create4x4Projection( float[] proj3x4, float[] proj4x4, float near, float far ){
+		//Create Needed Extra Values to expand 3x4 to 4x4//
+		double norm = java.lang.Math.sqrt(proj3x4[0]*proj3x4[0] + proj3x4[1]*proj3x4[1] + proj3x4[2]*proj3x4[2]);
+		double add = near*far*norm;
+		double mult = (-far - near);
+		
+		//Copy Unchanged Values//
+		proj4x4[0] = proj3x4[0]; proj4x4[1] = proj3x4[1]; proj4x4[2] = proj3x4[2]; proj4x4[3] = proj3x4[3];
+		proj4x4[4] = proj3x4[4]; proj4x4[5] = proj3x4[5]; proj4x4[6] = proj3x4[6]; proj4x4[7] = proj3x4[7];
+		proj4x4[8] = proj3x4[8]; proj4x4[9] = proj3x4[9]; proj4x4[10] = proj3x4[10]; proj4x4[11] = proj3x4[11];
+		proj4x4[12] = proj3x4[8]; proj4x4[13] = proj3x4[9]; proj4x4[14] = proj3x4[10]; proj4x4[15] = proj3x4[11];
+		
+		//Modify New Values;
+		proj4x4[8] *= mult; proj4x4[9] *= mult; proj4x4[10] *= mult; proj4x4[11] *= mult; proj4x4[11] += add;
+		
+		return proj4x4;
+	}
+	
+	/***********************************************************
+	 * @param p - 12 double array with the 3x4 SPAAM projection (row major)
+	 * @param left, right, top, bottom - pixels of the viewport edges
+	 * @param near, far - clip planes
+	 * @param dst - 16 float array receiving the OpenGL 4x4 projection (column major)
+	 * @param offset - index of the first element written in dst
+	 * Computes ortho * expand(p), the matrix of SPAAM_SVD.BuildGLMatrix3x4( ), in one pass. Only the 6 non zero
+	 * elements of the orthographic matrix are used and the result is written transposed,
+	 * so nothing is allocated and no state is shared. Cheap enough to run per frame.
+	 **********************************************************/
+	public static void buildProjection( double[] p, int left, int right, int top, int bottom, double near, double far, float[] dst, int offset ){
+		build(p, left, right, top, bottom, near, far, dst, null, null, offset);
+	}
+
+	/***********************************************************
+	 * Same as above but writes into a FloatBuffer (e.g. a direct buffer passed to
+	 * glUniformMatrix4fv) at its current position. The position is not changed.
+	 **********************************************************/
+	public static void buildProjection( double[] p, int left, int right, int top, int bottom, double near, double far, FloatBuffer dst ){
+		build(p, left, right, top, bottom, near, far, null, dst, null, dst.position());
+	}
+
+	/***********************************************************
+	 * Same as above in double precision, used by SPAAM_SVD.BuildGLMatrix3x4( ).
+	 **********************************************************/
+	public static void buildProjection( double[] p, int left, int right, int top, int bottom, double near, double far, double[] dst, int offset ){
+		build(p, left, right, top, bottom, near, far, null, null, dst, offset);
+	}
+
+	//Computes the coefficients of ortho * expand(p) once and stores the columns into the one non null destination//
+	private static void build( double[] p, int left, int right, int top, int bottom, double near, double far,
+			float[] floats, FloatBuffer buffer, double[] doubles, int offset ){
+		//Scale and offset of the orthographic rows, folded with the expansion of the third row//
+		final double sx = 2.0 / (right - left), tx = (double)(right + left) / (left - right);
+		final double sy = 2.0 / (top - bottom), ty = (double)(top + bottom) / (bottom - top);
+		final double sz = 2.0 / (near - far), tz = (far + near) / (near - far);
+		final double depth = tz - sz * (far + near);
+		final double add = sz * far * near * java.lang.Math.sqrt(p[8]*p[8] + p[9]*p[9] + p[10]*p[10]);
+
+		for ( int c = 0; c < 4; c++ ){
+			final int o = offset + 4 * c;
+			final double x = sx * p[c] + tx * p[8 + c];
+			final double y = sy * p[4 + c] + ty * p[8 + c];
+			final double z = depth * p[8 + c] + (c == 3 ? add : 0.0);
+			if ( floats != null ){
+				floats[o] = (float)x; floats[o + 1] = (float)y; floats[o + 2] = (float)z; floats[o + 3] = (float)p[8 + c];
+			}
+			else if ( buffer != null ){
+				buffer.put(o, (float)x); buffer.put(o + 1, (float)y); buffer.put(o + 2, (float)z); buffer.put(o + 3, (float)p[8 + c]);
+			}
+			else {
+				doubles[o] = x; doubles[o + 1] = y; doubles[o + 2] = z; doubles[o + 3] = p[8 + c];
+			}
+		}
+	}
+
+	/***********************************************************
+	 * @param gl - 16 double OpenGL 4x4 projection (column major), e.g. read from a .calib file
+	 * @param left, right, top, bottom - pixels of the viewport edges it was built with
+	 * @param p - 12 double array receiving the 3x4 projection (row major)
+	 * Undoes buildProjection( ). The clip planes do not matter, the result is
+	 * determined up to the scale of the viewing direction like a DLT result.
+	 **********************************************************/
+	public static void toProjection3x4( double[] gl, int left, int right, int top, int bottom, double[] p ){
+		final double sx = (right - left) / 2.0, ox = (right + left) / (double)(right - left);
+		final double sy = (top - bottom) / 2.0, oy = (top + bottom) / (double)(top - bottom);
+		for ( int c = 0; c < 4; c++ ){
+			p[c] = sx * (gl[c * 4] + ox * gl[c * 4 + 3]);
+			p[4 + c] = sy * (gl[c * 4 + 1] + oy * gl[c * 4 + 3]);
+			p[8 + c] = gl[c * 4 + 3];
+		}
+	}
+
+	//Helper function to transpose a matrix (from row major to column major ro vice versa//
+	public static float[] transposeMatrix(float [] m){
+        float[] temp = new float[m.length];
+        temp[0] = m[0]; temp[1] = m[4]; temp[2] = m[8]; temp[3] = m[12];
+		temp[4] = m[1]; temp[5] = m[5]; temp[6] = m[9]; temp[7] = m[13];
+		temp[8] = m[2]; temp[9] = m[6]; temp[10] = m[10]; temp[11] = m[14];
+		temp[12] = m[3]; temp[13] = m[7]; temp[14] = m[11]; temp[15] = m[15];
+        return temp;
+    }
+}
@@ -0,0 +1,262 @@
+/**************************************************************************************
+ * This file contains the LeaveOneOutValidator which reports, for every correspondence
+ * pair of a session, the reprojection error of that pair under the projection solved
+ * from all of the other pairs (leave-one-out cross-validation).
+ *************************************************************************************/
+
+package com.spaam.util;
+
+/*******************************************************************************
+ * A naive report runs N separate DLT solves. Here the normalized normal
+ * matrix G = A^T A of the full session is decomposed once (G = V L V^T).
+ * Leaving pair i out removes its two design rows a, b:
+ *
+ * 		G_i = G - U U^T			U = [ a b ]  (12 x 2)
+ *
+ * and the null vector of G_i is found by a few steps of inverse iteration
+ * started from the full solution. Each step applies (G_i + dI)^-1 through
+ * the Woodbury identity
+ *
+ * 		(B - U U^T)^-1 = B^-1 + B^-1 U (I - U^T B^-1 U)^-1 U^T B^-1,  B = G + dI
+ *
+ * where B^-1 comes straight from the shared eigen decomposition, so every
+ * left out pair costs O(12^2) instead of a full solve.
+ *
+ * The normalization of the full session is kept for every left out solve.
+ * A solve which re-normalizes N-1 pairs minimizes a slightly differently
+ * weighted algebraic error, so the reported errors differ from N separate
+ * projectionDLTImpl( ) solves by a few percent for a full 25 cross session
+ * (more for sessions barely above the minimum of 7 pairs).
+ *
+ * The report is meant to be produced after every tap: the leave-one-out
+ * RMS is an estimate of the error on alignments not used for the solve and
+ * levels off once enough crosses have been collected (see isConverged( )).
+ ******************************************************************************/
+public class LeaveOneOutValidator {
+	//Number of inverse iteration steps per left out pair//
+	private static final int ITERATIONS = 4;
+
+	////Normalization Components////
+	private final double[] worldShift = new double[3];
+	private final double[] worldScale = new double[3];
+	private final double[] screenShift = new double[2];
+	private final double[] screenScale = new double[2];
+	private final PointStatistics statistics = new PointStatistics();
+
+	////Shared Factorization////
+	private final double[] gram = new double[144];
+	private final double[] eigenVectors = new double[144];
+	private final double[] eigenValues = new double[12];
+	private final double[] inverseValues = new double[12];
+	private final double[] full = new double[12];
+
+	////Per Pair Workspace////
+	private final double[] rows = new double[24];
+	private final double[] z = new double[24];
+	private final double[] x = new double[12];
+	private final double[] y = new double[12];
+	private final double[] temp = new double[12];
+	private final double[] projection = new double[12];
+	private final double[] fullProjection = new double[12];
+	//Weight column of the validated pairs, null if all weights are 1//
+	private double[] weight = null;
+
+	////Results////
+	private double[] errors = new double[0];
+	private int count = 0;
+	private double looRms = 0.0;
+	private double fitRms = 0.0;
+	private int worst = -1;
+
+	//Default Constructor that does nothing//
+	public LeaveOneOutValidator()
+	{	}
+
+	////Results////
+
+	//Leave-one-out reprojection error (pixels) of every pair of the last validate( ) call//
+	public double[] getErrors() { return errors; }
+	public int size() { return count; }
+	//RMS of the leave-one-out errors//
+	public double getLooRms() { return looRms; }
+	//RMS reprojection error of the solve over all pairs, for comparison//
+	public double getFitRms() { return fitRms; }
+	//Index of the pair with the largest leave-one-out error (the first candidate for an undo)//
+	public int getWorstIndex() { return worst; }
+
+	/*************************************************************
+	 * @param targetRms - acceptable error in pixels on unseen alignments
+	 * Returns true once the leave-one-out RMS is below the target, i.e.
+	 * further crosses are unlikely to improve the calibration noticeably.
+	 ************************************************************/
+	public boolean isConverged(double targetRms)
+	{
+		return count > 0 && looRms <= targetRms;
+	}
+
+	/*************************************************************
+	 * @param points - the pairs of the session (at least 7)
+	 * Computes the leave-one-out error of every pair.
+	 * Returns false if there are too few pairs.
+	 ************************************************************/
+	public boolean validate(CorrespondenceBuffer points)
+	{
+		final int n = points.size();
+		////every left out solve still needs 6 pairs////
+		if ( n < 7 )
+			return false;
+		if ( errors.length < n )
+			errors = new double[n];
+		count = n;
+
+		final double[] wx = points.worldXColumn(), wy = points.worldYColumn(), wz = points.worldZColumn();
+		final double[] sx = points.screenXColumn(), sy = points.screenYColumn();
+		weight = points.weightColumn();
+
+		estimateNormalization(wx, wy, wz, sx, sy, n);
+
+		////G = A^T A over the normalized rows of all pairs////
+		for ( int k = 0; k < 144; k++ )
+			gram[k] = 0.0;
+		for ( int i = 0; i < n; i++ )
+		{
+			normalizedRows(i, wx[i], wy[i], wz[i], sx[i], sy[i]);
+			for ( int r = 0; r < 12; r++ )
+			{
+				final double a = rows[r], b = rows[12 + r];
+				if ( a == 0.0 && b == 0.0 )
+					continue;
+				for ( int c = r; c < 12; c++ )
+					gram[r * 12 + c] += a * rows[c] + b * rows[12 + c];
+			}
+		}
+		for ( int r = 0; r < 12; r++ )
+			for ( int c = 0; c < r; c++ )
+				gram[r * 12 + c] = gram[c * 12 + r];
+
+		////shared factorization////
+		DLTMath.symmetricEigen(gram, 12, eigenVectors, eigenValues);
+		int smallest = 0;
+		double largest = 0.0;
+		for ( int k = 0; k < 12; k++ )
+		{
+			if ( eigenValues[k] < eigenValues[smallest] )
+				smallest = k;
+			largest = Math.max(largest, eigenValues[k]);
+		}
+		//the shift keeps B = G + dI invertible for noise free data//
+		final double shift = 1e-12 * largest;
+		for ( int k = 0; k < 12; k++ )
+			inverseValues[k] = 1.0 / ( Math.max(eigenValues[k], 0.0) + shift );
+		for ( int k = 0; k < 12; k++ )
+			full[k] = eigenVectors[k * 12 + smallest];
+
+		////in sample error of the full solve////
+		DLTMath.denormalize(full, worldShift, worldScale, screenShift, screenScale, fullProjection);
+		DLTMath.normalizeViewDirection(fullProjection, worldShift[0], worldShift[1], worldShift[2]);
+		double sum = 0.0;
+		for ( int i = 0; i < n; i++ )
+			sum += RansacEstimator.reprojectionError2(fullProjection, wx[i], wy[i], wz[i], sx[i], sy[i]);
+		fitRms = Math.sqrt(sum / n);
+
+		////leave every pair out in turn////
+		sum = 0.0;
+		worst = 0;
+		for ( int i = 0; i < n; i++ )
+		{
+			normalizedRows(i, wx[i], wy[i], wz[i], sx[i], sy[i]);
+			solveWithout();
+			DLTMath.denormalize(x, worldShift, worldScale, screenShift, screenScale, projection);
+			DLTMath.normalizeViewDirection(projection, worldShift[0], worldShift[1], worldShift[2]);
+			errors[i] = Math.sqrt(RansacEstimator.reprojectionError2(projection, wx[i], wy[i], wz[i], sx[i], sy[i]));
+			sum += errors[i] * errors[i];
+			if ( errors[i] > errors[worst] )
+				worst = i;
+		}
+		looRms = Math.sqrt(sum / n);
+		return true;
+	}
+
+	//Null vector of G - U U^T (U = the rows in the workspace) by inverse iteration, written into x//
+	private void solveWithout()
+	{
+		////Z = B^-1 U and the 2x2 capacitance matrix S = I - U^T Z////
+		applyInverse(rows, 0, z, 0);
+		applyInverse(rows, 12, z, 12);
+		double s00 = 1.0, s01 = 0.0, s10 = 0.0, s11 = 1.0;
+		for ( int k = 0; k < 12; k++ )
+		{
+			s00 -= rows[k] * z[k];
+			s01 -= rows[k] * z[12 + k];
+			s10 -= rows[12 + k] * z[k];
+			s11 -= rows[12 + k] * z[12 + k];
+		}
+		final double det = s00 * s11 - s01 * s10;
+
+		System.arraycopy(full, 0, x, 0, 12);
+		for ( int it = 0; it < ITERATIONS; it++ )
+		{
+			////y = B^-1 x, x' = y + Z S^-1 U^T y////
+			applyInverse(x, 0, y, 0);
+			double ua = 0.0, ub = 0.0;
+			for ( int k = 0; k < 12; k++ )
+			{
+				ua += rows[k] * y[k];
+				ub += rows[12 + k] * y[k];
+			}
+			final double ca = ( s11 * ua - s01 * ub ) / det;
+			final double cb = ( s00 * ub - s10 * ua ) / det;
+			double norm = 0.0;
+			for ( int k = 0; k < 12; k++ )
+			{
+				x[k] = y[k] + z[k] * ca + z[12 + k] * cb;
+				norm += x[k] * x[k];
+			}
+			norm = Math.sqrt(norm);
+			for ( int k = 0; k < 12; k++ )
+				x[k] /= norm;
+		}
+	}
+
+	//out = B^-1 in = V diag(1/(l+d)) V^T in//
+	private void applyInverse(double[] in, int inOffset, double[] out, int outOffset)
+	{
+		for ( int k = 0; k < 12; k++ )
+		{
+			double dot = 0.0;
+			for ( int r = 0; r < 12; r++ )
+				dot += eigenVectors[r * 12 + k] * in[inOffset + r];
+			temp[k] = dot * inverseValues[k];
+		}
+		for ( int r = 0; r < 12; r++ )
+		{
+			double value = 0.0;
+			for ( int k = 0; k < 12; k++ )
+				value += eigenVectors[r * 12 + k] * temp[k];
+			out[outOffset + r] = value;
+		}
+	}
+
+	//Normalized (and weighted) design rows of pair i//
+	private void normalizedRows(int i, double wx, double wy, double wz, double sx, double sy)
+	{
+		DLTMath.fillDesignRows(rows, 0,
+				( wx - worldShift[0] ) / worldScale[0],
+				( wy - worldShift[1] ) / worldScale[1],
+				( wz - worldShift[2] ) / worldScale[2],
+				( sx - screenShift[0] ) / screenScale[0],
+				( sy - screenShift[1] ) / screenScale[1]);
+		if ( weight != null && weight[i] != 1.0 )
+			DLTMath.scaleDesignRows(rows, 0, Math.sqrt(weight[i]));
+	}
+
+	//Weighted mean and standard deviation of the world and screen points, by the same West update as//
+	//the normalization of the solvers (see PointStatistics), so no power sums can cancel//
+	private void estimateNormalization(double[] wx, double[] wy, double[] wz, double[] sx, double[] sy, int n)
+	{
+		statistics.clear();
+		for ( int i = 0; i < n; i++ )
+			statistics.add(wx[i], wy[i], wz[i], sx[i], sy[i], weight == null ? 1.0 : weight[i]);
+		statistics.normalization(worldShift, worldScale, screenShift, screenScale);
+	}
+}
@@ -0,0 +1,372 @@
+/**************************************************************************************
+ * This file contains the NormalEquationAccumulator which maintains the running normal
+ * equations (A^T A) of the SPAAM Direct Linear Transform so that a new correspondence
+ * pair can be folded in at constant cost instead of rebuilding and decomposing the
+ * full 2N x 12 design matrix on every solve.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+/*******************************************************************************
+ * Every correspondence pair contributes the two DLT rows
+ *
+ * 		odd  = [ h, 0, -u*h ]		even = [ 0, -h, v*h ]		h = (x, y, z, 1)
+ *
+ * to the design matrix A. The products of these rows only ever involve the
+ * 4x4 moments  sum(h h^T), sum(u h h^T), sum(u^2 h h^T), sum(v h h^T) and
+ * sum(v^2 h h^T), so these five symmetric matrices are the complete state of
+ * the accumulator. Since the normalization of the world and screen points is
+ * an affine transform of h, u and v, the normalized A^T A can be produced from
+ * the raw moments at any time by a congruence transform. This means a change
+ * of the normalization parameters (every new point moves the mean and the
+ * standard deviation) never requires revisiting the individual pairs.
+ *
+ * A pair with weight w scales all five moments by w, which is the same as
+ * scaling both of its rows by sqrt(w); the normalization becomes the
+ * weighted mean and standard deviation, which PointStatistics maintains
+ * alongside the moments without the cancellation of the power sums.
+ *
+ * The null vector is then found by inverse iteration on the fixed size 12x12
+ * matrix (DLTMath.nullVector12( )), so the cost of a solve does not depend on
+ * the number of pairs collected.
+ ******************************************************************************/
+public class NormalEquationAccumulator {
+	//Number of unique elements of a symmetric 4x4 matrix//
+	private static final int SYM4 = 10;
+	//Row/column of each of the unique elements (upper triangle, row by row)//
+	private static final int[] SYM_ROW = {0, 0, 0, 0, 1, 1, 1, 2, 2, 3};
+	private static final int[] SYM_COL = {0, 1, 2, 3, 1, 2, 3, 2, 3, 3};
+
+	////Number of pairs folded into the moments////
+	private int count = 0;
+
+	////Raw moments of the homogeneous world point, weighted by 1, u, u^2, v and v^2////
+	private final double[] m0 = new double[SYM4];
+	private final double[] mu = new double[SYM4];
+	private final double[] muu = new double[SYM4];
+	private final double[] mv = new double[SYM4];
+	private final double[] mvv = new double[SYM4];
+
+	////Running mean and standard deviation of the points, the normalization////
+	private final PointStatistics statistics = new PointStatistics();
+
+	////Normalization Components////
+	private final double[] worldShift = new double[3];
+	private final double[] worldScale = new double[3];
+	private final double[] screenShift = new double[2];
+	private final double[] screenScale = new double[2];
+
+	////Solve Workspace////
+	private final double[] full = new double[16];
+	private final double[] temp = new double[16];
+	private final double[] n0 = new double[16];
+	private final double[] nu = new double[16];
+	private final double[] nuu = new double[16];
+	private final double[] nv = new double[16];
+	private final double[] nvv = new double[16];
+	private final double[] gram = new double[144];
+	private final double[] eigenVectors = new double[144];
+	private final double[] eigenValues = new double[12];
+	private final double[] nullVector = new double[12];
+	private final double[] factor = new double[144];
+	private final double[] iterate = new double[12];
+	//State of the last successful solve, used by covariance( )//
+	private final double[] denormalized = new double[12];
+	private boolean solved = false;
+
+	////Covariance Workspace////
+	private final double[] normalizedCovariance = new double[144];
+	private final double[] jacobian = new double[144];
+	private final double[] product = new double[144];
+	private final double[] unit = new double[12];
+	private final double[] column = new double[12];
+
+	//Default Constructor that does nothing//
+	public NormalEquationAccumulator()
+	{	}
+
+	//Number of correspondence pairs currently folded into the normal equations//
+	public int size()
+	{
+		return count;
+	}
+
+	//Removes all correspondence pairs//
+	public void clear()
+	{
+		count = 0;
+		solved = false;
+		statistics.clear();
+		for ( int k = 0; k < SYM4; k++ )
+		{
+			m0[k] = 0.0; mu[k] = 0.0; muu[k] = 0.0; mv[k] = 0.0; mvv[k] = 0.0;
+		}
+	}
+
+	/*************************************************************
+	 * @param wx, wy, wz - 3D world point
+	 * @param sx, sy - 2D screen point
+	 * Folds one correspondence pair into the normal equations (constant cost)
+	 ************************************************************/
+	public void add(double wx, double wy, double wz, double sx, double sy)
+	{
+		add(wx, wy, wz, sx, sy, 1.0);
+	}
+
+	/*************************************************************
+	 * @param wx, wy, wz - 3D world point
+	 * @param sx, sy - 2D screen point
+	 * @param weight - confidence of the pair (1 is the default)
+	 * Folds one weighted pair into the normal equations. Both rows of the
+	 * pair are scaled by sqrt(weight), so the pair counts weight times in
+	 * A^T A and in the (weighted) normalization means.
+	 ************************************************************/
+	public void add(double wx, double wy, double wz, double sx, double sy, double weight)
+	{
+		fold(weight, wx, wy, wz, sx, sy);
+		statistics.add(wx, wy, wz, sx, sy, weight);
+		count++;
+	}
+
+	/*************************************************************
+	 * @param wx, wy, wz - 3D world point
+	 * @param sx, sy - 2D screen point
+	 * Removes a pair previously folded in with add( ) from the normal
+	 * equations. This is the rank-2 downdate of A^T A by the pair's two
+	 * rows, applied to the moments (constant cost). The caller must only
+	 * remove pairs it added, otherwise the state no longer describes a
+	 * set of pairs.
+	 ************************************************************/
+	public void remove(double wx, double wy, double wz, double sx, double sy)
+	{
+		remove(wx, wy, wz, sx, sy, 1.0);
+	}
+
+	//Removes a pair previously folded in with add( ) and the same weight//
+	public void remove(double wx, double wy, double wz, double sx, double sy, double weight)
+	{
+		if ( count <= 1 )
+		{
+			////removing the last pair, start from exact zeros instead of cancellation residue////
+			clear();
+			return;
+		}
+
+		fold(-weight, wx, wy, wz, sx, sy);
+		statistics.remove(wx, wy, wz, sx, sy, weight);
+		count--;
+	}
+
+	//Adds (positive sign) or subtracts (negative sign) the pair's contribution, scaled by |sign|, to the five moments//
+	private void fold(double sign, double wx, double wy, double wz, double sx, double sy)
+	{
+		//unique products of h h^T//
+		final double p0 = wx * wx, p1 = wx * wy, p2 = wx * wz, p3 = wx;
+		final double p4 = wy * wy, p5 = wy * wz, p6 = wy;
+		final double p7 = wz * wz, p8 = wz;
+		final double p9 = 1.0;
+		solved = false;
+
+		accumulate(m0, sign, p0, p1, p2, p3, p4, p5, p6, p7, p8, p9);
+		accumulate(mu, sign * sx, p0, p1, p2, p3, p4, p5, p6, p7, p8, p9);
+		accumulate(muu, sign * sx * sx, p0, p1, p2, p3, p4, p5, p6, p7, p8, p9);
+		accumulate(mv, sign * sy, p0, p1, p2, p3, p4, p5, p6, p7, p8, p9);
+		accumulate(mvv, sign * sy * sy, p0, p1, p2, p3, p4, p5, p6, p7, p8, p9);
+	}
+
+	private static void accumulate(double[] m, double f, double p0, double p1, double p2, double p3, double p4,
+			double p5, double p6, double p7, double p8, double p9)
+	{
+		m[0] += f * p0; m[1] += f * p1; m[2] += f * p2; m[3] += f * p3; m[4] += f * p4;
+		m[5] += f * p5; m[6] += f * p6; m[7] += f * p7; m[8] += f * p8; m[9] += f * p9;
+	}
+
+	/*************************************************************
+	 * @param result - 12 double array receiving the 3x4 projection (row major)
+	 * Solves the DLT from the accumulated normal equations. The result is
+	 * normalized to a viewing direction of length 1 with the centroid of the
+	 * world points in front of the viewer.
+	 * Returns false if fewer than 6 pairs with a positive weight have been
+	 * accumulated.
+	 ************************************************************/
+	public boolean solve(double[] result)
+	{
+		////minimum of 6 correspondence points required to solve////
+		if ( statistics.weightedSize() < 6 )
+			return false;
+
+		estimateNormalizationParameters( );
+		buildNormalizedGram( );
+
+		DLTMath.nullVector12(gram, factor, iterate, nullVector);
+
+		DLTMath.denormalize(nullVector, worldShift, worldScale, screenShift, screenScale, result);
+		System.arraycopy(result, 0, denormalized, 0, 12);
+		DLTMath.normalizeViewDirection(result, worldShift[0], worldShift[1], worldShift[2]);
+		solved = true;
+		return true;
+	}
+
+	/*************************************************************
+	 * @param result - 144 double array receiving the 12x12 covariance (row major)
+	 *   of the projection returned by the last solve( )
+	 * First order covariance of the projection. In the normalized system the
+	 * perturbation of the unit null vector is
+	 *
+	 * 		Cov(p) = s^2 * sum_{k != min} v_k v_k^T / l_k,	s^2 = l_min / (2N - 11)
+	 *
+	 * with the eigen pairs (l_k, v_k) of the normalized A^T A built by solve( )
+	 * (decomposed here, the solve itself only computes the null vector) and
+	 * the residual variance s^2 estimated from the smallest
+	 * eigenvalue (the algebraic residual, 2N equations for 11 degrees of
+	 * freedom). It is propagated through the denormalization and the scaling
+	 * to a unit viewing direction by their Jacobians.
+	 * Returns false if solve( ) has not succeeded since the last change.
+	 ************************************************************/
+	public boolean covariance(double[] result)
+	{
+		if ( !solved )
+			return false;
+
+		System.arraycopy(gram, 0, jacobian, 0, 144);
+		DLTMath.symmetricEigen(jacobian, 12, eigenVectors, eigenValues);
+		int smallestIndex = 0;
+		for ( int k = 1; k < 12; k++ )
+			if ( eigenValues[k] < eigenValues[smallestIndex] )
+				smallestIndex = k;
+
+		final double sigma2 = Math.max(eigenValues[smallestIndex], 0.0) / ( 2 * statistics.weightedSize() - 11 );
+		for ( int r = 0; r < 12; r++ )
+			for ( int c = r; c < 12; c++ )
+			{
+				double sum = 0.0;
+				for ( int k = 0; k < 12; k++ )
+				{
+					if ( k == smallestIndex || eigenValues[k] <= 0.0 )
+						continue;
+					sum += eigenVectors[r * 12 + k] * eigenVectors[c * 12 + k] / eigenValues[k];
+				}
+				normalizedCovariance[r * 12 + c] = sigma2 * sum;
+				normalizedCovariance[c * 12 + r] = sigma2 * sum;
+			}
+
+		////Jacobian of the (linear) denormalization, column by column////
+		for ( int j = 0; j < 12; j++ )
+		{
+			for ( int k = 0; k < 12; k++ )
+				unit[k] = 0.0;
+			unit[j] = 1.0;
+			DLTMath.denormalize(unit, worldShift, worldScale, screenShift, screenScale, column);
+			for ( int r = 0; r < 12; r++ )
+				jacobian[r * 12 + j] = column[r];
+		}
+
+		////chain the Jacobian of q = p / |p_view| (sign irrelevant for the covariance)////
+		final double len = Math.sqrt(denormalized[8] * denormalized[8] + denormalized[9] * denormalized[9]
+				+ denormalized[10] * denormalized[10]);
+		for ( int j = 0; j < 12; j++ )
+		{
+			final double view = ( denormalized[8] * jacobian[8 * 12 + j] + denormalized[9] * jacobian[9 * 12 + j]
+					+ denormalized[10] * jacobian[10 * 12 + j] ) / ( len * len );
+			for ( int r = 0; r < 12; r++ )
+				product[r * 12 + j] = ( jacobian[r * 12 + j] - denormalized[r] * view ) / len;
+		}
+
+		////result = J Cov(p) J^T////
+		for ( int r = 0; r < 12; r++ )
+			for ( int c = 0; c < 12; c++ )
+			{
+				double sum = 0.0;
+				for ( int k = 0; k < 12; k++ )
+					sum += product[r * 12 + k] * normalizedCovariance[k * 12 + c];
+				jacobian[r * 12 + c] = sum;
+			}
+		for ( int r = 0; r < 12; r++ )
+			for ( int c = r; c < 12; c++ )
+			{
+				double sum = 0.0;
+				for ( int k = 0; k < 12; k++ )
+					sum += jacobian[r * 12 + k] * product[c * 12 + k];
+				result[r * 12 + c] = sum;
+				result[c * 12 + r] = sum;
+			}
+		return true;
+	}
+
+	//Mean and standard deviation of the world and screen points, maintained by the running statistics//
+	private void estimateNormalizationParameters( )
+	{
+		statistics.normalization(worldShift, worldScale, screenShift, screenScale);
+	}
+
+	//Produces the normalized 12x12 A^T A from the raw moments//
+	private void buildNormalizedGram( )
+	{
+		final double tx = screenShift[0], sx = screenScale[0];
+		final double ty = screenShift[1], sy = screenScale[1];
+
+		//sum(h' h'^T)//
+		normalizeWorld(m0, 1.0, null, 0.0, null, 0.0, n0);
+		//sum(u' h' h'^T) with u' = (u - tx)/sx//
+		normalizeWorld(mu, 1.0 / sx, m0, -tx / sx, null, 0.0, nu);
+		normalizeWorld(mv, 1.0 / sy, m0, -ty / sy, null, 0.0, nv);
+		//sum(u'^2 h' h'^T)//
+		normalizeWorld(muu, 1.0 / (sx * sx), mu, -2.0 * tx / (sx * sx), m0, tx * tx / (sx * sx), nuu);
+		normalizeWorld(mvv, 1.0 / (sy * sy), mv, -2.0 * ty / (sy * sy), m0, ty * ty / (sy * sy), nvv);
+
+		for ( int i = 0; i < 144; i++ )
+			gram[i] = 0.0;
+
+		for ( int r = 0; r < 4; r++ )
+		{
+			for ( int c = 0; c < 4; c++ )
+			{
+				final int k = r * 4 + c;
+				//odd rows: [ h, 0, -u h ]//
+				gram[r * 12 + c] = n0[k];
+				gram[r * 12 + 8 + c] = -nu[k];
+				gram[(8 + r) * 12 + c] = -nu[k];
+				//even rows: [ 0, -h, v h ]//
+				gram[(4 + r) * 12 + 4 + c] = n0[k];
+				gram[(4 + r) * 12 + 8 + c] = -nv[k];
+				gram[(8 + r) * 12 + 4 + c] = -nv[k];
+				//both//
+				gram[(8 + r) * 12 + 8 + c] = nuu[k] + nvv[k];
+			}
+		}
+	}
+
+	/*************************************************************
+	 * Forms the symmetric 4x4 matrix  S = a*ma + b*mb + c*mc  (mb and mc may be null)
+	 * from packed moments and applies the world normalization  W S W^T  with
+	 * W = modMatrixWorld, writing the full 4x4 result into out.
+	 ************************************************************/
+	private void normalizeWorld(double[] ma, double a, double[] mb, double b, double[] mc, double c, double[] out)
+	{
+		for ( int k = 0; k < SYM4; k++ )
+		{
+			double value = a * ma[k];
+			if ( mb != null )
+				value += b * mb[k];
+			if ( mc != null )
+				value += c * mc[k];
+			full[SYM_ROW[k] * 4 + SYM_COL[k]] = value;
+			full[SYM_COL[k] * 4 + SYM_ROW[k]] = value;
+		}
+
+		//W = [ diag(1/scale), -shift/scale ; 0 0 0 1 ], temp = W S//
+		for ( int c4 = 0; c4 < 4; c4++ )
+		{
+			for ( int r = 0; r < 3; r++ )
+				temp[r * 4 + c4] = ( full[r * 4 + c4] - worldShift[r] * full[12 + c4] ) / worldScale[r];
+			temp[12 + c4] = full[12 + c4];
+		}
+		//out = temp W^T//
+		for ( int r = 0; r < 4; r++ )
+		{
+			for ( int c3 = 0; c3 < 3; c3++ )
+				out[r * 4 + c3] = ( temp[r * 4 + c3] - worldShift[c3] * temp[r * 4 + 3] ) / worldScale[c3];
+			out[r * 4 + 3] = temp[r * 4 + 3];
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/**************************************************************************************
+ * This file contains PointStatistics, the running weighted mean and covariance of the
+ * world and screen points of a set of correspondence pairs. It provides the DLT
+ * normalization (shift and scale) and the point spread at constant cost per pair.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+/*******************************************************************************
+ * West's weighted variant of Welford's algorithm. Instead of power sums
+ * (sum x, sum x^2), whose difference E[x^2] - E[x]^2 cancels catastrophically
+ * for tightly clustered points far from the origin, the mean and the
+ * co-moment C = sum w (x - mean)(x - mean)^T are updated directly:
+ *
+ * 		add:	W' = W + w,  d = x - mean,  mean' = mean + d w / W',  C' = C + w d d^T W / W'
+ * 		remove:	W' = W - w,  d = x - mean,  mean' = mean - d w / W',  C' = C - w d d^T W / W'
+ *
+ * The update only involves deviations from the current mean, so float inputs
+ * (e.g. streamed samples) keep their full precision in the statistics.
+ * Removing a pair is the exact inverse of adding it, up to rounding.
+ *
+ * An instance is not thread safe.
+ ******************************************************************************/
+public class PointStatistics {
+	private int count = 0;
+	//pairs with a positive weight//
+	private int weighted = 0;
+	private double total = 0.0;
+
+	////World Points////
+	private final double[] worldMean = new double[3];
+	//co-moments xx, xy, xz, yy, yz, zz//
+	private final double[] worldCo = new double[6];
+
+	////Screen Points////
+	private final double[] screenMean = new double[2];
+	//co-moments uu, uv, vv//
+	private final double[] screenCo = new double[3];
+
+	//Default Constructor that does nothing//
+	public PointStatistics()
+	{	}
+
+	public int size() { return count; }
+	//Number of pairs with a positive weight, pairs of weight 0 do not constrain anything//
+	public int weightedSize() { return weighted; }
+	//Sum of the weights of the pairs//
+	public double totalWeight() { return total; }
+
+	public void clear()
+	{
+		count = 0;
+		weighted = 0;
+		total = 0.0;
+		for ( int k = 0; k < 6; k++ )
+			worldCo[k] = 0.0;
+		for ( int k = 0; k < 3; k++ )
+		{
+			worldMean[k] = 0.0;
+			screenCo[k] = 0.0;
+		}
+		screenMean[0] = 0.0; screenMean[1] = 0.0;
+	}
+
+	public void add(double wx, double wy, double wz, double sx, double sy, double weight)
+	{
+		if ( weight == 0.0 )
+		{
+			count++;
+			return;
+		}
+		final double next = total + weight;
+		update(weight, weight / next, weight * total / next, wx, wy, wz, sx, sy);
+		total = next;
+		count++;
+		weighted++;
+	}
+
+	//Removes a pair previously added with the same weight//
+	public void remove(double wx, double wy, double wz, double sx, double sy, double weight)
+	{
+		final double next = total - weight;
+		if ( count <= 1 || next <= 0.0 )
+		{
+			////removing the last pair, start from exact zeros instead of cancellation residue////
+			final int remaining = count - 1;
+			clear();
+			count = Math.max(remaining, 0);
+			return;
+		}
+		if ( weight == 0.0 )
+		{
+			count--;
+			return;
+		}
+		update(weight, -weight / next, -weight * total / next, wx, wy, wz, sx, sy);
+		total = next;
+		count--;
+		weighted--;
+	}
+
+	//mean += d * shift, co-moment += d d^T * scale with d = x - mean//
+	private void update(double weight, double shift, double scale, double wx, double wy, double wz, double sx, double sy)
+	{
+		final double dx = wx - worldMean[0], dy = wy - worldMean[1], dz = wz - worldMean[2];
+		worldMean[0] += dx * shift; worldMean[1] += dy * shift; worldMean[2] += dz * shift;
+		worldCo[0] += scale * dx * dx; worldCo[1] += scale * dx * dy; worldCo[2] += scale * dx * dz;
+		worldCo[3] += scale * dy * dy; worldCo[4] += scale * dy * dz; worldCo[5] += scale * dz * dz;
+
+		final double du = sx - screenMean[0], dv = sy - screenMean[1];
+		screenMean[0] += du * shift; screenMean[1] += dv * shift;
+		screenCo[0] += scale * du * du; screenCo[1] += scale * du * dv; screenCo[2] += scale * dv * dv;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Statistics (weighted, population normalization as in the DLT normalization)////
+
+	public double worldMean(int axis) { return worldMean[axis]; }
+	public double screenMean(int axis) { return screenMean[axis]; }
+
+	//Standard deviation of the world points along axis 0, 1 or 2//
+	public double worldStdDev(int axis)
+	{
+		return Math.sqrt(Math.max(worldCo[axis == 0 ? 0 : axis == 1 ? 3 : 5], 0.0) / total);
+	}
+
+	//Standard deviation of the screen points along axis 0 or 1//
+	public double screenStdDev(int axis)
+	{
+		return Math.sqrt(Math.max(screenCo[axis == 0 ? 0 : 2], 0.0) / total);
+	}
+
+	//Writes the 3x3 covariance of the world points (row major) into result//
+	public void worldCovariance(double[] result)
+	{
+		result[0] = worldCo[0] / total; result[1] = worldCo[1] / total; result[2] = worldCo[2] / total;
+		result[4] = worldCo[3] / total; result[5] = worldCo[4] / total; result[8] = worldCo[5] / total;
+		result[3] = result[1]; result[6] = result[2]; result[7] = result[5];
+	}
+
+	//Writes the covariance of the screen points as uu, uv, vv into result//
+	public void screenCovariance(double[] result)
+	{
+		result[0] = screenCo[0] / total; result[1] = screenCo[1] / total; result[2] = screenCo[2] / total;
+	}
+
+	//Writes the DLT normalization (mean and standard deviation per axis) into the four arrays//
+	public void normalization(double[] worldShift, double[] worldScale, double[] screenShift, double[] screenScale)
+	{
+		for ( int k = 0; k < 3; k++ )
+		{
+			worldShift[k] = worldMean[k];
+			worldScale[k] = worldStdDev(k);
+		}
+		for ( int k = 0; k < 2; k++ )
+		{
+			screenShift[k] = screenMean[k];
+			screenScale[k] = screenStdDev(k);
+		}
+	}
+}
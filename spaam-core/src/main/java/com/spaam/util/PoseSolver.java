@@ -0,0 +1,281 @@
+/**************************************************************************************
+ * This file contains the PoseSolver, the quick recalibration mode of SPAAM. When the
+ * headset slips only the eye to display pose changes, so the intrinsics of an earlier
+ * calibration are kept and only the 6 degrees of freedom of the pose are solved.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+/*******************************************************************************
+ * Levenberg-Marquardt minimization of the weighted reprojection error
+ *
+ * 		sum_i  w_i * | proj( K ( R X_i + t ) ) - x_i |^2
+ *
+ * over the rotation R and the translation t, with K fixed to the intrinsics of
+ * the prior calibration (see ProjectionDecomposition). The pose is updated in
+ * the eye frame, R' = exp([w]) R and t' = exp([w]) t + d, so the 6 parameters
+ * of a step are the rotation vector w and the shift d, and the Jacobian of a
+ * pixel residual r with respect to the eye point Xc = R X + t (g = dr/dXc) is
+ *
+ * 		dr/dw = Xc x g,  dr/dd = g
+ *
+ * Every solve starts from the pose of the prior, which is close to the answer
+ * after a slip, so 3 pairs (6 residuals) already determine the pose and 4 or 5
+ * taps give a usable result. The result is returned as a 3x4 projection
+ * K [R | t] with a unit viewing direction, like the DLT results.
+ *
+ * All buffers are allocated once by the instance. An instance is not thread
+ * safe.
+ ******************************************************************************/
+public class PoseSolver {
+	//Pairs needed for the 6 pose parameters//
+	public static final int MIN_PAIRS = 3;
+	private static final double LAMBDA_INITIAL = 1e-3;
+	private static final double LAMBDA_MAX = 1e12;
+
+	////Configuration////
+	private int maxIterations = 30;
+	private double tolerance = 1e-10;
+
+	////Prior (fixed intrinsics and starting pose)////
+	private double fx, fy, cx, cy, skew;
+	private final double[] priorRotation = new double[9];
+	private final double[] priorTranslation = new double[3];
+	private boolean hasPrior = false;
+	private final ProjectionDecomposition decomposition = new ProjectionDecomposition();
+
+	////Current Pose and Work Buffers////
+	private final double[] rotation = new double[9];
+	private final double[] translation = new double[3];
+	private final double[] trialRotation = new double[9];
+	private final double[] trialTranslation = new double[3];
+	private final double[] delta = new double[9];
+	private final double[] jtj = new double[36];
+	private final double[] jtr = new double[6];
+	private final double[] system = new double[36];
+	private final double[] step = new double[6];
+	private final double[] row = new double[6];
+
+	////Results////
+	private int iterations = 0;
+	private int pointCount = 0;
+	private double cost = 0.0;
+
+	//Default Constructor that does nothing//
+	public PoseSolver()
+	{	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Configuration////
+
+	//Maximum number of accepted Levenberg-Marquardt steps//
+	public void setMaxIterations(int max) { maxIterations = Math.max(1, max); }
+
+	//Relative cost decrease below which the solve is considered converged//
+	public void setTolerance(double tolerance) { this.tolerance = tolerance; }
+
+	/*************************************************************
+	 * @param prior - decomposition of the earlier calibration
+	 * Takes the intrinsics (kept fixed) and the starting pose from prior.
+	 * Returns false if the decomposition is not valid, which also drops the
+	 * previous prior so no stale pose is solved from.
+	 ************************************************************/
+	public boolean setPrior(ProjectionDecomposition prior)
+	{
+		hasPrior = false;
+		if ( !prior.isValid() )
+			return false;
+		fx = prior.focalX(); fy = prior.focalY();
+		cx = prior.principalX(); cy = prior.principalY();
+		skew = prior.skew();
+		prior.getRotation(priorRotation);
+		prior.getTranslation(priorTranslation);
+		hasPrior = true;
+		return true;
+	}
+
+	//Decomposes an earlier 3x4 projection (row major) and uses it as the prior, false (and no prior) if it is singular//
+	public boolean setPrior(double[] projection)
+	{
+		hasPrior = false;
+		return decomposition.decompose(projection) && setPrior(decomposition);
+	}
+
+	public boolean hasPrior() { return hasPrior; }
+
+	public void clearPrior() { hasPrior = false; }
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Results of the last solve( )////
+	public int getIterations() { return iterations; }
+
+	//Root mean square reprojection error (pixels) of the solved pose//
+	public double getRmsError()
+	{
+		return pointCount > 0 ? Math.sqrt(cost / pointCount) : 0.0;
+	}
+
+	//Writes the solved world to eye rotation (row major) into result//
+	public void getRotation(double[] result) { System.arraycopy(rotation, 0, result, 0, 9); }
+	//Writes the solved world to eye translation into result//
+	public void getTranslation(double[] result) { System.arraycopy(translation, 0, result, 0, 3); }
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	/*************************************************************
+	 * @param points - the correspondence pairs of the recalibration
+	 * @param result - 12 double array receiving the 3x4 projection K [R | t] (row major)
+	 * Solves the pose from the prior. Returns false (leaving result untouched) if
+	 * there is no prior, there are fewer than MIN_PAIRS pairs or the prior pose
+	 * projects a pair behind the viewer.
+	 ************************************************************/
+	public boolean solve(CorrespondenceBuffer points, double[] result)
+	{
+		pointCount = points.size();
+		iterations = 0;
+		if ( !hasPrior || pointCount < MIN_PAIRS )
+			return false;
+		System.arraycopy(priorRotation, 0, rotation, 0, 9);
+		System.arraycopy(priorTranslation, 0, translation, 0, 3);
+
+		cost = linearize(points);
+		if ( Double.isInfinite(cost) )
+			return false;
+
+		double lambda = LAMBDA_INITIAL;
+		while ( iterations < maxIterations && lambda < LAMBDA_MAX && cost > 0.0 )
+		{
+			//(J^T J + lambda diag(J^T J)) step = -J^T r//
+			for ( int i = 0; i < 36; i++ )
+				system[i] = jtj[i];
+			for ( int i = 0; i < 6; i++ )
+			{
+				system[i * 7] += lambda * jtj[i * 7] + 1e-12;
+				step[i] = -jtr[i];
+			}
+			if ( !DLTMath.choleskySolve(system, 6, step) )
+			{
+				lambda *= 10.0;
+				continue;
+			}
+			applyStep();
+
+			final double trialCost = cost(points, trialRotation, trialTranslation);
+			if ( trialCost < cost )
+			{
+				System.arraycopy(trialRotation, 0, rotation, 0, 9);
+				System.arraycopy(trialTranslation, 0, translation, 0, 3);
+				final double decrease = ( cost - trialCost ) / cost;
+				cost = linearize(points);
+				lambda = Math.max(lambda * 0.1, 1e-12);
+				iterations++;
+				if ( decrease < tolerance )
+					break;
+			}
+			else
+				lambda *= 10.0;
+		}
+
+		////P = K [R | t]////
+		for ( int c = 0; c < 3; c++ )
+		{
+			result[c] = fx * rotation[c] + skew * rotation[3 + c] + cx * rotation[6 + c];
+			result[4 + c] = fy * rotation[3 + c] + cy * rotation[6 + c];
+			result[8 + c] = rotation[6 + c];
+		}
+		result[3] = fx * translation[0] + skew * translation[1] + cx * translation[2];
+		result[7] = fy * translation[1] + cy * translation[2];
+		result[11] = translation[2];
+		DLTMath.normalizeViewDirection(result, points.worldX(0), points.worldY(0), points.worldZ(0));
+		return true;
+	}
+
+	//trial = exp([w]) (R, t) + (0, d) for the current step (w, d), Rodrigues' formula//
+	private void applyStep()
+	{
+		final double wx = step[0], wy = step[1], wz = step[2];
+		final double theta = Math.sqrt(wx * wx + wy * wy + wz * wz);
+		//sin(theta)/theta and (1-cos(theta))/theta^2, by their series for tiny angles//
+		final double a = theta < 1e-8 ? 1.0 : Math.sin(theta) / theta;
+		final double b = theta < 1e-8 ? 0.5 : ( 1.0 - Math.cos(theta) ) / ( theta * theta );
+		delta[0] = 1.0 - b * ( wy * wy + wz * wz ); delta[1] = b * wx * wy - a * wz; delta[2] = b * wx * wz + a * wy;
+		delta[3] = b * wx * wy + a * wz; delta[4] = 1.0 - b * ( wx * wx + wz * wz ); delta[5] = b * wy * wz - a * wx;
+		delta[6] = b * wx * wz - a * wy; delta[7] = b * wy * wz + a * wx; delta[8] = 1.0 - b * ( wx * wx + wy * wy );
+
+		for ( int r = 0; r < 3; r++ )
+		{
+			for ( int c = 0; c < 3; c++ )
+				trialRotation[r * 3 + c] = delta[r * 3] * rotation[c] + delta[r * 3 + 1] * rotation[3 + c] + delta[r * 3 + 2] * rotation[6 + c];
+			trialTranslation[r] = delta[r * 3] * translation[0] + delta[r * 3 + 1] * translation[1] + delta[r * 3 + 2] * translation[2] + step[3 + r];
+		}
+	}
+
+	//Accumulates J^T J and J^T r at the current pose and returns the cost//
+	private double linearize(CorrespondenceBuffer points)
+	{
+		final double[] wx = points.worldXColumn(), wy = points.worldYColumn(), wz = points.worldZColumn();
+		final double[] sx = points.screenXColumn(), sy = points.screenYColumn();
+		final double[] weight = points.weightColumn();
+
+		for ( int i = 0; i < 36; i++ )
+			jtj[i] = 0.0;
+		for ( int i = 0; i < 6; i++ )
+			jtr[i] = 0.0;
+
+		double sum = 0.0;
+		final double[] R = rotation, t = translation;
+		for ( int i = 0; i < pointCount; i++ )
+		{
+			final double x = R[0] * wx[i] + R[1] * wy[i] + R[2] * wz[i] + t[0];
+			final double y = R[3] * wx[i] + R[4] * wy[i] + R[5] * wz[i] + t[1];
+			final double z = R[6] * wx[i] + R[7] * wy[i] + R[8] * wz[i] + t[2];
+			if ( z <= 0.0 )
+				return Double.POSITIVE_INFINITY;
+			final double iz = 1.0 / z;
+			final double ru = ( fx * x + skew * y ) * iz + cx - sx[i];
+			final double rv = fy * y * iz + cy - sy[i];
+			final double c = weight == null ? 1.0 : weight[i];
+			sum += c * ( ru * ru + rv * rv );
+
+			//g = dr/dXc of both residuals//
+			addRow(x, y, z, fx * iz, skew * iz, -( fx * x + skew * y ) * iz * iz, ru, c);
+			addRow(x, y, z, 0.0, fy * iz, -fy * y * iz * iz, rv, c);
+		}
+		return sum;
+	}
+
+	//Adds the residual row [Xc x g, g] (weighted by c) to J^T J and J^T r//
+	private void addRow(double x, double y, double z, double g0, double g1, double g2, double r, double c)
+	{
+		row[0] = y * g2 - z * g1; row[1] = z * g0 - x * g2; row[2] = x * g1 - y * g0;
+		row[3] = g0; row[4] = g1; row[5] = g2;
+		for ( int a = 0; a < 6; a++ )
+		{
+			final double va = c * row[a];
+			jtr[a] += va * r;
+			for ( int b = 0; b < 6; b++ )
+				jtj[a * 6 + b] += va * row[b];
+		}
+	}
+
+	//Weighted sum of squared pixel errors of a pose, infinite if a pair is behind the viewer//
+	private double cost(CorrespondenceBuffer points, double[] R, double[] t)
+	{
+		final double[] wx = points.worldXColumn(), wy = points.worldYColumn(), wz = points.worldZColumn();
+		final double[] sx = points.screenXColumn(), sy = points.screenYColumn();
+		final double[] weight = points.weightColumn();
+		double sum = 0.0;
+		for ( int i = 0; i < pointCount; i++ )
+		{
+			final double x = R[0] * wx[i] + R[1] * wy[i] + R[2] * wz[i] + t[0];
+			final double y = R[3] * wx[i] + R[4] * wy[i] + R[5] * wz[i] + t[1];
+			final double z = R[6] * wx[i] + R[7] * wy[i] + R[8] * wz[i] + t[2];
+			if ( z <= 0.0 )
+				return Double.POSITIVE_INFINITY;
+			final double ru = ( fx * x + skew * y ) / z + cx - sx[i];
+			final double rv = fy * y / z + cy - sy[i];
+			sum += ( weight == null ? 1.0 : weight[i] ) * ( ru * ru + rv * rv );
+		}
+		return sum;
+	}
+}
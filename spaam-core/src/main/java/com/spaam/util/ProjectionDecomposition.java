@@ -0,0 +1,144 @@
+/**************************************************************************************
+ * This file contains the ProjectionDecomposition which splits a SPAAM 3x4 projection
+ * into the eye intrinsics (focal lengths, principal point, skew) and the world to eye
+ * pose (rotation and eye position) with an RQ decomposition.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+/*******************************************************************************
+ * P = [M | p4] is, up to scale, K [R | t] with K = [fx s cx; 0 fy cy; 0 0 1]
+ * upper triangular and R a rotation. The RQ decomposition M = K R is done in
+ * closed form by Gram-Schmidt on the rows of M, starting from the last one:
+ *
+ * 		r3 = m3 / |m3|,  cx = m1.r3,  cy = m2.r3
+ * 		fy = |m2 - cy r3|,  r2 = ( m2 - cy r3 ) / fy,  s = m1.r2
+ * 		fx = |m1 - s r2 - cx r3|,  r1 = ( m1 - s r2 - cx r3 ) / fx
+ *
+ * (rows already divided by |m3|). The scale keeps its sign, so points in front
+ * of the viewer keep a positive depth, like the DLT results. If M has a
+ * negative determinant (a mirrored screen axis) fy is reported negative so
+ * that R stays a proper rotation. The translation follows by back
+ * substitution, t = K^-1 p4 / |m3|, and the eye position is C = -R^T t.
+ *
+ * decompose( ) allocates nothing, an instance can be reused for any number of
+ * projections (e.g. over archived .calib files). An instance is not thread
+ * safe.
+ ******************************************************************************/
+public class ProjectionDecomposition {
+	////Intrinsics////
+	private double fx, fy, cx, cy, skew;
+	////Pose////
+	private final double[] rotation = new double[9];
+	private final double[] translation = new double[3];
+	private final double[] position = new double[3];
+	private boolean valid = false;
+
+	//Default Constructor that does nothing//
+	public ProjectionDecomposition()
+	{	}
+
+	/*************************************************************
+	 * @param p - 12 double 3x4 projection (row major)
+	 * Decomposes p, returns false (and the result is invalid) if the left
+	 * 3x3 block of p is singular.
+	 ************************************************************/
+	public boolean decompose(double[] p)
+	{
+		valid = false;
+		final double norm = Math.sqrt(p[8] * p[8] + p[9] * p[9] + p[10] * p[10]);
+		if ( norm == 0.0 )
+			return false;
+		final double inv = 1.0 / norm;
+
+		////r3 and the principal point////
+		final double r31 = p[8] * inv, r32 = p[9] * inv, r33 = p[10] * inv;
+		final double a1 = p[0] * inv, a2 = p[1] * inv, a3 = p[2] * inv;
+		final double b1 = p[4] * inv, b2 = p[5] * inv, b3 = p[6] * inv;
+		cx = a1 * r31 + a2 * r32 + a3 * r33;
+		cy = b1 * r31 + b2 * r32 + b3 * r33;
+
+		////r2 and fy////
+		double u1 = b1 - cy * r31, u2 = b2 - cy * r32, u3 = b3 - cy * r33;
+		fy = Math.sqrt(u1 * u1 + u2 * u2 + u3 * u3);
+		if ( fy == 0.0 )
+			return false;
+		final double r21 = u1 / fy, r22 = u2 / fy, r23 = u3 / fy;
+		skew = a1 * r21 + a2 * r22 + a3 * r23;
+
+		////r1 and fx////
+		u1 = a1 - skew * r21 - cx * r31;
+		u2 = a2 - skew * r22 - cx * r32;
+		u3 = a3 - skew * r23 - cx * r33;
+		fx = Math.sqrt(u1 * u1 + u2 * u2 + u3 * u3);
+		if ( fx == 0.0 )
+			return false;
+		final double r11 = u1 / fx, r12 = u2 / fx, r13 = u3 / fx;
+
+		rotation[0] = r11; rotation[1] = r12; rotation[2] = r13;
+		rotation[3] = r21; rotation[4] = r22; rotation[5] = r23;
+		rotation[6] = r31; rotation[7] = r32; rotation[8] = r33;
+
+		//left handed result, the screen y axis is mirrored//
+		final double det = r11 * ( r22 * r33 - r23 * r32 ) - r12 * ( r21 * r33 - r23 * r31 ) + r13 * ( r21 * r32 - r22 * r31 );
+		if ( det < 0.0 )
+		{
+			fy = -fy;
+			skew = -skew;
+			rotation[3] = -r21; rotation[4] = -r22; rotation[5] = -r23;
+		}
+
+		////t = K^-1 p4 / |m3|, C = -R^T t////
+		translation[2] = p[11] * inv;
+		translation[1] = ( p[7] * inv - cy * translation[2] ) / fy;
+		translation[0] = ( p[3] * inv - skew * translation[1] - cx * translation[2] ) / fx;
+		for ( int k = 0; k < 3; k++ )
+			position[k] = -( rotation[k] * translation[0] + rotation[3 + k] * translation[1] + rotation[6 + k] * translation[2] );
+
+		valid = true;
+		return true;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Results of the last decompose( )////
+
+	public boolean isValid() { return valid; }
+
+	//Focal lengths in pixels//
+	public double focalX() { return fx; }
+	public double focalY() { return fy; }
+	//Principal point in pixels//
+	public double principalX() { return cx; }
+	public double principalY() { return cy; }
+	public double skew() { return skew; }
+
+	//Writes K = [fx s cx; 0 fy cy; 0 0 1] (row major) into result//
+	public void getIntrinsics(double[] result)
+	{
+		result[0] = fx; result[1] = skew; result[2] = cx;
+		result[3] = 0.0; result[4] = fy; result[5] = cy;
+		result[6] = 0.0; result[7] = 0.0; result[8] = 1.0;
+	}
+
+	//Writes the 3x3 world to eye rotation R (row major) into result//
+	public void getRotation(double[] result)
+	{
+		System.arraycopy(rotation, 0, result, 0, 9);
+	}
+
+	//Writes the world to eye translation t = -R C into result//
+	public void getTranslation(double[] result)
+	{
+		System.arraycopy(translation, 0, result, 0, 3);
+	}
+
+	//Writes the eye position C (world coordinates) into result//
+	public void getPosition(double[] result)
+	{
+		System.arraycopy(position, 0, result, 0, 3);
+	}
+
+	public double positionX() { return position[0]; }
+	public double positionY() { return position[1]; }
+	public double positionZ() { return position[2]; }
+}
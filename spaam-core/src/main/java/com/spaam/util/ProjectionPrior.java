@@ -0,0 +1,163 @@
+/**************************************************************************************
+ * This file contains the ProjectionPrior, a Gaussian prior on the 3x4 projection taken
+ * from an earlier calibration or from the average of a population of users. It turns
+ * the refinement of ReprojectionRefiner into a MAP estimate (see setPrior( ) there).
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import java.io.File;
+import java.io.IOException;
+
+/*******************************************************************************
+ * The prior is a normal distribution over the 12 elements of the projection
+ * (row major, scaled to a unit viewing direction like the DLT results) with
+ * mean p0 and covariance S. Its negative log density adds
+ *
+ * 		( p - p0 )^T S^-1 ( p - p0 )
+ *
+ * to the cost of the refinement. Projections of users wearing the same
+ * headset are very similar, so with a prior a usable result is available
+ * after 2 or 3 taps, and the taps take over as they accumulate.
+ *
+ * The elements of a projection have very different magnitudes, so the
+ * standard deviations are given relative to the scale of their row: the
+ * norm of the first three elements for those, and the larger of that norm
+ * and the magnitude of the fourth element for the fourth.
+ *
+ * Instances are immutable and can be shared between threads.
+ ******************************************************************************/
+public final class ProjectionPrior {
+	private final double[] mean = new double[12];
+	//inverse of the covariance (row major)//
+	private final double[] precision = new double[144];
+
+	/*************************************************************
+	 * @param mean - 12 double mean projection (row major), scaled to a unit viewing direction
+	 * @param covariance - 144 double covariance of the elements (row major), positive definite
+	 ************************************************************/
+	public ProjectionPrior(double[] mean, double[] covariance)
+	{
+		System.arraycopy(mean, 0, this.mean, 0, 12);
+
+		////invert the covariance column by column////
+		final double[] factor = new double[144];
+		final double[] column = new double[12];
+		for ( int c = 0; c < 12; c++ )
+		{
+			System.arraycopy(covariance, 0, factor, 0, 144);
+			for ( int k = 0; k < 12; k++ )
+				column[k] = k == c ? 1.0 : 0.0;
+			if ( !DLTMath.choleskySolve(factor, 12, column) )
+				throw new IllegalArgumentException("Prior covariance is not positive definite");
+			for ( int k = 0; k < 12; k++ )
+				precision[k * 12 + c] = column[k];
+		}
+	}
+
+	/*************************************************************
+	 * @param projection - 12 double earlier calibration (row major)
+	 * @param relativeSigma - standard deviation of the elements relative to their row scale
+	 * Prior centred on one earlier calibration with independent elements
+	 ************************************************************/
+	public static ProjectionPrior fromProjection(double[] projection, double relativeSigma)
+	{
+		final double[] p = projection.clone();
+		normalize(p);
+		final double[] covariance = new double[144];
+		addDiagonal(p, relativeSigma, covariance);
+		return new ProjectionPrior(p, covariance);
+	}
+
+	/*************************************************************
+	 * @param projections - earlier calibrations of several users (12 doubles each, row major)
+	 * @param relativeSigma - standard deviation added to every element relative to its row
+	 *   scale, which keeps the covariance of a small population invertible
+	 * Prior with the mean and the sample covariance of a population
+	 ************************************************************/
+	public static ProjectionPrior fromPopulation(double[][] projections, double relativeSigma)
+	{
+		final int n = projections.length;
+		final double[] p = new double[12];
+		final double[] mean = new double[12];
+		final double[] covariance = new double[144];
+
+		////mean and co-moment of the normalized projections (Welford)////
+		for ( int s = 0; s < n; s++ )
+		{
+			System.arraycopy(projections[s], 0, p, 0, 12);
+			normalize(p);
+			final double f = 1.0 / ( s + 1 );
+			for ( int i = 0; i < 12; i++ )
+			{
+				final double d = p[i] - mean[i];
+				for ( int j = 0; j < 12; j++ )
+					covariance[i * 12 + j] += d * ( p[j] - mean[j] ) * s * f;
+			}
+			for ( int i = 0; i < 12; i++ )
+				mean[i] += ( p[i] - mean[i] ) * f;
+		}
+		if ( n > 1 )
+			for ( int k = 0; k < 144; k++ )
+				covariance[k] /= n - 1;
+		addDiagonal(mean, relativeSigma, covariance);
+		return new ProjectionPrior(mean, covariance);
+	}
+
+	//Prior centred on the calibration stored in a .calib file, see CalibrationFile.readProjection3x4( )//
+	public static ProjectionPrior fromCalibFile(File file, double relativeSigma) throws IOException
+	{
+		final double[] p = new double[12];
+		if ( !CalibrationFile.readProjection3x4(file, p) )
+			throw new IOException("No calibration result in " + file.getAbsolutePath());
+		return fromProjection(p, relativeSigma);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	public double mean(int i) { return mean[i]; }
+
+	//Copies the mean projection (row major) into result//
+	public void getMean(double[] result) { System.arraycopy(mean, 0, result, 0, 12); }
+
+	//Element (i, j) of the inverse covariance//
+	public double precision(int i, int j) { return precision[i * 12 + j]; }
+
+	//The prior term ( p - p0 )^T S^-1 ( p - p0 ) of the cost//
+	public double cost(double[] p)
+	{
+		double sum = 0.0;
+		for ( int i = 0; i < 12; i++ )
+		{
+			double row = 0.0;
+			for ( int j = 0; j < 12; j++ )
+				row += precision[i * 12 + j] * ( p[j] - mean[j] );
+			sum += ( p[i] - mean[i] ) * row;
+		}
+		return sum;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	//Scales p to a unit viewing direction, keeping the sign the solver chose (points in front)//
+	private static void normalize(double[] p)
+	{
+		final double inv = 1.0 / Math.sqrt(p[8] * p[8] + p[9] * p[9] + p[10] * p[10]);
+		for ( int i = 0; i < 12; i++ )
+			p[i] *= inv;
+	}
+
+	//Adds ( relativeSigma * row scale )^2 to the diagonal of the covariance//
+	private static void addDiagonal(double[] p, double relativeSigma, double[] covariance)
+	{
+		for ( int r = 0; r < 3; r++ )
+		{
+			final double scale = Math.sqrt(p[r * 4] * p[r * 4] + p[r * 4 + 1] * p[r * 4 + 1] + p[r * 4 + 2] * p[r * 4 + 2]);
+			for ( int c = 0; c < 4; c++ )
+			{
+				final double sigma = relativeSigma * ( c < 3 ? scale : Math.max(scale, Math.abs(p[r * 4 + 3])) );
+				covariance[( r * 4 + c ) * 13] += sigma * sigma;
+			}
+		}
+	}
+}
@@ -0,0 +1,435 @@
+/**************************************************************************************
+ * This file contains the RansacEstimator which provides a robust alternative to the
+ * plain least squares fit of SPAAM_SVD. A single misaligned tap can no longer ruin the
+ * projection since samples which disagree with the consensus are rejected.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+/*******************************************************************************
+ * RANSAC estimation of the 3x4 SPAAM projection.
+ *
+ * Hypotheses are minimal 6 point DLT solutions, scored with the truncated
+ * (MSAC) reprojection error over all correspondence pairs. Hypotheses are
+ * generated in rounds; each round is split into blocks which run in parallel on
+ * the configured executor (or on the calling thread if no executor is set).
+ * The random sample of a hypothesis only depends on the seed and the index of
+ * the hypothesis, and ties are broken by the lower index, so the result is the
+ * same for any executor or block count.
+ *
+ * The pairs are normalized once with their weighted mean and deviation (see
+ * PointStatistics) and the rows of every minimal sample are scaled by the
+ * square root of the pair weights, like all other solves. Samples are only
+ * drawn from the pairs with a positive weight, since a zero weight row adds
+ * nothing to the minimal solve, and the MSAC cost of every pair is multiplied
+ * by its weight, the same weighting as in the final refit. The inlier ratio
+ * of the stopping criterion is taken over the positively weighted pairs.
+ *
+ * After each round the required number of hypotheses is re-estimated from the
+ * best inlier ratio seen so far. The best hypothesis is finally refit with the
+ * full DLT over its inlier set (twice, so that inliers recovered by the refit
+ * are included as well). If the DLT rejects the consensus set (e.g. as ill
+ * conditioned, see SPAAM_SVD.isWellConditioned( )) or the refit loses the
+ * consensus, the best minimal hypothesis is returned instead.
+ *
+ * An instance keeps its workspace between calls and is not thread safe.
+ ******************************************************************************/
+public class RansacEstimator {
+	private static final int SAMPLE_SIZE = 6;
+
+	////Configuration////
+	private double inlierThreshold = 15.0;
+	private int maxHypotheses = 1000;
+	private int roundSize = 64;
+	private double confidence = 0.99;
+	private long seed = 0x5ba4a3L;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private ExecutorService executor = null;
+
+	////Normalized copy of the input shared (read only) by all blocks////
+	private double[] normalized = new double[0];
+	//indices of the pairs with a positive weight, the ones samples are drawn from//
+	private int[] eligible = new int[0];
+	private int eligibleCount = 0;
+	private final double[] worldShift = new double[3];
+	private final double[] worldScale = new double[3];
+	private final double[] screenShift = new double[2];
+	private final double[] screenScale = new double[2];
+	private final PointStatistics statistics = new PointStatistics();
+
+	////Result////
+	private final double[] projection = new double[12];
+	private boolean[] inliers = new boolean[0];
+	private int inlierCount = 0;
+	private int pointCount = 0;
+	private int hypothesesEvaluated = 0;
+	private double inlierRms = 0.0;
+
+	////Refit Solver////
+	private final SPAAM_SVD refit = new SPAAM_SVD();
+	private final double[] candidate = new double[12];
+	private final double[] refitStart = new double[12];
+
+	//Default Constructor that does nothing//
+	public RansacEstimator()
+	{	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Configuration////
+
+	//Reprojection error (in pixels) below which a pair counts as an inlier//
+	public void setInlierThreshold(double pixels) { inlierThreshold = pixels; }
+	public double getInlierThreshold() { return inlierThreshold; }
+
+	//Upper bound on the number of minimal hypotheses//
+	public void setMaxHypotheses(int max) { maxHypotheses = Math.max(1, max); }
+	public int getMaxHypotheses() { return maxHypotheses; }
+
+	//Number of hypotheses evaluated between two checks of the stopping criterion//
+	public void setRoundSize(int size) { roundSize = Math.max(1, size); }
+
+	//Probability of having drawn at least one outlier free sample when stopping early//
+	public void setConfidence(double p) { confidence = p; }
+
+	public void setSeed(long seed) { this.seed = seed; }
+
+	//Number of blocks each round is split into//
+	public void setParallelism(int blocks) { parallelism = Math.max(1, blocks); }
+
+	//Executor used to evaluate the blocks, null runs everything on the calling thread//
+	public void setExecutor(ExecutorService executor) { this.executor = executor; }
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Results of the last estimate( )////
+
+	//3x4 projection (row major) refit on the inliers//
+	public double[] getProjection() { return projection; }
+	//true for every pair which was kept, valid up to the size of the input//
+	public boolean[] getInlierMask() { return inliers; }
+	public int getInlierCount() { return inlierCount; }
+	public int getHypothesesEvaluated() { return hypothesesEvaluated; }
+	//Root mean square reprojection error (pixels) over the inliers//
+	public double getInlierRms() { return inlierRms; }
+
+	//Indices of the pairs rejected as outliers//
+	public int[] getRejectedIndices()
+	{
+		final int[] rejected = new int[pointCount - inlierCount];
+		for ( int i = 0, k = 0; i < pointCount; i++ )
+			if ( !inliers[i] )
+				rejected[k++] = i;
+		return rejected;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	/*************************************************************
+	 * @param points - the correspondence pairs
+	 * Runs the robust estimation. Returns false if there are fewer than 6 pairs
+	 * with a positive weight or no hypothesis with at least 6 inliers was found.
+	 ************************************************************/
+	public boolean estimate(CorrespondenceBuffer points)
+	{
+		pointCount = points.size();
+		inlierCount = 0;
+		hypothesesEvaluated = 0;
+		if ( inliers.length < pointCount )
+			inliers = new boolean[pointCount];
+		if ( pointCount < SAMPLE_SIZE )
+			return false;
+
+		normalizeInput(points);
+		if ( eligibleCount < SAMPLE_SIZE )
+			return false;
+
+		final int blocks = Math.min(parallelism, roundSize);
+		final List<Block> workers = new ArrayList<Block>(blocks);
+		for ( int b = 0; b < blocks; b++ )
+			workers.add(new Block(points));
+
+		//Best hypothesis so far//
+		double bestCost = Double.POSITIVE_INFINITY;
+		int bestInliers = 0;
+		int bestIndex = -1;
+		int required = maxHypotheses;
+
+		while ( hypothesesEvaluated < required )
+		{
+			final int first = hypothesesEvaluated;
+			final int count = Math.min(roundSize, required - first);
+			for ( int b = 0; b < blocks; b++ )
+				workers.get(b).assign(first + (count * b) / blocks, first + (count * (b + 1)) / blocks);
+			runBlocks(workers);
+			hypothesesEvaluated += count;
+
+			for ( int b = 0; b < blocks; b++ )
+			{
+				final Block w = workers.get(b);
+				if ( w.bestIndex >= 0 && ( w.bestCost < bestCost || ( w.bestCost == bestCost && w.bestIndex < bestIndex ) ) )
+				{
+					bestCost = w.bestCost;
+					bestInliers = w.bestInliers;
+					bestIndex = w.bestIndex;
+					System.arraycopy(w.bestProjection, 0, candidate, 0, 12);
+				}
+			}
+			required = Math.min(maxHypotheses, requiredHypotheses(bestInliers));
+		}
+
+		if ( bestIndex < 0 || bestInliers < SAMPLE_SIZE )
+			return false;
+
+		//Refit on the consensus set, then once more on the inliers of the refit. The result of the//
+		//last accepted pass is kept, the best minimal hypothesis if no refit is accepted//
+		System.arraycopy(candidate, 0, projection, 0, 12);
+		markInliers(points, projection);
+		for ( int pass = 0; pass < 2; pass++ )
+		{
+			System.arraycopy(projection, 0, refitStart, 0, 12);
+			if ( !refitInliers(points) )
+				break;
+			markInliers(points, projection);
+			if ( inlierCount < SAMPLE_SIZE )
+			{
+				//the refit lost the consensus, go back to the solution it started from//
+				System.arraycopy(refitStart, 0, projection, 0, 12);
+				markInliers(points, projection);
+				break;
+			}
+		}
+		return inlierCount >= SAMPLE_SIZE;
+	}
+
+	//Standard RANSAC bound: hypotheses needed to draw one all-inlier sample with the configured confidence//
+	private int requiredHypotheses(int bestInliers)
+	{
+		if ( bestInliers < SAMPLE_SIZE )
+			return maxHypotheses;
+		final double ratio = (double) bestInliers / eligibleCount;
+		final double allInliers = Math.pow(ratio, SAMPLE_SIZE);
+		if ( allInliers >= 1.0 )
+			return 1;
+		final double n = Math.log(1.0 - confidence) / Math.log(1.0 - allInliers);
+		return n >= maxHypotheses ? maxHypotheses : (int) Math.ceil(n);
+	}
+
+	//Evaluates all blocks, in parallel when an executor is available//
+	private void runBlocks(List<Block> workers)
+	{
+		if ( executor == null || workers.size() == 1 )
+		{
+			for ( int b = 0; b < workers.size(); b++ )
+				workers.get(b).call();
+			return;
+		}
+		try {
+			final List<Future<Void>> futures = executor.invokeAll(workers);
+			for ( int b = 0; b < futures.size(); b++ )
+				futures.get(b).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("RANSAC estimation interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("RANSAC hypothesis evaluation failed", e.getCause());
+		}
+	}
+
+	//Normalizes all pairs once (weighted mean and deviation of the full set), shared by all hypotheses//
+	private void normalizeInput(CorrespondenceBuffer points)
+	{
+		final int n = pointCount;
+		final double[] wx = points.worldXColumn(), wy = points.worldYColumn(), wz = points.worldZColumn();
+		final double[] sx = points.screenXColumn(), sy = points.screenYColumn();
+		final double[] weight = points.weightColumn();
+
+		statistics.clear();
+		for ( int i = 0; i < n; i++ )
+			statistics.add(wx[i], wy[i], wz[i], sx[i], sy[i], weight == null ? 1.0 : weight[i]);
+		statistics.normalization(worldShift, worldScale, screenShift, screenScale);
+
+		if ( normalized.length < 5 * n )
+		{
+			normalized = new double[5 * n];
+			eligible = new int[n];
+		}
+		eligibleCount = 0;
+		for ( int i = 0, o = 0; i < n; i++, o += 5 )
+		{
+			if ( weight == null || weight[i] > 0.0 )
+				eligible[eligibleCount++] = i;
+			normalized[o] = (wx[i] - worldShift[0]) / worldScale[0];
+			normalized[o + 1] = (wy[i] - worldShift[1]) / worldScale[1];
+			normalized[o + 2] = (wz[i] - worldShift[2]) / worldScale[2];
+			normalized[o + 3] = (sx[i] - screenShift[0]) / screenScale[0];
+			normalized[o + 4] = (sy[i] - screenShift[1]) / screenScale[1];
+		}
+	}
+
+	//Marks every pair whose reprojection error under p is below the threshold//
+	private void markInliers(CorrespondenceBuffer points, double[] p)
+	{
+		final double[] wx = points.worldXColumn(), wy = points.worldYColumn(), wz = points.worldZColumn();
+		final double[] sx = points.screenXColumn(), sy = points.screenYColumn();
+		final double t2 = inlierThreshold * inlierThreshold;
+		double sum = 0.0;
+		inlierCount = 0;
+		for ( int i = 0; i < pointCount; i++ )
+		{
+			final double e2 = reprojectionError2(p, wx[i], wy[i], wz[i], sx[i], sy[i]);
+			inliers[i] = e2 < t2;
+			if ( inliers[i] )
+			{
+				inlierCount++;
+				sum += e2;
+			}
+		}
+		inlierRms = inlierCount > 0 ? Math.sqrt(sum / inlierCount) : 0.0;
+	}
+
+	//Full DLT over the current inlier set, written into projection//
+	private boolean refitInliers(CorrespondenceBuffer points)
+	{
+		refit.clearCorrespondences();
+		for ( int i = 0; i < pointCount; i++ )
+			if ( inliers[i] )
+				refit.corr_points.add(points.worldX(i), points.worldY(i), points.worldZ(i), points.screenX(i), points.screenY(i),
+						points.weight(i), 0L);
+		if ( !refit.projectionDLTPrimitive() )
+			return false;
+		for ( int r = 0; r < 3; r++ )
+			for ( int c = 0; c < 4; c++ )
+				projection[r * 4 + c] = refit.Proj3x4.get(r, c);
+		return true;
+	}
+
+	//Squared pixel distance between the screen point and the projected world point,//
+	//infinite if the world point is projected behind the viewer//
+	static double reprojectionError2(double[] p, double x, double y, double z, double u, double v)
+	{
+		return reprojectionError2(p, 0, x, y, z, u, v);
+	}
+
+	//Same as above for the projection stored at p[o] .. p[o + 11]//
+	static double reprojectionError2(double[] p, int o, double x, double y, double z, double u, double v)
+	{
+		final double w = p[o + 8] * x + p[o + 9] * y + p[o + 10] * z + p[o + 11];
+		if ( w <= 0.0 )
+			return Double.POSITIVE_INFINITY;
+		final double du = (p[o] * x + p[o + 1] * y + p[o + 2] * z + p[o + 3]) / w - u;
+		final double dv = (p[o + 4] * x + p[o + 5] * y + p[o + 6] * z + p[o + 7]) / w - v;
+		return du * du + dv * dv;
+	}
+
+	/********************************************************************
+	 * A contiguous range of hypotheses evaluated by one task. Each block
+	 * owns its minimal solver workspace.
+	 *******************************************************************/
+	private class Block implements Callable<Void> {
+		private final CorrespondenceBuffer points;
+		private final int[] sample = new int[SAMPLE_SIZE];
+		private final double[] a = new double[SAMPLE_SIZE * 24];
+		private final double[] v = new double[144];
+		private final double[] norms = new double[12];
+		private final double[] nullVector = new double[12];
+		private final double[] p = new double[12];
+		private final double[] bestProjection = new double[12];
+		//reseeded for every hypothesis, see FastRandom.setStream( )//
+		private final FastRandom random = new FastRandom(0L);
+		private int from, to;
+		private double bestCost;
+		private int bestInliers;
+		private int bestIndex;
+
+		Block(CorrespondenceBuffer points)
+		{
+			this.points = points;
+		}
+
+		void assign(int from, int to)
+		{
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Void call()
+		{
+			bestCost = Double.POSITIVE_INFINITY;
+			bestInliers = 0;
+			bestIndex = -1;
+
+			final double[] wx = points.worldXColumn(), wy = points.worldYColumn(), wz = points.worldZColumn();
+			final double[] sx = points.screenXColumn(), sy = points.screenYColumn();
+			final double[] weight = points.weightColumn();
+			final double t2 = inlierThreshold * inlierThreshold;
+
+			for ( int h = from; h < to; h++ )
+			{
+				random.setStream(seed, h);
+				drawSample();
+				for ( int k = 0; k < SAMPLE_SIZE; k++ )
+				{
+					final int o = sample[k] * 5;
+					DLTMath.fillDesignRows(a, k, normalized[o], normalized[o + 1], normalized[o + 2], normalized[o + 3], normalized[o + 4]);
+					if ( weight != null && weight[sample[k]] != 1.0 )
+						DLTMath.scaleDesignRows(a, k, Math.sqrt(weight[sample[k]]));
+				}
+				DLTMath.nullVectorOneSided(a, 2 * SAMPLE_SIZE, v, norms, nullVector);
+				DLTMath.denormalize(nullVector, worldShift, worldScale, screenShift, screenScale, p);
+				final int s0 = sample[0];
+				DLTMath.normalizeViewDirection(p, wx[s0], wy[s0], wz[s0]);
+
+				//MSAC score: weighted truncated squared reprojection error, inliers counted among the weighted pairs//
+				double cost = 0.0;
+				int count = 0;
+				for ( int i = 0; i < pointCount && cost < bestCost; i++ )
+				{
+					final double w = weight == null ? 1.0 : weight[i];
+					if ( w <= 0.0 )
+						continue;
+					final double e2 = reprojectionError2(p, wx[i], wy[i], wz[i], sx[i], sy[i]);
+					if ( e2 < t2 )
+					{
+						cost += w * e2;
+						count++;
+					}
+					else
+						cost += w * t2;
+				}
+				if ( cost < bestCost )
+				{
+					bestCost = cost;
+					bestInliers = count;
+					bestIndex = h;
+					System.arraycopy(p, 0, bestProjection, 0, 12);
+				}
+			}
+			return null;
+		}
+
+		//Draws SAMPLE_SIZE distinct indices among the positively weighted pairs//
+		private void drawSample()
+		{
+			for ( int k = 0; k < SAMPLE_SIZE; k++ )
+			{
+				boolean unique;
+				do {
+					sample[k] = eligible[random.nextInt(eligibleCount)];
+					unique = true;
+					for ( int j = 0; j < k; j++ )
+						if ( sample[j] == sample[k] )
+							unique = false;
+				} while ( !unique );
+			}
+		}
+	}
+}
@@ -0,0 +1,302 @@
+/**************************************************************************************
+ * This file contains the ReprojectionRefiner, an optional nonlinear refinement stage
+ * run after the DLT. The DLT only minimizes the algebraic error of the linear system,
+ * the refiner starts from that result and minimizes the geometric reprojection error
+ * (in pixels) over all correspondence pairs.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+/*******************************************************************************
+ * Levenberg-Marquardt minimization of
+ *
+ * 		sum_i  w_i * ( (a.h_i / c.h_i - u_i)^2 + (b.h_i / c.h_i - v_i)^2 )
+ *
+ * (w_i is the weight of pair i, 1 unless set) over the 12 elements of the projection [a; b; c], using the analytic Jacobian.
+ * The normal equations J^T J and J^T r are accumulated pair by pair, so J itself
+ * is never stored and all work buffers are allocated once by the instance.
+ *
+ * The cost is invariant to the scale of the projection; the Marquardt damping
+ * keeps the step out of that direction and the result is normalized to a unit
+ * viewing direction afterwards, just like the DLT result.
+ *
+ * The refinement stops after the configured number of iterations, when the
+ * relative cost decrease falls below the tolerance, or when the time budget is
+ * spent, which allows it to run between frames on the device. The cost (and the
+ * elapsed time) after every iteration is recorded for benchmarking.
+ *
+ * With a ProjectionPrior (setPrior( )) the refinement becomes a MAP estimate,
+ * the cost in squared pixels gains the prior term scaled by the alignment
+ * variance, sigma^2 ( p - p0 )^T S^-1 ( p - p0 ). The prior fixes the scale
+ * of the projection and stands in for the missing constraints, so a single
+ * pair suffices instead of 6. The pair weights are relative (see
+ * WeightPolicy), so with a prior they are scaled to a mean of 1 over the
+ * positively weighted pairs: sigma stays the alignment error of an average
+ * tap, and uniformly low weights do not hand the solution to the prior.
+ *
+ * An instance is not thread safe.
+ ******************************************************************************/
+public class ReprojectionRefiner {
+	private static final double LAMBDA_INITIAL = 1e-3;
+	private static final double LAMBDA_MAX = 1e12;
+
+	////Configuration////
+	private int maxIterations = 20;
+	private long timeBudgetNanos = 0L;
+	private double tolerance = 1e-9;
+	private ProjectionPrior prior = null;
+	private double priorWeight = 1.0;
+	//factor of the pair weights in the current refinement, see above//
+	private double weightScale = 1.0;
+
+	////Work Buffers////
+	private final double[] jtj = new double[144];
+	private final double[] jtr = new double[12];
+	private final double[] system = new double[144];
+	private final double[] step = new double[12];
+	private final double[] trial = new double[12];
+	private final double[] rowValues = new double[8];
+	private final int[] rowIndex = {0, 0, 0, 0, 8, 9, 10, 11};
+
+	////Results////
+	private double[] costTrace = new double[maxIterations + 1];
+	private long[] timeTrace = new long[maxIterations + 1];
+	private int traceLength = 0;
+	private int iterations = 0;
+	private int pointCount = 0;
+	private double priorCost = 0.0;
+
+	//Default Constructor that does nothing//
+	public ReprojectionRefiner()
+	{	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Configuration////
+
+	//Maximum number of accepted Levenberg-Marquardt steps//
+	public void setMaxIterations(int max)
+	{
+		maxIterations = Math.max(1, max);
+		if ( costTrace.length < maxIterations + 1 )
+		{
+			costTrace = new double[maxIterations + 1];
+			timeTrace = new long[maxIterations + 1];
+		}
+	}
+
+	//Wall clock budget of a refine( ) call in nanoseconds, 0 for no limit//
+	public void setTimeBudgetNanos(long nanos) { timeBudgetNanos = nanos; }
+
+	//Relative cost decrease below which the refinement is considered converged//
+	public void setTolerance(double tolerance) { this.tolerance = tolerance; }
+
+	/*************************************************************
+	 * @param prior - prior of the projection, null for the plain least squares refinement
+	 * @param pixelSigma - standard deviation (pixels) of an alignment, weighs the pairs
+	 *   against the prior
+	 ************************************************************/
+	public void setPrior(ProjectionPrior prior, double pixelSigma)
+	{
+		this.prior = prior;
+		this.priorWeight = pixelSigma * pixelSigma;
+	}
+
+	public ProjectionPrior getPrior() { return prior; }
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Results of the last refine( )////
+	public int getIterations() { return iterations; }
+	//Sum of squared pixel errors after each iteration, entry 0 is the starting cost//
+	public double[] getCostTrace() { return costTrace; }
+	//Nanoseconds since the start of refine( ) after each iteration//
+	public long[] getTimeTrace() { return timeTrace; }
+	public int getTraceLength() { return traceLength; }
+	public double getInitialCost() { return traceLength > 0 ? costTrace[0] : 0.0; }
+	public double getFinalCost() { return traceLength > 0 ? costTrace[traceLength - 1] : 0.0; }
+
+	//Root mean square reprojection error (pixels) of the refined projection, without the prior term//
+	public double getRmsError()
+	{
+		return pointCount > 0 ? Math.sqrt(Math.max(getFinalCost() - priorCost, 0.0) / pointCount) : 0.0;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	/*************************************************************
+	 * @param points - the correspondence pairs
+	 * @param projection - 12 double 3x4 projection (row major), the starting point
+	 * on input and the refined projection on output
+	 * Returns false (leaving the projection untouched) if there are fewer than 6
+	 * pairs (1 with a prior) or the starting point projects a pair behind the viewer.
+	 ************************************************************/
+	public boolean refine(CorrespondenceBuffer points, double[] projection)
+	{
+		final long start = System.nanoTime();
+		pointCount = points.size();
+		iterations = 0;
+		traceLength = 0;
+		if ( pointCount < ( prior == null ? 6 : 1 ) )
+			return false;
+
+		weightScale = prior == null ? 1.0 : meanWeightScale(points);
+		double cost = linearize(points, projection);
+		if ( Double.isInfinite(cost) )
+			return false;
+		costTrace[0] = cost;
+		timeTrace[0] = System.nanoTime() - start;
+		traceLength = 1;
+
+		double lambda = LAMBDA_INITIAL;
+		while ( iterations < maxIterations && lambda < LAMBDA_MAX )
+		{
+			if ( timeBudgetNanos > 0L && System.nanoTime() - start >= timeBudgetNanos )
+				break;
+
+			//(J^T J + lambda diag(J^T J)) step = -J^T r//
+			for ( int i = 0; i < 144; i++ )
+				system[i] = jtj[i];
+			for ( int i = 0; i < 12; i++ )
+			{
+				system[i * 13] += lambda * jtj[i * 13] + 1e-12;
+				step[i] = -jtr[i];
+			}
+			if ( !DLTMath.choleskySolve(system, 12, step) )
+			{
+				lambda *= 10.0;
+				continue;
+			}
+			for ( int i = 0; i < 12; i++ )
+				trial[i] = projection[i] + step[i];
+
+			final double trialCost = cost(points, trial);
+			if ( trialCost < cost )
+			{
+				System.arraycopy(trial, 0, projection, 0, 12);
+				final double decrease = (cost - trialCost) / cost;
+				cost = linearize(points, projection);
+				lambda = Math.max(lambda * 0.1, 1e-12);
+				iterations++;
+				costTrace[traceLength] = cost;
+				timeTrace[traceLength] = System.nanoTime() - start;
+				traceLength++;
+				if ( decrease < tolerance )
+					break;
+			}
+			else
+				lambda *= 10.0;
+		}
+
+		DLTMath.normalizeViewDirection(projection, points.worldX(0), points.worldY(0), points.worldZ(0));
+		return true;
+	}
+
+	//Accumulates J^T J and J^T r at p and returns the cost//
+	private double linearize(CorrespondenceBuffer points, double[] p)
+	{
+		final double[] wx = points.worldXColumn(), wy = points.worldYColumn(), wz = points.worldZColumn();
+		final double[] sx = points.screenXColumn(), sy = points.screenYColumn();
+		final double[] weight = points.weightColumn();
+
+		for ( int i = 0; i < 144; i++ )
+			jtj[i] = 0.0;
+		for ( int i = 0; i < 12; i++ )
+			jtr[i] = 0.0;
+
+		double cost = 0.0;
+		for ( int i = 0; i < pointCount; i++ )
+		{
+			final double x = wx[i], y = wy[i], z = wz[i];
+			final double w = p[8] * x + p[9] * y + p[10] * z + p[11];
+			if ( w <= 0.0 )
+				return Double.POSITIVE_INFINITY;
+			final double iw = 1.0 / w;
+			final double pu = (p[0] * x + p[1] * y + p[2] * z + p[3]) * iw;
+			final double pv = (p[4] * x + p[5] * y + p[6] * z + p[7]) * iw;
+			final double ru = pu - sx[i];
+			final double rv = pv - sy[i];
+			final double c = weight == null ? 1.0 : weightScale * weight[i];
+			cost += c * ( ru * ru + rv * rv );
+
+			//d ru/d a = h/w, d ru/d c = -pu h/w, d rv/d b = h/w, d rv/d c = -pv h/w//
+			final double h0 = x * iw, h1 = y * iw, h2 = z * iw, h3 = iw;
+			addRow(h0, h1, h2, h3, 0, pu, ru, c);
+			addRow(h0, h1, h2, h3, 4, pv, rv, c);
+		}
+
+		////prior term, its Hessian is the scaled precision////
+		priorCost = 0.0;
+		if ( prior != null )
+		{
+			for ( int i = 0; i < 12; i++ )
+			{
+				double g = 0.0;
+				for ( int j = 0; j < 12; j++ )
+				{
+					final double a = priorWeight * prior.precision(i, j);
+					jtj[i * 12 + j] += a;
+					g += a * ( p[j] - prior.mean(j) );
+				}
+				jtr[i] += g;
+			}
+			priorCost = priorWeight * prior.cost(p);
+		}
+		return cost + priorCost;
+	}
+
+	//Adds one residual row to J^T J and J^T r. The row is h/w in the block of the first or second//
+	//projection row (rowBlock = 0 or 4) and -projected * h/w in the block of the third row, weighted by c//
+	private void addRow(double h0, double h1, double h2, double h3, int rowBlock, double projected, double r, double c)
+	{
+		rowIndex[0] = rowBlock; rowIndex[1] = rowBlock + 1; rowIndex[2] = rowBlock + 2; rowIndex[3] = rowBlock + 3;
+		rowValues[0] = h0; rowValues[1] = h1; rowValues[2] = h2; rowValues[3] = h3;
+		rowValues[4] = -projected * h0; rowValues[5] = -projected * h1; rowValues[6] = -projected * h2; rowValues[7] = -projected * h3;
+
+		for ( int a = 0; a < 8; a++ )
+		{
+			final int o = rowIndex[a] * 12;
+			final double va = c * rowValues[a];
+			jtr[rowIndex[a]] += va * r;
+			for ( int b = 0; b < 8; b++ )
+				jtj[o + rowIndex[b]] += va * rowValues[b];
+		}
+	}
+
+	//Factor scaling the positive weights of the pairs to a mean of 1//
+	private double meanWeightScale(CorrespondenceBuffer points)
+	{
+		final double[] weight = points.weightColumn();
+		if ( weight == null )
+			return 1.0;
+		double sum = 0.0;
+		int count = 0;
+		for ( int i = 0; i < pointCount; i++ )
+			if ( weight[i] > 0.0 )
+			{
+				sum += weight[i];
+				count++;
+			}
+		return count > 0 ? count / sum : 1.0;
+	}
+
+	//Sum of squared pixel errors at p, infinite if a pair is projected behind the viewer//
+	private double cost(CorrespondenceBuffer points, double[] p)
+	{
+		final double[] wx = points.worldXColumn(), wy = points.worldYColumn(), wz = points.worldZColumn();
+		final double[] sx = points.screenXColumn(), sy = points.screenYColumn();
+		final double[] weight = points.weightColumn();
+		double cost = 0.0;
+		for ( int i = 0; i < pointCount; i++ )
+		{
+			final double x = wx[i], y = wy[i], z = wz[i];
+			final double w = p[8] * x + p[9] * y + p[10] * z + p[11];
+			if ( w <= 0.0 )
+				return Double.POSITIVE_INFINITY;
+			final double ru = (p[0] * x + p[1] * y + p[2] * z + p[3]) / w - sx[i];
+			final double rv = (p[4] * x + p[5] * y + p[6] * z + p[7]) / w - sy[i];
+			cost += ( weight == null ? 1.0 : weightScale * weight[i] ) * ( ru * ru + rv * rv );
+		}
+		if ( prior != null )
+			cost += priorWeight * prior.cost(p);
+		return cost;
+	}
+}
@@ -0,0 +1,72 @@
+/**************************************************************************************
+ * This file contains the SessionReport command line tool which runs the leave-one-out
+ * validation as a bulk job over archived calibration sessions (.session files).
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Locale;
+
+/*******************************************************************************
+ * Usage: java -cp spaam-core.jar com.spaam.util.SessionReport [-samples] <file|dir>...
+ *
+ * Prints one CSV line per session: file, pairs, fit RMS, leave-one-out RMS,
+ * index and error of the worst pair. With -samples the leave-one-out error of
+ * every pair follows on its own line. Directories are searched (not
+ * recursively) for .session files.
+ ******************************************************************************/
+public class SessionReport {
+	public static void main(String[] args)
+	{
+		boolean samples = false;
+		final PrintStream out = System.out;
+		final CorrespondenceBuffer points = new CorrespondenceBuffer();
+		final LeaveOneOutValidator validator = new LeaveOneOutValidator();
+
+		out.println("file,pairs,fit_rms,loo_rms,worst_index,worst_error");
+		for ( String arg : args )
+		{
+			if ( arg.equals("-samples") )
+			{
+				samples = true;
+				continue;
+			}
+			final File file = new File(arg);
+			final File[] files = file.isDirectory() ? file.listFiles() : new File[] { file };
+			if ( files == null )
+				continue;
+			for ( File session : files )
+			{
+				if ( file.isDirectory() && !session.getName().endsWith(".session") )
+					continue;
+				report(session, points, validator, samples, out);
+			}
+		}
+	}
+
+	private static void report(File session, CorrespondenceBuffer points, LeaveOneOutValidator validator, boolean samples, PrintStream out)
+	{
+		points.clear();
+		try {
+			CalibrationFile.readSession(session, points);
+		} catch (IOException e) {
+			System.err.println(session.getPath() + ": " + e.getMessage());
+			return;
+		}
+		if ( !validator.validate(points) )
+		{
+			out.println(session.getPath() + "," + points.size() + ",,,,");
+			return;
+		}
+
+		final int worst = validator.getWorstIndex();
+		out.println(String.format(Locale.US, "%s,%d,%.4f,%.4f,%d,%.4f", session.getPath(), points.size(),
+				validator.getFitRms(), validator.getLooRms(), worst, validator.getErrors()[worst]));
+		if ( samples )
+			for ( int i = 0; i < validator.size(); i++ )
+				out.println(String.format(Locale.US, "  %d,%.4f", i, validator.getErrors()[i]));
+	}
+}
@@ -0,0 +1,240 @@
+/**************************************************************************************
+ * This file contains the SyntheticCalibration generator. It produces screen-world
+ * correspondence pairs from a known (ground truth) projection so that the solvers can
+ * be validated and benchmarked without a headset and a printed marker.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import com.spaam.util.spaamutil.SPAAM_SVD.Correspondence_Pair;
+
+/*******************************************************************************
+ * Samples are drawn by picking a screen pixel uniformly over the per eye
+ * screen and a depth uniformly over the arm's length volume in front of the
+ * eye, then casting the pixel's ray to that depth. Every clean sample
+ * therefore lies inside the view frustum and no sample is ever rejected.
+ *
+ * The noise models are applied in the order a real session corrupts a pair:
+ *   - tracker depth noise, moving the marker along the line of sight,
+ *   - tracker position noise, isotropic on the reported marker position,
+ *   - alignment (pixel) noise on the screen point,
+ *   - outliers, whose screen point is replaced by a uniformly random pixel.
+ *
+ * The generator is deterministic: the same seed, settings and call sequence
+ * always produce the same pairs. World units follow the ground truth
+ * projection (millimetres for the tracker used by the application).
+ ******************************************************************************/
+public class SyntheticCalibration {
+	////Ground truth////
+	private final double[] projection = new double[12];
+	//inverse of the left 3x3 block and the eye centre, used to cast pixel rays//
+	private final double[] inverseM = new double[9];
+	private final double[] eye = new double[3];
+
+	////Sampling volume////
+	private double width = CalibrationFile.SCREEN_WIDTH, height = CalibrationFile.SCREEN_HEIGHT;
+	private double nearDepth = 250.0, farDepth = 700.0;
+
+	////Noise models////
+	private double pixelNoise = 1.0;
+	private double depthNoise = 0.0;
+	private double positionNoise = 0.0;
+	private double outlierRate = 0.0;
+
+	private final FastRandom random;
+	private final double[] sample = new double[5];
+	private final boolean[] outlier = new boolean[1];
+
+	/*************************************************************
+	 * @param projection - ground truth 3x4 projection (row major), world to screen pixels
+	 * @param seed - seed of the sample sequence
+	 ************************************************************/
+	public SyntheticCalibration(double[] projection, long seed)
+	{
+		setProjection(projection);
+		random = new FastRandom(seed);
+	}
+
+	/*************************************************************
+	 * Builds the ground truth from intrinsics and extrinsics:
+	 * P = K [R | t] with K = [fx 0 cx; 0 fy cy; 0 0 1].
+	 * @param rotation - 3x3 world to eye rotation (row major)
+	 * @param translation - world to eye translation
+	 ************************************************************/
+	public static double[] fromIntrinsics(double fx, double fy, double cx, double cy, double[] rotation, double[] translation)
+	{
+		final double[] p = new double[12];
+		for ( int c = 0; c < 3; c++ )
+		{
+			p[c] = fx * rotation[c] + cx * rotation[6 + c];
+			p[4 + c] = fy * rotation[3 + c] + cy * rotation[6 + c];
+			p[8 + c] = rotation[6 + c];
+		}
+		p[3] = fx * translation[0] + cx * translation[2];
+		p[7] = fy * translation[1] + cy * translation[2];
+		p[11] = translation[2];
+		return p;
+	}
+
+	/*************************************************************
+	 * Recovers the 3x4 projection from the 4x4 OpenGL matrix stored
+	 * in a .calib file (column major), undoing BuildGLMatrix3x4( ).
+	 * The screen parameters must be the ones the file was built with,
+	 * the clip planes do not matter. The result is determined up to
+	 * the scale of the viewing direction, exactly like a DLT result.
+	 ************************************************************/
+	public static double[] fromGLMatrix(double[] gl, int right, int left, int top, int bottom)
+	{
+		final double[] p = new double[12];
+		GLProjection.toProjection3x4(gl, left, right, top, bottom, p);
+		return p;
+	}
+
+	//Returns the ground truth 3x4 projection (row major, unit viewing direction)//
+	public double[] getProjection() { return projection; }
+
+	public void setProjection(double[] p)
+	{
+		System.arraycopy(p, 0, projection, 0, 12);
+
+		////scale to a unit viewing direction////
+		final double len = Math.sqrt(p[8] * p[8] + p[9] * p[9] + p[10] * p[10]);
+		for ( int i = 0; i < 12; i++ )
+			projection[i] /= len;
+
+		////invert the left 3x3 block M (adjugate over determinant)////
+		final double a = projection[0], b = projection[1], c = projection[2];
+		final double d = projection[4], e = projection[5], f = projection[6];
+		final double g = projection[8], h = projection[9], k = projection[10];
+		final double c0 = e * k - f * h, c1 = f * g - d * k, c2 = d * h - e * g;
+		final double det = a * c0 + b * c1 + c * c2;
+		if ( Math.abs(det) < 1e-12 )
+			throw new IllegalArgumentException("Projection has a singular left 3x3 block");
+		inverseM[0] = c0 / det; inverseM[1] = ( c * h - b * k ) / det; inverseM[2] = ( b * f - c * e ) / det;
+		inverseM[3] = c1 / det; inverseM[4] = ( a * k - c * g ) / det; inverseM[5] = ( c * d - a * f ) / det;
+		inverseM[6] = c2 / det; inverseM[7] = ( b * g - a * h ) / det; inverseM[8] = ( a * e - b * d ) / det;
+
+		////eye centre C = -M^-1 p4////
+		for ( int r = 0; r < 3; r++ )
+			eye[r] = -( inverseM[r * 3] * projection[3] + inverseM[r * 3 + 1] * projection[7] + inverseM[r * 3 + 2] * projection[11] );
+	}
+
+	////Settings////
+
+	//Screen the samples are drawn on, defaults to the 960x540 per eye screen//
+	public void setScreen(double width, double height) { this.width = width; this.height = height; }
+
+	//Depth range of the samples along the viewing direction (world units)//
+	public void setDepthRange(double near, double far) { nearDepth = near; farDepth = far; }
+
+	//Standard deviation of the alignment error in pixels//
+	public void setPixelNoise(double sigma) { pixelNoise = sigma; }
+
+	//Standard deviation of the tracker error along the line of sight (world units)//
+	public void setDepthNoise(double sigma) { depthNoise = sigma; }
+
+	//Standard deviation of the isotropic tracker position error (world units)//
+	public void setPositionNoise(double sigma) { positionNoise = sigma; }
+
+	//Fraction of the pairs whose screen point is replaced by a random pixel//
+	public void setOutlierRate(double rate) { outlierRate = rate; }
+
+	//Restarts the sample sequence//
+	public void setSeed(long seed) { random.setSeed(seed); }
+
+	////Generation////
+
+	/*************************************************************
+	 * @param packed - receives count pairs as wx, wy, wz, sx, sy starting at offset
+	 *   (the Correspondence_Pair layout accepted by CorrespondenceBuffer.addAll( ))
+	 * @param outliers - if not null, outliers[i] is set for every outlier pair i
+	 * Returns the number of outliers generated.
+	 ************************************************************/
+	public int generate(double[] packed, int offset, int count, boolean[] outliers)
+	{
+		return generate(packed, offset, count, outliers, 0);
+	}
+
+	private int generate(double[] packed, int offset, int count, boolean[] outliers, int outlierOffset)
+	{
+		int outlierCount = 0;
+		for ( int i = 0; i < count; i++ )
+		{
+			final int o = offset + i * 5;
+
+			////exact sample: a random pixel cast to a random depth////
+			final double u = random.nextDouble() * width;
+			final double v = random.nextDouble() * height;
+			final double depth = nearDepth + random.nextDouble() * ( farDepth - nearDepth );
+			final double rx = u * depth - projection[3], ry = v * depth - projection[7], rz = depth - projection[11];
+			double x = inverseM[0] * rx + inverseM[1] * ry + inverseM[2] * rz;
+			double y = inverseM[3] * rx + inverseM[4] * ry + inverseM[5] * rz;
+			double z = inverseM[6] * rx + inverseM[7] * ry + inverseM[8] * rz;
+
+			////tracker noise////
+			if ( depthNoise > 0.0 )
+			{
+				final double dx = x - eye[0], dy = y - eye[1], dz = z - eye[2];
+				final double s = depthNoise * random.nextGaussian() / Math.sqrt(dx * dx + dy * dy + dz * dz);
+				x += s * dx; y += s * dy; z += s * dz;
+			}
+			if ( positionNoise > 0.0 )
+			{
+				x += positionNoise * random.nextGaussian();
+				y += positionNoise * random.nextGaussian();
+				z += positionNoise * random.nextGaussian();
+			}
+
+			////alignment noise and outliers////
+			double su, sv;
+			final boolean outlier = outlierRate > 0.0 && random.nextDouble() < outlierRate;
+			if ( outlier )
+			{
+				su = random.nextDouble() * width;
+				sv = random.nextDouble() * height;
+				outlierCount++;
+			}
+			else
+			{
+				su = u; sv = v;
+				if ( pixelNoise > 0.0 )
+				{
+					su += pixelNoise * random.nextGaussian();
+					sv += pixelNoise * random.nextGaussian();
+				}
+			}
+			if ( outliers != null )
+				outliers[outlierOffset + i] = outlier;
+
+			packed[o] = x; packed[o + 1] = y; packed[o + 2] = z;
+			packed[o + 3] = su; packed[o + 4] = sv;
+		}
+		return outlierCount;
+	}
+
+	//Appends count generated pairs to the buffer, returns the number of outliers//
+	//(outliers, if not null, is indexed by the pairs generated in this call)//
+	public int generate(CorrespondenceBuffer points, int count, boolean[] outliers)
+	{
+		final double[] chunk = new double[5 * Math.min(count, 4096)];
+		int outlierCount = 0, done = 0;
+		points.ensureCapacity(points.size() + count);
+		while ( done < count )
+		{
+			final int n = Math.min(count - done, chunk.length / 5);
+			outlierCount += generate(chunk, 0, n, outliers, done);
+			points.addAll(chunk, 0, n);
+			done += n;
+		}
+		return outlierCount;
+	}
+
+	//Generates the next pair into the passed in Correspondence_Pair, returns true for an outlier//
+	public boolean next(Correspondence_Pair pair)
+	{
+		generate(sample, 0, 1, outlier, 0);
+		pair.worldPoint.set(0, 0, sample[0]); pair.worldPoint.set(0, 1, sample[1]); pair.worldPoint.set(0, 2, sample[2]);
+		pair.screenPoint.set(0, 0, sample[3]); pair.screenPoint.set(0, 1, sample[4]);
+		return outlier[0];
+	}
+}
@@ -0,0 +1,120 @@
+/**************************************************************************************
+ * This file contains the TrackingHistory, a fixed size ring of the most recent marker
+ * poses reported by the tracker. It is the input of the WeightPolicy implementations.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+/*******************************************************************************
+ * Every tracked frame the marker position and the marker normal (the z axis
+ * of the marker in the same frame as the position) are pushed into the
+ * ring. The oldest frame is overwritten once the ring is full, so the memory
+ * use is fixed. The history should be cleared when tracking is lost, so the
+ * jitter of a new lock is not mixed with the frames before it.
+ *
+ * An instance is not thread safe, it is meant to be fed and read by the
+ * rendering thread.
+ ******************************************************************************/
+public class TrackingHistory {
+	//Values stored per frame: position x, y, z and normal x, y, z//
+	private static final int STRIDE = 6;
+
+	private final double[] ring;
+	private final int capacity;
+	private int next = 0;
+	private int size = 0;
+
+	public TrackingHistory(int capacity)
+	{
+		this.capacity = Math.max(capacity, 1);
+		ring = new double[STRIDE * this.capacity];
+	}
+
+	/*************************************************************
+	 * @param x, y, z - position of the marker centre
+	 * @param nx, ny, nz - normal of the marker plane
+	 * Records the pose of one tracked frame
+	 ************************************************************/
+	public void push(double x, double y, double z, double nx, double ny, double nz)
+	{
+		final int o = STRIDE * next;
+		ring[o] = x; ring[o + 1] = y; ring[o + 2] = z;
+		ring[o + 3] = nx; ring[o + 4] = ny; ring[o + 5] = nz;
+		next = ( next + 1 ) % capacity;
+		size = Math.min(size + 1, capacity);
+	}
+
+	public void clear()
+	{
+		next = 0;
+		size = 0;
+	}
+
+	public int size() { return size; }
+	public int capacity() { return capacity; }
+
+	////Newest Frame (only meaningful if size() > 0)////
+	public double x() { return ring[newest()]; }
+	public double y() { return ring[newest() + 1]; }
+	public double z() { return ring[newest() + 2]; }
+	public double normalX() { return ring[newest() + 3]; }
+	public double normalY() { return ring[newest() + 4]; }
+	public double normalZ() { return ring[newest() + 5]; }
+
+	/*************************************************************
+	 * Returns the variance of the marker position over the frames in the
+	 * ring (the sum of the x, y and z variances), a measure of the pose
+	 * jitter while the user is holding still. 0 with fewer than 2 frames.
+	 ************************************************************/
+	public double positionVariance()
+	{
+		if ( size < 2 )
+			return 0.0;
+
+		//shifted by the newest frame, which keeps the one pass sums well conditioned//
+		final int n = newest();
+		final double rx = ring[n], ry = ring[n + 1], rz = ring[n + 2];
+		double sx = 0.0, sy = 0.0, sz = 0.0, sq = 0.0;
+		for ( int i = 0; i < size; i++ )
+		{
+			final int o = STRIDE * i;
+			final double dx = ring[o] - rx, dy = ring[o + 1] - ry, dz = ring[o + 2] - rz;
+			sx += dx; sy += dy; sz += dz;
+			sq += dx * dx + dy * dy + dz * dz;
+		}
+		return ( sq - ( sx * sx + sy * sy + sz * sz ) / size ) / ( size - 1 );
+	}
+
+	/*************************************************************
+	 * Returns the frame to frame jitter of the marker position, half the
+	 * mean squared distance between consecutive frames (squared world units
+	 * per frame, summed over x, y and z). For independent tracker noise this
+	 * estimates the per frame noise variance, while a steady head motion only
+	 * adds its squared step per frame, e.g. (1 mm)^2 for 3 cm/s at 30 fps.
+	 * positionVariance( ) instead grows with the square of the distance
+	 * moved over the whole ring. 0 with fewer than 2 frames.
+	 ************************************************************/
+	public double jitterVariance()
+	{
+		if ( size < 2 )
+			return 0.0;
+
+		//the oldest frame in the ring is at next once it is full, at 0 before//
+		final int first = size < capacity ? 0 : next;
+		double sq = 0.0;
+		int previous = STRIDE * first;
+		for ( int i = 1; i < size; i++ )
+		{
+			final int o = STRIDE * ( ( first + i ) % capacity );
+			final double dx = ring[o] - ring[previous], dy = ring[o + 1] - ring[previous + 1], dz = ring[o + 2] - ring[previous + 2];
+			sq += dx * dx + dy * dy + dz * dz;
+			previous = o;
+		}
+		return sq / ( 2.0 * ( size - 1 ) );
+	}
+
+	private int newest()
+	{
+		return STRIDE * ( ( next + capacity - 1 ) % capacity );
+	}
+}
@@ -0,0 +1,197 @@
+/**************************************************************************************
+ * This file contains the TsqrSolver, a tall-skinny QR path for solving the SPAAM DLT
+ * over very large (offline, merged) sets of correspondence pairs with bounded memory.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/*******************************************************************************
+ * Tall-skinny QR (TSQR) of the normalized 2N x 12 design matrix A.
+ *
+ * The pairs are split into chunks of a fixed size. The rows of a chunk are
+ * built into a chunk sized buffer and reduced to their 12x12 triangular
+ * factor R_c by Householder QR. The chunks are split into blocks which run
+ * in parallel on the configured executor (or on the calling thread if no
+ * executor is set), every block owning one chunk buffer. The factors are
+ * then merged in chunk order
+ *
+ * 		R = qr( [ ... qr( [ R_0; R_1 ] ) ...; R_last ] )
+ *
+ * so R^T R = A^T A and the null vector is the right singular vector of the
+ * smallest singular value of the 12x12 R (one sided Jacobi). A is never
+ * materialized and A^T A is never formed, so the memory use is bounded by
+ * the chunk size (plus 144 doubles per chunk) and the conditioning is that
+ * of A rather than of its square. As every chunk and the merge order only
+ * depend on the chunk size, the result is the same for any executor or
+ * block count.
+ *
+ * The normalization is the weighted mean and standard deviation of all
+ * pairs (one pass, PointStatistics) and the result is scaled to a unit
+ * viewing direction in front of the first pair, like the other solves.
+ *
+ * An instance keeps its workspace between calls and is not thread safe.
+ ******************************************************************************/
+public class TsqrSolver {
+	////Configuration////
+	private int chunkSize = 4096;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private ExecutorService executor = null;
+
+	////Normalization////
+	private final PointStatistics statistics = new PointStatistics();
+	private final double[] worldShift = new double[3];
+	private final double[] worldScale = new double[3];
+	private final double[] screenShift = new double[2];
+	private final double[] screenScale = new double[2];
+
+	////Factors////
+	private double[] factors = new double[0];
+	private final double[] merge = new double[24 * 12];
+	private final double[] v = new double[144];
+	private final double[] norms = new double[12];
+	private final double[] nullVector = new double[12];
+
+	//Default Constructor that does nothing//
+	public TsqrSolver()
+	{	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	////Configuration////
+
+	//Number of pairs per chunk (at least 6), bounds the memory of every block//
+	public void setChunkSize(int pairs) { chunkSize = Math.max(6, pairs); }
+	public int getChunkSize() { return chunkSize; }
+
+	//Number of blocks the chunks are split into//
+	public void setParallelism(int blocks) { parallelism = Math.max(1, blocks); }
+
+	//Executor used to factor the blocks, null runs everything on the calling thread//
+	public void setExecutor(ExecutorService executor) { this.executor = executor; }
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	/*************************************************************
+	 * @param points - the correspondence pairs (at least 6)
+	 * @param result - 12 double array receiving the 3x4 projection (row major)
+	 * Solves the DLT over all pairs. Returns false if there are fewer than 6.
+	 ************************************************************/
+	public boolean solve(CorrespondenceBuffer points, double[] result)
+	{
+		final int n = points.size();
+		if ( n < 6 )
+			return false;
+
+		final double[] wx = points.worldXColumn(), wy = points.worldYColumn(), wz = points.worldZColumn();
+		final double[] sx = points.screenXColumn(), sy = points.screenYColumn();
+		final double[] weight = points.weightColumn();
+		statistics.clear();
+		for ( int i = 0; i < n; i++ )
+			statistics.add(wx[i], wy[i], wz[i], sx[i], sy[i], weight == null ? 1.0 : weight[i]);
+		statistics.normalization(worldShift, worldScale, screenShift, screenScale);
+
+		////factor every chunk////
+		final int chunks = ( n + chunkSize - 1 ) / chunkSize;
+		if ( factors.length < 144 * chunks )
+			factors = new double[144 * chunks];
+		final int blocks = Math.min(parallelism, chunks);
+		final List<Block> workers = new ArrayList<Block>(blocks);
+		for ( int b = 0; b < blocks; b++ )
+			workers.add(new Block(points, (chunks * b) / blocks, (chunks * (b + 1)) / blocks));
+		runBlocks(workers);
+
+		////merge the factors in chunk order////
+		System.arraycopy(factors, 0, merge, 0, 144);
+		for ( int c = 1; c < chunks; c++ )
+		{
+			System.arraycopy(factors, 144 * c, merge, 144, 144);
+			DLTMath.householderR(merge, 24);
+		}
+
+		DLTMath.nullVectorOneSided(merge, 12, v, norms, nullVector);
+		DLTMath.denormalize(nullVector, worldShift, worldScale, screenShift, screenScale, result);
+		DLTMath.normalizeViewDirection(result, wx[0], wy[0], wz[0]);
+		return true;
+	}
+
+	//Factors all blocks, in parallel when an executor is available//
+	private void runBlocks(List<Block> workers)
+	{
+		if ( executor == null || workers.size() == 1 )
+		{
+			for ( int b = 0; b < workers.size(); b++ )
+				workers.get(b).call();
+			return;
+		}
+		try {
+			final List<Future<Void>> futures = executor.invokeAll(workers);
+			for ( int b = 0; b < futures.size(); b++ )
+				futures.get(b).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("TSQR factorization interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("TSQR chunk factorization failed", e.getCause());
+		}
+	}
+
+	/********************************************************************
+	 * A contiguous range of chunks factored by one task into their slots
+	 * of the shared factor array. Each block owns one chunk buffer.
+	 *******************************************************************/
+	private class Block implements Callable<Void> {
+		private final CorrespondenceBuffer points;
+		private final int from, to;
+		private final double[] rows;
+
+		Block(CorrespondenceBuffer points, int from, int to)
+		{
+			this.points = points;
+			this.from = from;
+			this.to = to;
+			this.rows = new double[24 * Math.min(chunkSize, points.size())];
+		}
+
+		@Override
+		public Void call()
+		{
+			final int n = points.size();
+			final double[] wx = points.worldXColumn(), wy = points.worldYColumn(), wz = points.worldZColumn();
+			final double[] sx = points.screenXColumn(), sy = points.screenYColumn();
+			final double[] weight = points.weightColumn();
+
+			for ( int c = from; c < to; c++ )
+			{
+				final int first = c * chunkSize;
+				final int count = Math.min(chunkSize, n - first);
+				for ( int k = 0; k < count; k++ )
+				{
+					final int i = first + k;
+					DLTMath.fillDesignRows(rows, k,
+							( wx[i] - worldShift[0] ) / worldScale[0],
+							( wy[i] - worldShift[1] ) / worldScale[1],
+							( wz[i] - worldShift[2] ) / worldScale[2],
+							( sx[i] - screenShift[0] ) / screenScale[0],
+							( sy[i] - screenShift[1] ) / screenScale[1]);
+					if ( weight != null && weight[i] != 1.0 )
+						DLTMath.scaleDesignRows(rows, k, Math.sqrt(weight[i]));
+				}
+				//a short last chunk is padded with zero rows up to 12//
+				int used = 2 * count;
+				for ( ; used < 12; used++ )
+					for ( int j = 0; j < 12; j++ )
+						rows[used * 12 + j] = 0.0;
+
+				DLTMath.householderR(rows, used);
+				System.arraycopy(rows, 0, factors, 144 * c, 144);
+			}
+			return null;
+		}
+	}
+}
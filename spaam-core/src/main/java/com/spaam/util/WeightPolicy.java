@@ -0,0 +1,149 @@
+/**************************************************************************************
+ * This file contains the WeightPolicy interface and the policies shipped with it. A
+ * policy turns the tracking state at the moment of an alignment into the confidence
+ * weight of the recorded correspondence pair (see SPAAM_SVD.addCorrespondence( )).
+ *************************************************************************************/
+
+package com.spaam.util;
+
+/*******************************************************************************
+ * Weights are relative, 1 is a pair recorded under good tracking conditions
+ * and smaller values let a pair pull the solution less. A weight of 0 makes
+ * the pair count as if it had not been recorded at all. The policies can be
+ * combined with Product, e.g.
+ *
+ * 		new WeightPolicy.Product(new WeightPolicy.Distance(0.5, 2.0),
+ * 				new WeightPolicy.PoseVariance(4e-6))
+ *
+ * with positions in metres. Only the ratios of the weights of a session
+ * matter: the DLT is invariant to a common factor and the MAP refinement
+ * scales the weights to a mean of 1 (see ReprojectionRefiner).
+ ******************************************************************************/
+public interface WeightPolicy {
+	/*************************************************************
+	 * @param history - the recent marker poses, the newest one is the
+	 *   pose the pair is recorded with (never empty)
+	 * Returns the weight (>= 0) of a pair recorded now
+	 ************************************************************/
+	double weight(TrackingHistory history);
+
+	/********************************************************************
+	 * Every pair counts the same, the behaviour without a policy.
+	 *******************************************************************/
+	public static final class Uniform implements WeightPolicy {
+		@Override
+		public double weight(TrackingHistory history)
+		{
+			return 1.0;
+		}
+	}
+
+	/********************************************************************
+	 * The pose error of a marker tracker grows with the distance of the
+	 * marker. Pairs up to the reference distance get weight 1, farther
+	 * ones (reference / distance)^exponent.
+	 *******************************************************************/
+	public static final class Distance implements WeightPolicy {
+		private final double reference;
+		private final double exponent;
+
+		public Distance(double reference, double exponent)
+		{
+			this.reference = reference;
+			this.exponent = exponent;
+		}
+
+		@Override
+		public double weight(TrackingHistory history)
+		{
+			final double d = Math.sqrt(history.x() * history.x() + history.y() * history.y() + history.z() * history.z());
+			if ( d <= reference )
+				return 1.0;
+			return Math.pow(reference / d, exponent);
+		}
+	}
+
+	/********************************************************************
+	 * A marker seen at a grazing angle is tracked far less reliably than
+	 * one facing the camera. The weight is cos(angle)^exponent of the angle
+	 * between the marker normal and the line of sight to the marker, and 0
+	 * beyond the cutoff angle (radians).
+	 *******************************************************************/
+	public static final class ViewingAngle implements WeightPolicy {
+		private final double exponent;
+		private final double minCos;
+
+		public ViewingAngle(double exponent, double cutoff)
+		{
+			this.exponent = exponent;
+			this.minCos = Math.cos(cutoff);
+		}
+
+		@Override
+		public double weight(TrackingHistory history)
+		{
+			final double x = history.x(), y = history.y(), z = history.z();
+			final double nx = history.normalX(), ny = history.normalY(), nz = history.normalZ();
+			final double len = Math.sqrt(( x * x + y * y + z * z ) * ( nx * nx + ny * ny + nz * nz ));
+			if ( len == 0.0 )
+				return 1.0;
+			//the sign of the normal depends on the tracker's conventions//
+			final double cos = Math.abs(x * nx + y * ny + z * nz) / len;
+			if ( cos < minCos )
+				return 0.0;
+			return Math.pow(cos, exponent);
+		}
+	}
+
+	/********************************************************************
+	 * Pose jitter over the recent frames, the frame to frame variance of
+	 * the marker position (TrackingHistory.jitterVariance( )), is added to
+	 * the expected alignment variance. The weight is the inverse variance
+	 * relative to a steady pose:
+	 *
+	 * 		w = variance / ( variance + jitterVariance( ) )
+	 *
+	 * The jitter is taken between consecutive frames, so a slow head motion
+	 * while aligning barely lowers the weight, unlike the spread of the
+	 * positions over the whole history. Over a history of n frames the
+	 * estimate has a relative standard deviation of about sqrt(2 / n), about
+	 * 25% for 30 frames.
+	 *******************************************************************/
+	public static final class PoseVariance implements WeightPolicy {
+		private final double variance;
+
+		//@param variance - frame to frame jitter variance (squared world units, summed over x, y and z)//
+		//at which the weight drops to 0.5, e.g. 4e-6 for 2 mm with positions in metres//
+		public PoseVariance(double variance)
+		{
+			this.variance = variance;
+		}
+
+		@Override
+		public double weight(TrackingHistory history)
+		{
+			return variance / ( variance + history.jitterVariance() );
+		}
+	}
+
+	/********************************************************************
+	 * Product of the weights of several policies.
+	 *******************************************************************/
+	public static final class Product implements WeightPolicy {
+		private final WeightPolicy[] policies;
+
+		public Product(WeightPolicy... policies)
+		{
+			this.policies = policies.clone();
+		}
+
+		@Override
+		public double weight(TrackingHistory history)
+		{
+			double w = 1.0;
+			for ( WeightPolicy policy : policies )
+				w *= policy.weight(history);
+			return w;
+		}
+	}
+}
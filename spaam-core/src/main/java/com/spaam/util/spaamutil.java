@@ -0,0 +1,725 @@
+/*************************************************************************
+This code is taken almost directly from the Ubitrack library. I have simply
+converted it from C++ and Boost to Java and JAMA:
+
+Ubitrack - Library for Ubiquitous Tracking
+ * Copyright 2006, Technische Universitaet Muenchen,
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+
+The source code is open source under the GLPL license. Please feel free
+to use and modfiy the source code with proper citation where applicable
+*************************************************************************/
+
+package com.spaam.util;
+
+//Import needed for the Linear Algebra and Matrix related math functions//
+import Jama.*;
+
+/*******************************************************************************
+ * This class provides an interface and related sub classes for recording
+ * 2D - 3D   screen - world correspondence pairs needed for the SPAAM calibration.
+ * 
+ * It also provides a class for storing the correspondence pairs (in a CorrespondenceBuffer)
+ * and then performing the SVD calculation on those pairs.
+ *******************************************************************************/
+public class spaamutil {
+
+		/***************************************************************************
+		 * This class is the interface by which a list of correspondence pairs can be
+		 * recorded and the SVD calculations performed on those pairs. The buffer
+		 * corr_points stores all of the screen-world alignment pairs and the function
+		 * projectionDLTImpl( ) performs the SVD calculations producing the final
+		 * 3x4 projection Matrix.
+		 *
+		 * An instance is not thread safe, use one instance per thread (see
+		 * BatchCalibrator for solving many sessions concurrently).
+		 **************************************************************************/
+		static public class SPAAM_SVD{
+			
+			//Default Constructor that does nothing//
+			public SPAAM_SVD()
+			{			}
+			
+			/********************************************************************
+			 * This class is used to easily store a 2D Pixel and 3D world point
+			 * correspondence pair. This makes it easy to keep related values
+			 * for each pair together.
+			 *******************************************************************/
+			static public class Correspondence_Pair {
+				public Correspondence_Pair( )
+				{  }
+				
+				public Correspondence_Pair( double x1, double y1, double z1, double x2, double y2 )
+				{ worldPoint.set(0, 0, x1); worldPoint.set(0, 1, y1); worldPoint.set(0, 2, z1);
+					screenPoint.set(0, 0, x2); screenPoint.set(0, 1, y2); }
+
+				public Correspondence_Pair( double x1, double y1, double z1, double x2, double y2, double w )
+				{ this(x1, y1, z1, x2, y2); weight = w; }
+
+				//Correspondence Points//
+				public Matrix worldPoint = new Matrix(1, 3);
+				public Matrix screenPoint = new Matrix(1, 2);
+				//Confidence of the pair (e.g. from a WeightPolicy), the DLT rows are scaled by sqrt(weight)//
+				public double weight = 1.0;
+			}
+
+			/////////////////////////////////////////////////////////////////////////////////////////////////////////
+			/////////////////////////////////////////////////////////////////////////////////////////////////////////
+			////Correspondence Points (structure of arrays, see CorrespondenceBuffer)////
+			public final CorrespondenceBuffer corr_points = new CorrespondenceBuffer();
+				
+			////Normalization Components for World Points////
+			private Matrix fromShift = new Matrix(1, 3);
+			private Matrix fromScale = new Matrix(1, 3);
+			////Normalization Components for Screen Points////
+			private Matrix toShift = new Matrix(1, 2);
+			private Matrix toScale = new Matrix(1, 2);
+			////Normalization Matrix for World Points////
+			private Matrix modMatrixWorld = new Matrix(4, 4);
+			////Normalization Matrix for Screen Points////
+			private Matrix modMatrixScreen = new Matrix(3, 3);
+			
+			////Final 3 x 4 Projection Matrix////
+			public Matrix Proj3x4 = new Matrix(3, 4);	
+			public double[] projMat3x4 = {0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0};
+
+			////Primitive Solver Workspace, owned by the instance and reused across solves////
+			private double[] designA = new double[12 * 12];
+			private final double[] worldShift = new double[3];
+			private final double[] worldScale = new double[3];
+			private final double[] screenShift = new double[2];
+			private final double[] screenScale = new double[2];
+			private final double[] svdV = new double[144];
+			private final double[] svdNorms = new double[12];
+			private final double[] nullVector = new double[12];
+			private final double[] projResult = new double[12];
+
+			////Running Normal Equations used by the incremental solve////
+			private final NormalEquationAccumulator normalEquations = new NormalEquationAccumulator();
+			//corr_points.modCount() the normal equations were last synchronized with//
+			private int normalEquationsModCount = 0;
+
+			////First Order Covariance of the projection, see estimateCovariance( )////
+			public final double[] projCovariance = new double[144];
+			private final double[] covarianceProjection = new double[12];
+			private static final int SIGMA_BATCH = 64;
+			private final double[] pixelWork = new double[3 * SIGMA_BATCH];
+
+			////Spread of the recorded pairs, kept in sync with the running normal equations////
+			private final ConditioningMonitor conditioning = new ConditioningMonitor();
+
+			////Intrinsics and pose of Proj3x4, recomputed only when Proj3x4 changes////
+			private final ProjectionDecomposition decomposition = new ProjectionDecomposition();
+			private final double[] decomposedProjection = new double[12];
+			private boolean decomposed = false;
+
+			////Streaming Capture State, fixed size no matter how many samples are streamed////
+			private final NormalEquationAccumulator streamEquations = new NormalEquationAccumulator();
+			private final ConditioningMonitor streamConditioning = new ConditioningMonitor();
+
+			///////////////////////////////////////////////////////////////////////////////////////////////
+
+			//Records a screen-world correspondence pair and folds it into the running normal equations//
+			public void addCorrespondence( double wx, double wy, double wz, double sx, double sy )
+			{
+				addCorrespondence( wx, wy, wz, sx, sy, 1.0 );
+			}
+
+			//Records a pair with a confidence weight (see WeightPolicy), pairs with a higher weight pull//
+			//the solution harder. All of the DLT solves below apply the weights.//
+			public void addCorrespondence( double wx, double wy, double wz, double sx, double sy, double weight )
+			{
+				final boolean inSync = normalEquationsModCount == corr_points.modCount();
+				corr_points.add(wx, wy, wz, sx, sy, weight, 0L);
+				if ( inSync )
+				{
+					normalEquations.add(wx, wy, wz, sx, sy, weight);
+					conditioning.add(wx, wy, wz, sx, sy, weight);
+					normalEquationsModCount = corr_points.modCount();
+				}
+			}
+
+			//Discards the recorded pair at index (e.g. a bad tap) and re-solves. The pair is downdated out//
+			//of the running normal equations instead of rebuilding them, so the cost does not depend on//
+			//the number of pairs. Returns false (leaving Proj3x4 untouched) if fewer than 6 pairs remain.//
+			public boolean removeCorrespondence( int index )
+			{
+				downdateCorrespondence( index );
+				return projectionDLTIncremental( );
+			}
+
+			//Discards the most recently recorded pairs (redoing the last alignments) and re-solves once//
+			public boolean undoLastCorrespondences( int count )
+			{
+				truncateCorrespondences( Math.max(0, corr_points.size() - count) );
+				return projectionDLTIncremental( );
+			}
+
+			//Discards the most recently recorded pair and re-solves (see removeCorrespondence( ))//
+			public boolean undoLastCorrespondence( )
+			{
+				return undoLastCorrespondences( 1 );
+			}
+
+			//Discards all pairs past the first size ones from the buffer and the normal equations//
+			//without solving, the counterpart of addCorrespondence( )//
+			public void truncateCorrespondences( int size )
+			{
+				while ( corr_points.size() > size )
+					downdateCorrespondence( corr_points.size() - 1 );
+			}
+
+			private void downdateCorrespondence( int index )
+			{
+				final boolean inSync = normalEquationsModCount == corr_points.modCount();
+				final double wx = corr_points.worldX(index), wy = corr_points.worldY(index), wz = corr_points.worldZ(index);
+				final double sx = corr_points.screenX(index), sy = corr_points.screenY(index);
+				final double weight = corr_points.weight(index);
+				corr_points.remove(index);
+				if ( inSync )
+				{
+					normalEquations.remove(wx, wy, wz, sx, sy, weight);
+					conditioning.remove(wx, wy, wz, sx, sy, weight);
+					normalEquationsModCount = corr_points.modCount();
+				}
+			}
+
+			//Removes all recorded correspondence pairs//
+			public void clearCorrespondences( )
+			{
+				corr_points.clear();
+				normalEquations.clear();
+				conditioning.clear();
+				normalEquationsModCount = corr_points.modCount();
+			}
+
+			//Folds a streamed screen-world sample into the streaming normal equations. The sample is not//
+			//stored in corr_points, so memory use stays constant however long the capture runs.//
+			public void addStreamingSample( double wx, double wy, double wz, double sx, double sy )
+			{
+				addStreamingSample( wx, wy, wz, sx, sy, 1.0 );
+			}
+
+			//Folds a streamed sample with a confidence weight (see WeightPolicy)//
+			public void addStreamingSample( double wx, double wy, double wz, double sx, double sy, double weight )
+			{
+				streamEquations.add(wx, wy, wz, sx, sy, weight);
+				streamConditioning.add(wx, wy, wz, sx, sy, weight);
+			}
+
+			//Number of samples folded in since the streaming capture was last cleared//
+			public int streamingSampleCount( )
+			{
+				return streamEquations.size();
+			}
+
+			//Discards all streamed samples//
+			public void clearStreaming( )
+			{
+				streamEquations.clear();
+				streamConditioning.clear();
+			}
+
+			///////////////////////////////////////////////////////////////////////////////////////////////
+
+			//A helper function to perform an element wise divide of 2 matrices (or vectors)
+			private Matrix element_div(Matrix m1, Matrix m2)
+			{
+				Matrix result = null;
+				if ( m1.getColumnDimension() == m1.getColumnDimension() )
+					if ( m1.getRowDimension() == m2.getRowDimension() )
+					{
+						result = new Matrix(m1.getRowDimension(), m1.getColumnDimension());
+						for ( int i = 0; i < m1.getRowDimension(); i++)
+							for( int j = 0; j < m1.getColumnDimension(); j++ )
+							{
+								result.set(i,  j, m1.get(i,  j)/m2.get(i,  j));
+							}
+					}
+				
+				return result;
+			}
+			///////////////////////////////////////////////////////////////////////////////////////////////
+			
+			//This is a normalization function that normalizes all of the 2D and 3D correpsondence values//
+			//Normalization is required since the 2D and 3D point values come over different ranges of values//
+			//The weighted mean and standard deviation are maintained incrementally (and numerically stable)//
+			//as pairs are added and removed (see PointStatistics), so this step does not depend on the number//
+			//of pairs.//
+			private void estimateNormalizationParameters( )
+			{
+				syncNormalEquations();
+				final PointStatistics statistics = conditioning.getStatistics();
+
+				fromShift = new Matrix(1, 3); 
+				fromScale = new Matrix(1, 3); 
+				toShift = new Matrix(1, 2);
+				toScale = new Matrix(1, 2);
+				for ( int i = 0; i < 3; i++ ){
+					fromShift.set(0, i, statistics.worldMean(i));
+					fromScale.set(0, i, statistics.worldStdDev(i));
+				}
+				for ( int i = 0; i < 2; i++ ){
+					toShift.set(0, i, statistics.screenMean(i));
+					toScale.set(0, i, statistics.screenStdDev(i));
+				}
+				////end of function////
+			}
+
+			//This function produces the correction values needed to transform the result of the SVD function//
+			//back into the proper range of values//
+			private void generateNormalizationMatrix( )
+			{
+				////compute correction matrix////
+				////Start with All 0's////
+				modMatrixWorld = new Matrix(4, 4);
+				modMatrixScreen = new Matrix(3, 3);
+
+				////create homogeneous matrix////
+				modMatrixWorld.set( 3, 3, 1.0 );
+				modMatrixScreen.set( 2, 2, 1.0 );
+
+				////honestly I'm not sure what this is for////
+				//if ( true )
+				{
+					for ( int i = 0; i < 2; i++ )
+					{
+						modMatrixScreen.set( i, i, toScale.get(0, i ));
+						modMatrixScreen.set( i, 2, toShift.get(0, i ));
+					}
+				}//else
+				{
+					for ( int i = 0; i < 3; i++ )
+					{
+						modMatrixWorld.set( i, i, ( 1.0 ) / fromScale.get(0, i ));
+						modMatrixWorld.set( i, 3, -modMatrixWorld.get( i, i ) * fromShift.get(0, i ));
+					}
+				}
+			}
+			
+			//This function should be called to perform the Singular Value Decomposition operation//
+			//on the correspondence pairs in the corr_points list. The result is the 3x4 projection matrix//
+			//stored in the Proj3x4 object.//
+			public boolean projectionDLTImpl( )
+			{
+				////minimum of 6 well spread correspondence points required to solve////
+				if( corr_points.size() < 6 || !isWellConditioned( ) )
+					return false;
+
+				// normalize input points
+				estimateNormalizationParameters( );
+
+				// construct equation system
+				Matrix A = new Matrix(2*corr_points.size(), 12);
+			
+				for ( int i = 0; i < corr_points.size(); i++ )
+				{
+					Matrix to = element_div( corr_points.get(i).screenPoint.minus(toShift), toScale );
+					Matrix from = element_div( corr_points.get(i).worldPoint.minus(fromShift), fromScale );
+
+					A.set( i * 2,  0, 0 );
+					A.set( i * 2, 1, 0 );
+					A.set( i * 2, 2, 0 );
+					A.set( i * 2, 3, 0 );
+					A.set( i * 2,  4, -from.get(0, 0 ));
+					A.set( i * 2,  5, -from.get(0, 1 ));
+					A.set( i * 2,  6, -from.get(0, 2 ));
+					A.set( i * 2,  7, -1);
+					A.set( i * 2,  8, to.get(0, 1 ) * from.get(0, 0 ));
+					A.set( i * 2,  9, to.get(0, 1 ) * from.get(0, 1 ));
+					A.set( i * 2, 10, to.get(0, 1 ) * from.get(0, 2 ));
+					A.set( i * 2, 11, to.get(0, 1 ));
+					A.set( i * 2 + 1,  0, from.get(0, 0 ));
+					A.set( i * 2 + 1,  1, from.get(0, 1 ));
+					A.set( i * 2 + 1,  2, from.get(0, 2 ));
+					A.set( i * 2 + 1,  3, 1);
+					A.set( i * 2 + 1,  4, 0);
+					A.set( i * 2 + 1, 5, 0 );
+					A.set( i * 2 + 1, 6, 0 );
+					A.set( i * 2 + 1, 7, 0);
+					A.set( i * 2 + 1,  8, -to.get(0, 0 ) * from.get(0, 0 ));
+					A.set( i * 2 + 1,  9, -to.get(0, 0 ) * from.get(0, 1 ));
+					A.set( i * 2 + 1, 10, -to.get(0, 0 ) * from.get(0, 2 ));
+					A.set( i * 2 + 1, 11, -to.get(0, 0 ));
+
+					// weighted DLT, both rows of the pair are scaled by sqrt(weight)
+					if ( corr_points.weight(i) != 1.0 )
+					{
+						final double sw = Math.sqrt(corr_points.weight(i));
+						for ( int c = 0; c < 12; c++ )
+						{
+							A.set( i * 2, c, sw * A.get( i * 2, c ));
+							A.set( i * 2 + 1, c, sw * A.get( i * 2 + 1, c ));
+						}
+					}
+				}
+
+				// solve using SVD
+				//Matrix s = new Matrix(1, 12);
+				//Matrix U = new Matrix( 2 * corr_points.size(), 2 * corr_points.size() );
+				Matrix Vt = new Matrix(12, 12);
+				Vt = A.svd().getV().transpose();
+				
+				// copy result to 3x4 matrix
+				Proj3x4.set( 0, 0, Vt.get( 11, 0 )); Proj3x4.set( 0, 1, Vt.get( 11, 1 )); Proj3x4.set( 0, 2, Vt.get( 11,  2 )); Proj3x4.set( 0, 3, Vt.get( 11,  3 ));
+				Proj3x4.set( 1, 0, Vt.get( 11, 4 )); Proj3x4.set( 1, 1, Vt.get( 11, 5 )); Proj3x4.set( 1, 2, Vt.get( 11,  6 )); Proj3x4.set( 1, 3, Vt.get( 11,  7 ));
+				Proj3x4.set( 2, 0, Vt.get( 11, 8 )); Proj3x4.set( 2, 1, Vt.get( 11, 9 )); Proj3x4.set( 2, 2, Vt.get( 11, 10 )); Proj3x4.set( 2, 3, Vt.get( 11, 11 ));
+
+				// reverse normalization
+				generateNormalizationMatrix( );
+				Matrix toCorrect = new Matrix(( modMatrixScreen.getArray() ));
+				Matrix Ptemp = new Matrix(3, 4); Ptemp = toCorrect.times(Proj3x4);
+				Matrix fromCorrect = new Matrix(( modMatrixWorld.getArray() ));
+				Proj3x4 = Ptemp.times(fromCorrect);
+				
+				// normalize result to have a viewing direction of length 1 (optional)
+				double fViewDirLen = Math.sqrt( Proj3x4.get( 2, 0 ) * Proj3x4.get( 2, 0 ) + Proj3x4.get( 2, 1 ) * Proj3x4.get( 2, 1 ) + Proj3x4.get( 2, 2 ) * Proj3x4.get( 2, 2 ) );
+
+				// if first point is projected onto a negative z value, negate matrix
+				Matrix p1st = new Matrix(corr_points.get(0).worldPoint.getArray());
+				if ( Proj3x4.get( 2, 0 ) * p1st.get(0, 0 ) + Proj3x4.get( 2, 1 ) * p1st.get(0, 1 ) + Proj3x4.get( 2, 2 ) * p1st.get(0, 2 ) + Proj3x4.get( 2, 3 ) < 0 )
+					fViewDirLen = -fViewDirLen;
+
+				Proj3x4 = Proj3x4.times(( 1.0 ) / fViewDirLen);
+
+				return true;
+			}
+
+			//Same normalization as estimateNormalizationParameters( ) but written into the primitive//
+			//shift and scale arrays of the solver without allocating temporary matrices//
+			private void estimateNormalizationPrimitive( )
+			{
+				syncNormalEquations();
+				conditioning.getStatistics().normalization(worldShift, worldScale, screenShift, screenScale);
+			}
+
+			//This function performs the same calculation as projectionDLTImpl( ) but works entirely on//
+			//flat double arrays owned by this instance. The design matrix is only reallocated when the//
+			//number of correspondence pairs outgrows it, so repeated solves do not allocate.//
+			public boolean projectionDLTPrimitive( )
+			{
+				if ( !solveDLTPrimitive( projResult ) )
+					return false;
+
+				// copy result to 3x4 matrix
+				for ( int r = 0; r < 3; r++ )
+					for ( int c = 0; c < 4; c++ )
+						Proj3x4.set(r, c, projResult[r * 4 + c]);
+
+				return true;
+			}
+
+			//The primitive DLT solve into result (12 doubles, row major), Proj3x4 is left untouched//
+			private boolean solveDLTPrimitive( double[] result )
+			{
+				////minimum of 6 correspondence points required to solve////
+				final int n_pts = corr_points.size();
+				if( n_pts < 6 || !isWellConditioned( ) )
+					return false;
+
+				// normalize input points
+				estimateNormalizationPrimitive( );
+
+				// construct equation system, growing the reused design matrix if needed
+				if ( designA.length < 24 * n_pts )
+					designA = new double[24 * Math.max(n_pts, 2 * ( designA.length / 24 ))];
+
+				final double[] wx = corr_points.worldXColumn(), wy = corr_points.worldYColumn(), wz = corr_points.worldZColumn();
+				final double[] sx = corr_points.screenXColumn(), sy = corr_points.screenYColumn();
+				final double[] weight = corr_points.weightColumn();
+				for ( int i = 0; i < n_pts; i++ )
+				{
+					DLTMath.fillDesignRows(designA, i,
+							( wx[i] - worldShift[0] ) / worldScale[0],
+							( wy[i] - worldShift[1] ) / worldScale[1],
+							( wz[i] - worldShift[2] ) / worldScale[2],
+							( sx[i] - screenShift[0] ) / screenScale[0],
+							( sy[i] - screenShift[1] ) / screenScale[1]);
+					// weighted DLT, both rows of the pair are scaled by sqrt(weight)
+					if ( weight != null && weight[i] != 1.0 )
+						DLTMath.scaleDesignRows(designA, i, Math.sqrt(weight[i]));
+				}
+
+				// solve using the one sided Jacobi SVD
+				DLTMath.nullVectorOneSided(designA, 2 * n_pts, svdV, svdNorms, nullVector);
+
+				// reverse normalization and normalize the viewing direction
+				DLTMath.denormalize(nullVector, worldShift, worldScale, screenShift, screenScale, result);
+				DLTMath.normalizeViewDirection(result, wx[0], wy[0], wz[0]);
+				return true;
+			}
+
+			//This function performs a robust (RANSAC) estimation of the projection over corr_points. Pairs//
+			//which disagree with the consensus are ignored, the estimator reports which ones were rejected.//
+			public boolean projectionDLTRobust( RansacEstimator ransac )
+			{
+				if ( !ransac.estimate(corr_points) )
+					return false;
+
+				// copy result to 3x4 matrix
+				final double[] p = ransac.getProjection();
+				for ( int r = 0; r < 3; r++ )
+					for ( int c = 0; c < 4; c++ )
+						Proj3x4.set(r, c, p[r * 4 + c]);
+
+				return true;
+			}
+
+			//This function solves the DLT over a very large corr_points (e.g. merged offline sessions) by a//
+			//chunked, parallel tall-skinny QR. Memory is bounded by the solver's chunk size.//
+			public boolean projectionDLTTsqr( TsqrSolver tsqr )
+			{
+				if ( !isWellConditioned( ) || !tsqr.solve(corr_points, projResult) )
+					return false;
+
+				// copy result to 3x4 matrix
+				for ( int r = 0; r < 3; r++ )
+					for ( int c = 0; c < 4; c++ )
+						Proj3x4.set(r, c, projResult[r * 4 + c]);
+
+				return true;
+			}
+
+			//This function is the quick recalibration after the headset slipped: the intrinsics of the//
+			//solver's prior (an earlier calibration) are kept and only the eye pose is solved over//
+			//corr_points, which already works from PoseSolver.MIN_PAIRS (3) pairs.//
+			public boolean projectionPoseOnly( PoseSolver pose )
+			{
+				if ( !pose.solve(corr_points, projResult) )
+					return false;
+
+				// copy result to 3x4 matrix
+				for ( int r = 0; r < 3; r++ )
+					for ( int c = 0; c < 4; c++ )
+						Proj3x4.set(r, c, projResult[r * 4 + c]);
+
+				return true;
+			}
+
+			//This function resamples corr_points with the bootstrap estimator, which then holds confidence//
+			//intervals for the projection elements and for reprojected points. Proj3x4 is not changed.//
+			//The replicates are checked with the condition accepted by isWellConditioned( ).//
+			public boolean bootstrapProjection( BootstrapEstimator bootstrap )
+			{
+				bootstrap.setMaxCondition(conditioning.getMaxCondition());
+				return bootstrap.estimate(corr_points);
+			}
+
+			//This function refines the current Proj3x4 (the result of one of the DLT solves) by minimizing//
+			//the geometric reprojection error over corr_points. The refiner's iteration limit and time//
+			//budget bound the cost, so it can be run between frames.//
+			public boolean refineProjection( ReprojectionRefiner refiner )
+			{
+				for ( int r = 0; r < 3; r++ )
+					for ( int c = 0; c < 4; c++ )
+						projResult[r * 4 + c] = Proj3x4.get(r, c);
+
+				if ( !refiner.refine(corr_points, projResult) )
+					return false;
+
+				// copy result to 3x4 matrix
+				for ( int r = 0; r < 3; r++ )
+					for ( int c = 0; c < 4; c++ )
+						Proj3x4.set(r, c, projResult[r * 4 + c]);
+
+				return true;
+			}
+
+			//This function computes the MAP estimate of the projection under the refiner's prior (an earlier//
+			//or a population calibration, see ProjectionPrior). It works from the first pair and the taps take//
+			//over from the prior as they accumulate. The refinement starts from the DLT once that is solvable//
+			//and from the prior mean before (or if the DLT start fails). Returns false, leaving Proj3x4 unchanged, if the//
+			//refiner has no prior or both refinements fail.//
+			public boolean projectionMAP( ReprojectionRefiner refiner )
+			{
+				final ProjectionPrior prior = refiner.getPrior();
+				if ( prior == null )
+					return false;
+
+				//the DLT start is solved into projResult only, Proj3x4 changes on success alone//
+				if ( !solveDLTPrimitive( projResult ) || !refiner.refine(corr_points, projResult) )
+				{
+					prior.getMean(projResult);
+					if ( !refiner.refine(corr_points, projResult) )
+						return false;
+				}
+
+				// copy result to 3x4 matrix
+				for ( int r = 0; r < 3; r++ )
+					for ( int c = 0; c < 4; c++ )
+						Proj3x4.set(r, c, projResult[r * 4 + c]);
+
+				return true;
+			}
+
+			//This function solves the same system as projectionDLTImpl( ) from the running 12x12 normal//
+			//equations instead of the 2N x 12 design matrix. Pairs recorded with addCorrespondence( ) are//
+			//folded in as they arrive, so the cost of a solve stays flat no matter how many pairs there are.//
+			//If corr_points was modified directly the normal equations are rebuilt once from the buffer.//
+			public boolean projectionDLTIncremental( )
+			{
+				////minimum of 6 well spread correspondence points required to solve////
+				if ( !isWellConditioned( ) || !normalEquations.solve(projResult) )
+					return false;
+
+				// if first point is projected onto a negative z value, negate matrix
+				DLTMath.normalizeViewDirection(projResult, corr_points.worldX(0), corr_points.worldY(0), corr_points.worldZ(0));
+
+				// copy result to 3x4 matrix
+				for ( int r = 0; r < 3; r++ )
+					for ( int c = 0; c < 4; c++ )
+						Proj3x4.set(r, c, projResult[r * 4 + c]);
+
+				return true;
+			}
+		
+			//Returns true once corr_points can constrain all 11 degrees of freedom of the projection: at//
+			//least 6 pairs whose world points are not (nearly) coplanar and whose screen points are not//
+			//(nearly) collinear. The DLT solves return false without solving until then, so an arbitrary//
+			//matrix is never produced (and written) from degenerate pairs. Constant cost.//
+			public boolean isWellConditioned( )
+			{
+				syncNormalEquations();
+				return conditioning.isWellConditioned();
+			}
+
+			//The spread estimate behind isWellConditioned( ), e.g. to set the accepted condition//
+			public ConditioningMonitor getConditioning( )
+			{
+				syncNormalEquations();
+				return conditioning;
+			}
+
+			//Rebuilds the running normal equations once if corr_points was modified directly//
+			private void syncNormalEquations( )
+			{
+				if ( normalEquationsModCount == corr_points.modCount() )
+					return;
+				final double[] wx = corr_points.worldXColumn(), wy = corr_points.worldYColumn(), wz = corr_points.worldZColumn();
+				final double[] sx = corr_points.screenXColumn(), sy = corr_points.screenYColumn();
+				final double[] weight = corr_points.weightColumn();
+				normalEquations.clear();
+				conditioning.clear();
+				for ( int i = 0; i < corr_points.size(); i++ )
+				{
+					final double w = weight == null ? 1.0 : weight[i];
+					normalEquations.add(wx[i], wy[i], wz[i], sx[i], sy[i], w);
+					conditioning.add(wx[i], wy[i], wz[i], sx[i], sy[i], w);
+				}
+				normalEquationsModCount = corr_points.modCount();
+			}
+
+			//This function fills projCovariance with a first order estimate of the covariance of the 12//
+			//projection elements (row major, unit viewing direction) from the eigen decomposition of the//
+			//normalized A^T A that the DLT solve computes and the residual variance of the fit. It is a//
+			//closed form, much cheaper alternative to bootstrapProjection( ) (see NormalEquationAccumulator.covariance( )).//
+			public boolean estimateCovariance( )
+			{
+				if ( !isWellConditioned( ) || !normalEquations.solve(covarianceProjection) )
+					return false;
+				return normalEquations.covariance(projCovariance);
+			}
+
+			//This function propagates projCovariance to the screen for count packed x, y, z points starting//
+			//at offset. Per point var(u), cov(u, v) and var(v) in pixels^2 are written to result (3 * count).//
+			//Nothing is allocated, so it can be run over the crosses or a grid of points on every frame.//
+			public void predictPixelCovariance( double[] points, int offset, int count, double[] result )
+			{
+				DLTMath.pixelCovariance(covarianceProjection, projCovariance, points, offset, count, result);
+			}
+
+			//This function writes the expected reprojection error (pixels, sqrt(var(u) + var(v))) of count//
+			//packed x, y, z points to result, using the last estimateCovariance( ). Allocation free.//
+			public void predictPixelSigma( double[] points, int offset, int count, double[] result )
+			{
+				for ( int i = 0; i < count; i += SIGMA_BATCH )
+				{
+					final int batch = Math.min(SIGMA_BATCH, count - i);
+					DLTMath.pixelCovariance(covarianceProjection, projCovariance, points, offset + 3 * i, batch, pixelWork);
+					for ( int k = 0; k < batch; k++ )
+						result[i + k] = Math.sqrt(Math.max(pixelWork[3 * k] + pixelWork[3 * k + 2], 0.0));
+				}
+			}
+
+			//This function solves the DLT over all samples streamed with addStreamingSample( ) and can be//
+			//called at any moment during the capture. Like projectionDLTIncremental( ) the cost does not//
+			//depend on the number of samples. The viewing direction is taken from the sample centroid.//
+			public boolean projectionDLTStreaming( )
+			{
+				////minimum of 6 well spread streamed samples required to solve////
+				if ( !streamConditioning.isWellConditioned() || !streamEquations.solve(projResult) )
+					return false;
+
+				// copy result to 3x4 matrix
+				for ( int r = 0; r < 3; r++ )
+					for ( int c = 0; c < 4; c++ )
+						Proj3x4.set(r, c, projResult[r * 4 + c]);
+
+				return true;
+			}
+
+			//Copies the current Proj3x4 (row major) into result, e.g. to hand it to another thread//
+			public void getProjection( double[] result )
+			{
+				for ( int r = 0; r < 3; r++ )
+					for ( int c = 0; c < 4; c++ )
+						result[r * 4 + c] = Proj3x4.get(r, c);
+			}
+
+			//Returns clip planes enclosing the depths of the world points in corr_points under the current//
+			//Proj3x4, widened by margin, or fallback if none is in front of the viewer. Pass them to//
+			//BuildGLMatrix3x4( ) instead of a fixed range; no solve is needed to change the planes.//
+			public ClipPlanes estimateClipPlanes( double margin, ClipPlanes fallback )
+			{
+				getProjection(projResult);
+				return ClipPlanes.fromPoints(projResult, corr_points, margin, fallback);
+			}
+
+			//Returns the RQ decomposition of Proj3x4 (eye intrinsics, rotation and eye position). The//
+			//result is cached with the projection it was computed from and only recomputed when Proj3x4//
+			//has changed since, so it can be polled every frame. Check isValid( ) of the result.//
+			public ProjectionDecomposition getDecomposition( )
+			{
+				boolean changed = !decomposed;
+				for ( int r = 0; r < 3; r++ )
+					for ( int c = 0; c < 4; c++ )
+					{
+						final double value = Proj3x4.get(r, c);
+						if ( decomposedProjection[r * 4 + c] != value )
+						{
+							decomposedProjection[r * 4 + c] = value;
+							changed = true;
+						}
+					}
+				if ( changed )
+				{
+					decomposition.decompose(decomposedProjection);
+					decomposed = true;
+				}
+				return decomposition;
+			}
+
+			//This function transforms the 3x4 projection matrix produced by the SVD operation into a//
+			//4x4 matrix matrix usable by OpenGL. The parameters are the near, far clip planes, and screen resolution//
+			//The result (column major order) is stored in projMat3x4, see GLProjection.buildProjection( ) to write//
+			//it straight into a float[] or FloatBuffer instead//
+			public void BuildGLMatrix3x4(double ne, double fr, int right, int left, int top, int bottom){
+				getProjection(projResult);
+				GLProjection.buildProjection(projResult, left, right, top, bottom, ne, fr, projMat3x4, 0);
+			}
+		}
+}
@@ -0,0 +1,188 @@
+/**************************************************************************************
+ * Tests of the batch calibration: every session solved on its own solver, whatever
+ * the executor, with the results streamed to the sink on the calling thread.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+public class BatchCalibratorTest {
+	private static final int SESSIONS = 24;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp()
+	{
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void tearDown()
+	{
+		executor.shutdownNow();
+	}
+
+	//A batch of sessions with a different number of pairs and seed each//
+	private static List<CorrespondenceBuffer> sessions()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final List<CorrespondenceBuffer> sessions = new ArrayList<CorrespondenceBuffer>();
+		for ( int i = 0; i < SESSIONS; i++ )
+			sessions.add(Fixtures.session(truth, 10 + 5 * i, 130L + i, 1.0));
+		return sessions;
+	}
+
+	private static BatchCalibrator batch(List<CorrespondenceBuffer> sessions)
+	{
+		final BatchCalibrator batch = new BatchCalibrator();
+		for ( int i = 0; i < sessions.size(); i++ )
+			assertEquals(i, batch.add("session" + i, sessions.get(i)));
+		return batch;
+	}
+
+	//Runs the batch and returns the results by index, checking each index arrives once//
+	private static BatchCalibrator.Result[] run(BatchCalibrator batch)
+	{
+		final BatchCalibrator.Result[] results = new BatchCalibrator.Result[batch.size()];
+		final Thread caller = Thread.currentThread();
+		batch.run(new BatchCalibrator.Sink() {
+			@Override
+			public void accept(BatchCalibrator.Result result)
+			{
+				assertSame(caller, Thread.currentThread());
+				assertNull(results[result.getIndex()]);
+				results[result.getIndex()] = result;
+			}
+		});
+		return results;
+	}
+
+	@Test
+	public void resultsMatchASolveOfEachSession()
+	{
+		final List<CorrespondenceBuffer> sessions = sessions();
+		final BatchCalibrator batch = batch(sessions);
+		batch.setExecutor(executor);
+		final BatchCalibrator.Result[] results = run(batch);
+
+		final double[] p = new double[12];
+		for ( int i = 0; i < SESSIONS; i++ )
+		{
+			final SPAAM_SVD svd = Fixtures.solver(sessions.get(i));
+			assertTrue(svd.projectionDLTPrimitive());
+			assertEquals("session" + i, results[i].getId());
+			assertEquals(sessions.get(i).size(), results[i].getPairs());
+			assertTrue(results[i].isSolved());
+			results[i].getProjection(p);
+			Fixtures.assertProjection(Fixtures.projection(svd), p, 1e-12);
+			assertEquals(Fixtures.reprojectionRms(p, sessions.get(i)), results[i].getRms(), 1e-9);
+		}
+	}
+
+	@Test
+	public void executorDoesNotChangeTheResults()
+	{
+		final BatchCalibrator batch = batch(sessions());
+		final BatchCalibrator.Result[] sequential = run(batch);
+		batch.setExecutor(executor);
+		final BatchCalibrator.Result[] concurrent = run(batch);
+
+		for ( int i = 0; i < SESSIONS; i++ )
+			for ( int r = 0; r < 3; r++ )
+				for ( int c = 0; c < 4; c++ )
+					assertEquals(sequential[i].getProjection(r, c), concurrent[i].getProjection(r, c), 0.0);
+	}
+
+	@Test
+	public void statisticsCoverTheWholeBatch()
+	{
+		final List<CorrespondenceBuffer> sessions = sessions();
+		//a session too small to solve is reported, not dropped//
+		sessions.add(Fixtures.session(Fixtures.groundTruth(), 4, 160L, 1.0));
+		final BatchCalibrator batch = batch(sessions);
+		batch.setExecutor(executor);
+		final List<BatchCalibrator.Result> results = new ArrayList<BatchCalibrator.Result>();
+		final BatchCalibrator.Statistics statistics = batch.run(new BatchCalibrator.Sink() {
+			@Override
+			public void accept(BatchCalibrator.Result result) { results.add(result); }
+		});
+
+		long pairs = 0L;
+		for ( int i = 0; i < sessions.size(); i++ )
+			pairs += sessions.get(i).size();
+		assertEquals(SESSIONS + 1, results.size());
+		assertEquals(SESSIONS + 1, statistics.getSessions());
+		assertEquals(SESSIONS, statistics.getSolved());
+		assertEquals(pairs, statistics.getPairs());
+		assertTrue(statistics.getWallNanos() > 0L && statistics.getBusyNanos() > 0L);
+
+		for ( BatchCalibrator.Result result : results )
+			if ( result.getIndex() == SESSIONS )
+			{
+				assertFalse(result.isSolved());
+				assertTrue(Double.isNaN(result.getRms()));
+				assertEquals(0.0, result.getProjection(2, 3), 0.0);
+			}
+	}
+
+	@Test
+	public void addCopiesThePairs()
+	{
+		final List<CorrespondenceBuffer> sessions = sessions();
+		final BatchCalibrator batch = batch(sessions);
+		final BatchCalibrator.Result[] before = run(batch);
+
+		//the caller reuses its buffers for the next participant//
+		for ( CorrespondenceBuffer points : sessions )
+			points.clear();
+		final BatchCalibrator.Result[] after = run(batch);
+		for ( int i = 0; i < SESSIONS; i++ )
+			assertEquals(before[i].getProjection(0, 0), after[i].getProjection(0, 0), 0.0);
+	}
+
+	@Test
+	public void refinementLowersTheError()
+	{
+		final BatchCalibrator batch = batch(sessions());
+		final BatchCalibrator.Result[] dlt = run(batch);
+		batch.setRefine(true);
+		batch.setExecutor(executor);
+		final BatchCalibrator.Result[] refined = run(batch);
+		for ( int i = 0; i < SESSIONS; i++ )
+			assertTrue("session " + i, refined[i].getRms() <= dlt[i].getRms() + 1e-9);
+	}
+
+	@Test
+	public void failingSinkStopsTheBatch()
+	{
+		final BatchCalibrator batch = batch(sessions());
+		batch.setExecutor(executor);
+		try {
+			batch.run(new BatchCalibrator.Sink() {
+				@Override
+				public void accept(BatchCalibrator.Result result) { throw new IllegalStateException("sink"); }
+			});
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("sink", e.getMessage());
+		}
+	}
+}
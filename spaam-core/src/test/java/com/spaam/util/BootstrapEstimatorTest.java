@@ -0,0 +1,129 @@
+/**************************************************************************************
+ * Tests of the bootstrap error bars: the percentile intervals over the replicates,
+ * their agreement with the standard errors, their independence of the block split,
+ * and the rejection of replicates that cannot constrain the projection.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class BootstrapEstimatorTest {
+	private static BootstrapEstimator estimate(CorrespondenceBuffer points, int blocks, ExecutorService executor)
+	{
+		final BootstrapEstimator bootstrap = new BootstrapEstimator();
+		bootstrap.setReplicates(300);
+		bootstrap.setParallelism(blocks);
+		bootstrap.setExecutor(executor);
+		assertTrue(bootstrap.estimate(points));
+		return bootstrap;
+	}
+
+	@Test
+	public void intervalsArePercentilesOfTheReplicates()
+	{
+		final BootstrapEstimator bootstrap = estimate(Fixtures.session(Fixtures.groundTruth(), 40, 131L, 1.0), 1, null);
+		final int m = bootstrap.getValidReplicates();
+		assertTrue(m > 250);
+
+		final double[] p = new double[12];
+		for ( int k = 0; k < 12; k++ )
+		{
+			final double[] values = new double[m];
+			int j = 0;
+			for ( int r = 0; r < bootstrap.getReplicates(); r++ )
+				if ( bootstrap.isValid(r) )
+				{
+					bootstrap.getReplicate(r, p);
+					values[j++] = p[k];
+				}
+			Arrays.sort(values);
+
+			//2.5% and 97.5% by linear interpolation between the closest ranks//
+			final double low = 0.025 * ( m - 1 ), high = 0.975 * ( m - 1 );
+			final int i = (int) low, h = (int) high;
+			assertEquals(values[i] + ( low - i ) * ( values[i + 1] - values[i] ), bootstrap.getLower()[k], 1e-12 * Math.abs(values[i]));
+			assertEquals(values[h] + ( high - h ) * ( values[h + 1] - values[h] ), bootstrap.getUpper()[k], 1e-12 * Math.abs(values[h]));
+		}
+	}
+
+	@Test
+	public void intervalsMatchTheStandardErrors()
+	{
+		final double[] truth = Fixtures.unit(Fixtures.groundTruth());
+		final BootstrapEstimator bootstrap = estimate(Fixtures.session(truth, 60, 132L, 1.0), 1, null);
+		final double[] p = bootstrap.getProjection();
+		for ( int k = 0; k < 12; k++ )
+		{
+			final double width = bootstrap.getUpper()[k] - bootstrap.getLower()[k];
+			final double se = bootstrap.getStandardErrors()[k];
+
+			//near normal replicates: the 95% interval spans about 2 * 1.96 standard errors around the estimate//
+			assertTrue("element " + k, width > 0.7 * 3.92 * se && width < 1.3 * 3.92 * se);
+			assertTrue("element " + k, bootstrap.getLower()[k] < p[k] && p[k] < bootstrap.getUpper()[k]);
+			assertTrue("element " + k, Math.abs(p[k] - truth[k]) < 5.0 * se);
+		}
+
+		//the pixel interval shrinks with less noise//
+		final BootstrapEstimator quiet = estimate(Fixtures.session(truth, 60, 132L, 0.25), 1, null);
+		final double z = 1000.0;
+		assertTrue(quiet.pixelInterval(0.0, 0.0, z) < 0.5 * bootstrap.pixelInterval(0.0, 0.0, z));
+	}
+
+	@Test
+	public void sameResultForAnyBlockCount()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 30, 133L, 1.0);
+		final BootstrapEstimator serial = estimate(points, 1, null);
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for ( int blocks = 2; blocks <= 5; blocks++ )
+			{
+				final BootstrapEstimator parallel = estimate(points, blocks, executor);
+				assertEquals(serial.getValidReplicates(), parallel.getValidReplicates());
+				assertArrayEquals(serial.getLower(), parallel.getLower(), 0.0);
+				assertArrayEquals(serial.getUpper(), parallel.getUpper(), 0.0);
+				assertArrayEquals(serial.getStandardErrors(), parallel.getStandardErrors(), 0.0);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void replicatesNeedSixWeightedPairs()
+	{
+		//exact pairs, three of them switched off: a replicate drawing fewer than 6 of the 7 weighted//
+		//pairs is underdetermined and must be left out rather than give an arbitrary matrix//
+		final double[] truth = Fixtures.unit(Fixtures.groundTruth());
+		final CorrespondenceBuffer points = Fixtures.session(truth, 10, 134L, 0.0);
+		for ( int i = 0; i < 3; i++ )
+			points.setWeight(i, 0.0);
+		final BootstrapEstimator bootstrap = estimate(points, 1, null);
+		assertTrue(bootstrap.getValidReplicates() < bootstrap.getReplicates());
+
+		final double[] p = new double[12];
+		for ( int r = 0; r < bootstrap.getReplicates(); r++ )
+			if ( bootstrap.isValid(r) )
+			{
+				bootstrap.getReplicate(r, p);
+				Fixtures.assertProjection(truth, Fixtures.unit(p), 1e-6);
+			}
+	}
+
+	@Test
+	public void needsASolvableSession()
+	{
+		final BootstrapEstimator bootstrap = new BootstrapEstimator();
+		assertFalse(bootstrap.estimate(Fixtures.session(Fixtures.groundTruth(), 5, 135L, 0.0)));
+	}
+}
@@ -0,0 +1,45 @@
+/**************************************************************************************
+ * Tests of the .calib file: the 3x4 projection read back from the OpenGL matrix the
+ * application writes for its per eye screen.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CalibrationFileTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void projectionSurvivesTheFile() throws IOException
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final float[] gl = new float[16];
+		GLProjection.buildProjection(truth, 0, CalibrationFile.SCREEN_WIDTH, CalibrationFile.SCREEN_HEIGHT, 0, 0.1, 100.0, gl, 0);
+		final File calib = folder.newFile("Left.calib");
+		CalibrationFile.writeProjection(calib, gl);
+
+		final double[] p = new double[12];
+		assertTrue(CalibrationFile.readProjection3x4(calib, p));
+		//the file holds the float matrix of the application//
+		Fixtures.assertProjection(Fixtures.unit(truth), Fixtures.unit(p), 1e-5);
+	}
+
+	@Test
+	public void freshFileHoldsNoProjection() throws IOException
+	{
+		final File calib = folder.newFile("Right.calib");
+		final double[] p = new double[12];
+		assertFalse(CalibrationFile.readProjection3x4(calib, p));
+		assertTrue(p[0] == 0.0 && p[11] == 0.0);
+	}
+}
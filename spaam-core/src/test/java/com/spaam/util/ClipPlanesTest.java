@@ -0,0 +1,101 @@
+/**************************************************************************************
+ * Tests of the data driven clip planes: the depth range of the recorded points, its
+ * margin and cap, and the fallbacks.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ClipPlanesTest {
+	//Depth of a world point along the viewing direction of p//
+	private static double depth(double[] p, double x, double y, double z)
+	{
+		return ( p[8] * x + p[9] * y + p[10] * z + p[11] ) / Math.sqrt(p[8] * p[8] + p[9] * p[9] + p[10] * p[10]);
+	}
+
+	@Test
+	public void pointsAreEnclosedWithTheMargin()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final CorrespondenceBuffer points = Fixtures.session(truth, 50, 121L, 0.0);
+		double nearest = Double.POSITIVE_INFINITY, farthest = 0.0;
+		for ( int i = 0; i < points.size(); i++ )
+		{
+			final double d = depth(truth, points.worldX(i), points.worldY(i), points.worldZ(i));
+			nearest = Math.min(nearest, d);
+			farthest = Math.max(farthest, d);
+		}
+		assertTrue(nearest > 0.0);
+
+		final ClipPlanes planes = ClipPlanes.fromPoints(truth, points, 1.5, ClipPlanes.LEGACY);
+		assertEquals(nearest / 1.5, planes.near(), 1e-9 * nearest);
+		assertEquals(farthest * 1.5, planes.far(), 1e-9 * farthest);
+
+		//the scale of the projection does not change the depths//
+		final double[] scaled = truth.clone();
+		for ( int k = 0; k < 12; k++ )
+			scaled[k] *= 3.0;
+		final ClipPlanes same = ClipPlanes.fromPoints(scaled, points, 1.5, ClipPlanes.LEGACY);
+		assertEquals(planes.near(), same.near(), 1e-9 * nearest);
+		assertEquals(planes.far(), same.far(), 1e-9 * farthest);
+	}
+
+	@Test
+	public void boundsEncloseThePoints()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final CorrespondenceBuffer points = Fixtures.session(truth, 50, 122L, 0.0);
+		final double[] min = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+		final double[] max = { -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+		for ( int i = 0; i < points.size(); i++ )
+		{
+			final double[] w = { points.worldX(i), points.worldY(i), points.worldZ(i) };
+			for ( int k = 0; k < 3; k++ )
+			{
+				min[k] = Math.min(min[k], w[k]);
+				max[k] = Math.max(max[k], w[k]);
+			}
+		}
+		final ClipPlanes exact = ClipPlanes.fromPoints(truth, points, 1.0, ClipPlanes.LEGACY);
+		final ClipPlanes box = ClipPlanes.fromBounds(truth, min, max, 1.0, ClipPlanes.LEGACY);
+		assertTrue(box.near() <= exact.near() && box.far() >= exact.far());
+	}
+
+	@Test
+	public void rangeRatioIsCapped()
+	{
+		final ClipPlanes planes = ClipPlanes.fromDepthRange(1e-6, 10.0, 1.0, ClipPlanes.LEGACY);
+		assertEquals(10.0, planes.far(), 0.0);
+		assertEquals(10.0 / ClipPlanes.MAX_RANGE_RATIO, planes.near(), 1e-15);
+
+		//content partly behind the viewer keeps a positive near plane//
+		assertTrue(ClipPlanes.fromDepthRange(-5.0, 10.0, 1.5, ClipPlanes.LEGACY).near() > 0.0);
+	}
+
+	@Test
+	public void fallbackWithoutARange()
+	{
+		final ClipPlanes fallback = new ClipPlanes(0.5, 50.0);
+		assertSame(fallback, ClipPlanes.fromDepthRange(-2.0, -1.0, 1.5, fallback));
+		assertSame(fallback, ClipPlanes.fromDepthRange(1.0, Double.POSITIVE_INFINITY, 1.5, fallback));
+		assertSame(fallback, ClipPlanes.fromDepthRange(2.0, 2.0, 1.0, fallback));
+		assertSame(fallback, ClipPlanes.fromPoints(Fixtures.groundTruth(), new CorrespondenceBuffer(), 1.5, fallback));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void marginBelowOneIsRejected()
+	{
+		ClipPlanes.fromDepthRange(1.0, 2.0, 0.5, ClipPlanes.LEGACY);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void marginIsCheckedBeforeThePoints()
+	{
+		ClipPlanes.fromPoints(Fixtures.groundTruth(), new CorrespondenceBuffer(), Double.NaN, ClipPlanes.LEGACY);
+	}
+}
@@ -0,0 +1,60 @@
+/**************************************************************************************
+ * Tests of the minimum pair count and the point spread checks of the
+ * ConditioningMonitor, with pairs of weight 0 mixed into the sessions.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ConditioningMonitorTest {
+	@Test
+	public void zeroWeightPairsDoNotCountTowardsSix()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 20, 61L, 2.0);
+		final ConditioningMonitor monitor = new ConditioningMonitor();
+		for ( int i = 0; i < 5; i++ )
+			monitor.add(points.worldX(i), points.worldY(i), points.worldZ(i), points.screenX(i), points.screenY(i), 1.0);
+		for ( int i = 5; i < 20; i++ )
+			monitor.add(points.worldX(i), points.worldY(i), points.worldZ(i), points.screenX(i), points.screenY(i), 0.0);
+		assertEquals(20, monitor.size());
+		assertEquals(5, monitor.weightedSize());
+		assertFalse(monitor.isWellConditioned());
+
+		monitor.remove(points.worldX(19), points.worldY(19), points.worldZ(19), points.screenX(19), points.screenY(19), 0.0);
+		assertEquals(5, monitor.weightedSize());
+		monitor.add(points.worldX(19), points.worldY(19), points.worldZ(19), points.screenX(19), points.screenY(19), 1.0);
+		assertEquals(6, monitor.weightedSize());
+		assertTrue(monitor.isWellConditioned());
+	}
+
+	@Test
+	public void accumulatorNeedsSixWeightedPairs()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 12, 62L, 0.0);
+		final NormalEquationAccumulator accumulator = new NormalEquationAccumulator();
+		for ( int i = 0; i < 12; i++ )
+			accumulator.add(points.worldX(i), points.worldY(i), points.worldZ(i), points.screenX(i), points.screenY(i),
+					i < 5 ? 1.0 : 0.0);
+		final double[] p = new double[12];
+		assertFalse(accumulator.solve(p));
+
+		accumulator.add(points.worldX(5), points.worldY(5), points.worldZ(5), points.screenX(5), points.screenY(5));
+		assertTrue(accumulator.solve(p));
+	}
+
+	@Test
+	public void coplanarWorldPointsAreRejected()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 20, 63L, 0.0);
+		final ConditioningMonitor monitor = new ConditioningMonitor();
+		for ( int i = 0; i < points.size(); i++ )
+			monitor.add(points.worldX(i), points.worldY(i), 500.0, points.screenX(i), points.screenY(i), 1.0);
+		assertTrue(Double.isInfinite(monitor.worldCondition()) || monitor.worldCondition() > monitor.getMaxCondition());
+		assertFalse(monitor.isWellConditioned());
+	}
+}
@@ -0,0 +1,119 @@
+/**************************************************************************************
+ * Tests of the first order covariance of the projection: the predicted pixel error
+ * against the spread of the DLT result over many noisy sessions of the same truth.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+public class CovarianceTest {
+	private static final int SESSIONS = 400;
+	private static final int PAIRS = 30;
+
+	//x, y, z of count noise free points of the truth, packed as predictPixelSigma( ) takes them//
+	private static double[] checkPoints(double[] truth, int count, long seed)
+	{
+		final CorrespondenceBuffer check = Fixtures.session(truth, count, seed, 0.0);
+		final double[] points = new double[3 * count];
+		for ( int i = 0; i < count; i++ )
+		{
+			points[3 * i] = check.worldX(i);
+			points[3 * i + 1] = check.worldY(i);
+			points[3 * i + 2] = check.worldZ(i);
+		}
+		return points;
+	}
+
+	//Squared pixel distance between the projections of point i under p and q//
+	private static double squaredDistance(double[] p, double[] q, double[] points, int i)
+	{
+		final double x = points[3 * i], y = points[3 * i + 1], z = points[3 * i + 2];
+		final double wp = p[8] * x + p[9] * y + p[10] * z + p[11];
+		final double wq = q[8] * x + q[9] * y + q[10] * z + q[11];
+		final double du = ( p[0] * x + p[1] * y + p[2] * z + p[3] ) / wp - ( q[0] * x + q[1] * y + q[2] * z + q[3] ) / wq;
+		final double dv = ( p[4] * x + p[5] * y + p[6] * z + p[7] ) / wp - ( q[4] * x + q[5] * y + q[6] * z + q[7] ) / wq;
+		return du * du + dv * dv;
+	}
+
+	//Mean predicted and empirical squared pixel error over the check points, from SESSIONS sessions//
+	private static double[] meanSquaredErrors(double pixelNoise)
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final int count = 5;
+		final double[] points = checkPoints(truth, count, 121L);
+		final double[] sigma = new double[count];
+		double predicted = 0.0, empirical = 0.0;
+		for ( int s = 0; s < SESSIONS; s++ )
+		{
+			final SPAAM_SVD svd = Fixtures.solver(Fixtures.session(truth, PAIRS, 1000L + s, pixelNoise));
+			assertTrue(svd.projectionDLTIncremental());
+			assertTrue(svd.estimateCovariance());
+			svd.predictPixelSigma(points, 0, count, sigma);
+			final double[] p = Fixtures.projection(svd);
+			for ( int i = 0; i < count; i++ )
+			{
+				predicted += sigma[i] * sigma[i];
+				empirical += squaredDistance(p, truth, points, i);
+			}
+		}
+		return new double[] { predicted / ( SESSIONS * count ), empirical / ( SESSIONS * count ) };
+	}
+
+	@Test
+	public void predictedErrorMatchesTheSpreadOverSessions()
+	{
+		final double[] errors = meanSquaredErrors(1.0);
+		final double ratio = Math.sqrt(errors[0] / errors[1]);
+		assertTrue("predicted " + Math.sqrt(errors[0]) + " empirical " + Math.sqrt(errors[1]), ratio > 0.8 && ratio < 1.25);
+	}
+
+	@Test
+	public void predictedErrorFollowsTheNoise()
+	{
+		final double[] one = meanSquaredErrors(1.0);
+		final double[] two = meanSquaredErrors(2.0);
+		assertEquals(2.0, Math.sqrt(two[0] / one[0]), 0.1);
+	}
+
+	@Test
+	public void sigmaAgreesWithThePixelCovarianceAcrossBatches()
+	{
+		//more points than one batch of predictPixelSigma( )//
+		final double[] truth = Fixtures.groundTruth();
+		final int count = 150;
+		final double[] points = checkPoints(truth, count, 122L);
+		final SPAAM_SVD svd = Fixtures.solver(Fixtures.session(truth, PAIRS, 123L, 1.0));
+		assertTrue(svd.projectionDLTIncremental());
+		assertTrue(svd.estimateCovariance());
+
+		final double[] sigma = new double[count];
+		final double[] covariance = new double[3 * count];
+		svd.predictPixelSigma(points, 0, count, sigma);
+		svd.predictPixelCovariance(points, 0, count, covariance);
+		for ( int i = 0; i < count; i++ )
+		{
+			assertTrue(covariance[3 * i] > 0.0 && covariance[3 * i + 2] > 0.0);
+			assertEquals("point " + i, Math.sqrt(covariance[3 * i] + covariance[3 * i + 2]), sigma[i], 1e-12 * sigma[i]);
+		}
+
+		//an offset into the packed points shifts the result by as many points//
+		final double[] shifted = new double[count - 70];
+		svd.predictPixelSigma(points, 3 * 70, count - 70, shifted);
+		assertEquals(sigma[70], shifted[0], 0.0);
+		assertEquals(sigma[count - 1], shifted[count - 71], 0.0);
+	}
+
+	@Test
+	public void needsAWellConditionedSolve()
+	{
+		final SPAAM_SVD svd = Fixtures.solver(Fixtures.session(Fixtures.groundTruth(), 5, 124L, 1.0));
+		assertFalse(svd.estimateCovariance());
+	}
+}
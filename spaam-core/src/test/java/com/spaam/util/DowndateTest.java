@@ -0,0 +1,77 @@
+/**************************************************************************************
+ * Tests of removing and undoing correspondence pairs by downdating the running normal
+ * equations, against solvers which never saw the removed pairs.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+public class DowndateTest {
+	private static CorrespondenceBuffer without(CorrespondenceBuffer points, int index)
+	{
+		final CorrespondenceBuffer copy = new CorrespondenceBuffer();
+		copy.addAll(points);
+		copy.remove(index);
+		return copy;
+	}
+
+	@Test
+	public void removeMatchesSolverWithoutThePair()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 20, 41L, 2.0);
+		final SPAAM_SVD downdated = Fixtures.solver(points);
+		assertTrue(downdated.removeCorrespondence(7));
+
+		final SPAAM_SVD fresh = Fixtures.solver(without(points, 7));
+		assertTrue(fresh.projectionDLTIncremental());
+		assertEquals(19, downdated.corr_points.size());
+		Fixtures.assertProjection(Fixtures.projection(fresh), Fixtures.projection(downdated), 1e-9);
+	}
+
+	@Test
+	public void undoMatchesSolverWithoutTheLastPairs()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 20, 42L, 2.0);
+		final SPAAM_SVD downdated = Fixtures.solver(points);
+		assertTrue(downdated.undoLastCorrespondences(3));
+
+		final CorrespondenceBuffer first = new CorrespondenceBuffer();
+		first.addAll(points);
+		first.removeRange(17, 20);
+		final SPAAM_SVD fresh = Fixtures.solver(first);
+		assertTrue(fresh.projectionDLTIncremental());
+		Fixtures.assertProjection(Fixtures.projection(fresh), Fixtures.projection(downdated), 1e-9);
+	}
+
+	@Test
+	public void removingAnAddedPairRestoresTheSolution()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 15, 43L, 2.0);
+		final SPAAM_SVD svd = Fixtures.solver(points);
+		assertTrue(svd.projectionDLTIncremental());
+		final double[] before = Fixtures.projection(svd);
+
+		//a far off (bad) tap, then its undo//
+		svd.addCorrespondence(points.worldX(0) + 40.0, points.worldY(0), points.worldZ(0), 900.0, 20.0, 3.0);
+		assertTrue(svd.projectionDLTIncremental());
+		assertTrue(svd.undoLastCorrespondence());
+		Fixtures.assertProjection(before, Fixtures.projection(svd), 1e-9);
+	}
+
+	@Test
+	public void undoBelowSixPairsLeavesTheProjection()
+	{
+		final SPAAM_SVD svd = Fixtures.solver(Fixtures.session(Fixtures.groundTruth(), 6, 44L, 1.0));
+		assertTrue(svd.projectionDLTIncremental());
+		final double[] before = Fixtures.projection(svd);
+		assertFalse(svd.undoLastCorrespondence());
+		Fixtures.assertProjection(before, Fixtures.projection(svd), 0.0);
+	}
+}
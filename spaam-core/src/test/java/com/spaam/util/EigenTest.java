@@ -0,0 +1,116 @@
+/**************************************************************************************
+ * Tests of the eigen solves of DLTMath on the normalized normal matrix of a session:
+ * the Jacobi decomposition against its reconstruction and the inverse iteration
+ * against the Jacobi null vector.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class EigenTest {
+	//Normalized A^T A of a session, as the incremental solve builds it//
+	private static double[] normalGram(CorrespondenceBuffer points)
+	{
+		final PointStatistics statistics = new PointStatistics();
+		for ( int i = 0; i < points.size(); i++ )
+			statistics.add(points.worldX(i), points.worldY(i), points.worldZ(i), points.screenX(i), points.screenY(i), 1.0);
+
+		final double[] rows = new double[24];
+		final double[] gram = new double[144];
+		for ( int i = 0; i < points.size(); i++ )
+		{
+			DLTMath.fillDesignRows(rows, 0,
+					( points.worldX(i) - statistics.worldMean(0) ) / statistics.worldStdDev(0),
+					( points.worldY(i) - statistics.worldMean(1) ) / statistics.worldStdDev(1),
+					( points.worldZ(i) - statistics.worldMean(2) ) / statistics.worldStdDev(2),
+					( points.screenX(i) - statistics.screenMean(0) ) / statistics.screenStdDev(0),
+					( points.screenY(i) - statistics.screenMean(1) ) / statistics.screenStdDev(1));
+			for ( int r = 0; r < 12; r++ )
+				for ( int c = 0; c < 12; c++ )
+					gram[r * 12 + c] += rows[r] * rows[c] + rows[12 + r] * rows[12 + c];
+		}
+		return gram;
+	}
+
+	@Test
+	public void jacobiReconstructsTheMatrix()
+	{
+		final double[] gram = normalGram(Fixtures.session(Fixtures.groundTruth(), 30, 71L, 2.0));
+		final double[] v = new double[144], d = new double[12];
+		DLTMath.symmetricEigen(gram.clone(), 12, v, d);
+
+		double largest = 0.0;
+		for ( int k = 0; k < 12; k++ )
+			largest = Math.max(largest, Math.abs(d[k]));
+		for ( int r = 0; r < 12; r++ )
+			for ( int c = 0; c < 12; c++ )
+			{
+				//V D V^T//
+				double sum = 0.0;
+				for ( int k = 0; k < 12; k++ )
+					sum += v[r * 12 + k] * d[k] * v[c * 12 + k];
+				assertEquals(gram[r * 12 + c], sum, 1e-12 * largest);
+
+				//V^T V = I//
+				double dot = 0.0;
+				for ( int k = 0; k < 12; k++ )
+					dot += v[k * 12 + r] * v[k * 12 + c];
+				assertEquals(r == c ? 1.0 : 0.0, dot, 1e-12);
+			}
+	}
+
+	@Test
+	public void jacobiSolvesSmallMatrices()
+	{
+		//3x3 scatter as the ConditioningMonitor decomposes it, eigenvalues 1, 3 and 4//
+		final double[] a = { 2.0, 1.0, 0.0, 1.0, 2.0, 0.0, 0.0, 0.0, 4.0 };
+		final double[] v = new double[9], d = new double[3];
+		DLTMath.symmetricEigen(a, 3, v, d);
+		final double[] sorted = d.clone();
+		Arrays.sort(sorted);
+		assertArrayEquals(new double[] { 1.0, 3.0, 4.0 }, sorted, 1e-14);
+	}
+
+	@Test
+	public void inverseIterationMatchesJacobiNullVector()
+	{
+		final double[] gram = normalGram(Fixtures.session(Fixtures.groundTruth(), 30, 72L, 2.0));
+		final double[] v = new double[144], d = new double[12];
+		DLTMath.symmetricEigen(gram.clone(), 12, v, d);
+		int smallest = 0;
+		for ( int k = 1; k < 12; k++ )
+			if ( d[k] < d[smallest] )
+				smallest = k;
+
+		final double[] factor = new double[144], y = new double[12], nullVector = new double[12];
+		final double eigenValue = DLTMath.nullVector12(gram, factor, y, nullVector);
+		assertEquals(d[smallest], eigenValue, 1e-9 * Math.max(1.0, Math.abs(d[smallest])));
+
+		final double sign = nullVector[0] * v[smallest] < 0.0 ? -1.0 : 1.0;
+		for ( int k = 0; k < 12; k++ )
+			assertEquals(v[k * 12 + smallest], sign * nullVector[k], 1e-8);
+	}
+
+	@Test
+	public void repeatedSolvesAreBitIdentical()
+	{
+		final double[] gram = normalGram(Fixtures.session(Fixtures.groundTruth(), 30, 73L, 2.0));
+		final double[] v1 = new double[144], d1 = new double[12], v2 = new double[144], d2 = new double[12];
+		DLTMath.symmetricEigen(gram.clone(), 12, v1, d1);
+		DLTMath.symmetricEigen(gram.clone(), 12, v2, d2);
+		assertArrayEquals(v1, v2, 0.0);
+		assertArrayEquals(d1, d2, 0.0);
+
+		final double[] factor = new double[144], y = new double[12];
+		final double[] first = new double[12], second = new double[12];
+		DLTMath.nullVector12(gram, factor, y, first);
+		DLTMath.nullVector12(gram, factor, y, second);
+		assertArrayEquals(first, second, 0.0);
+	}
+}
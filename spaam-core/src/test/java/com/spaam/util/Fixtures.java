@@ -0,0 +1,91 @@
+/**************************************************************************************
+ * This file contains the shared fixtures of the spaam-core tests: a ground truth
+ * projection like the one of the headset, sessions drawn from it with the
+ * SyntheticCalibration generator and comparisons of 3x4 projections.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertEquals;
+
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+final class Fixtures {
+	private Fixtures()
+	{	}
+
+	//Ground truth 3x4 projection (row major), rotated 0.3 rad about the vertical axis//
+	static double[] groundTruth()
+	{
+		return groundTruth(1100.0, 1050.0, 470.0, 280.0, 0.3, new double[] { 10.0, -20.0, 30.0 });
+	}
+
+	//P = K [R | t] with the rotation angle about the vertical axis//
+	static double[] groundTruth(double fx, double fy, double cx, double cy, double angle, double[] translation)
+	{
+		final double c = Math.cos(angle), s = Math.sin(angle);
+		final double[] rotation = { c, 0.0, s, 0.0, 1.0, 0.0, -s, 0.0, c };
+		final double[] p = SyntheticCalibration.fromIntrinsics(fx, fy, cx, cy, rotation, translation);
+		DLTMath.normalizeViewDirection(p, 0.0, 0.0, 1000.0);
+		return p;
+	}
+
+	//count pairs of the ground truth with the given alignment noise (pixels)//
+	static CorrespondenceBuffer session(double[] truth, int count, long seed, double pixelNoise)
+	{
+		final SyntheticCalibration generator = new SyntheticCalibration(truth, seed);
+		generator.setPixelNoise(pixelNoise);
+		final CorrespondenceBuffer points = new CorrespondenceBuffer();
+		generator.generate(points, count, null);
+		return points;
+	}
+
+	//A solver holding the pairs of a session, recorded with addCorrespondence( )//
+	static SPAAM_SVD solver(CorrespondenceBuffer points)
+	{
+		final SPAAM_SVD svd = new SPAAM_SVD();
+		for ( int i = 0; i < points.size(); i++ )
+			svd.addCorrespondence(points.worldX(i), points.worldY(i), points.worldZ(i), points.screenX(i), points.screenY(i),
+					points.weight(i));
+		return svd;
+	}
+
+	static double[] projection(SPAAM_SVD svd)
+	{
+		final double[] p = new double[12];
+		svd.getProjection(p);
+		return p;
+	}
+
+	//Scales p to a unit viewing direction, keeping its sign//
+	static double[] unit(double[] p)
+	{
+		final double[] q = p.clone();
+		final double len = Math.sqrt(q[8] * q[8] + q[9] * q[9] + q[10] * q[10]);
+		for ( int i = 0; i < 12; i++ )
+			q[i] /= len;
+		return q;
+	}
+
+	//Asserts that both projections agree element by element, relative to the magnitude of the element//
+	static void assertProjection(double[] expected, double[] actual, double relative)
+	{
+		for ( int i = 0; i < 12; i++ )
+			assertEquals("element " + i, expected[i], actual[i], relative * Math.max(1.0, Math.abs(expected[i])));
+	}
+
+	//Root mean square reprojection error (pixels) of p over the pairs//
+	static double reprojectionRms(double[] p, CorrespondenceBuffer points)
+	{
+		double sum = 0.0;
+		for ( int i = 0; i < points.size(); i++ )
+		{
+			final double x = points.worldX(i), y = points.worldY(i), z = points.worldZ(i);
+			final double w = p[8] * x + p[9] * y + p[10] * z + p[11];
+			final double du = ( p[0] * x + p[1] * y + p[2] * z + p[3] ) / w - points.screenX(i);
+			final double dv = ( p[4] * x + p[5] * y + p[6] * z + p[7] ) / w - points.screenY(i);
+			sum += du * du + dv * dv;
+		}
+		return Math.sqrt(sum / points.size());
+	}
+}
@@ -0,0 +1,101 @@
+/**************************************************************************************
+ * Tests of the fused OpenGL projection builder against the orthographic matrix times
+ * the expanded 3x4 projection it replaces, of its three destinations and of the depth
+ * range it maps to the clip volume.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.FloatBuffer;
+
+import org.junit.Test;
+
+public class GLProjectionTest {
+	//The viewport of the application (left, right, top, bottom)//
+	private static final int LEFT = 0, RIGHT = 960, TOP = 540, BOTTOM = 0;
+
+	@Test
+	public void matchesOrthoTimesExpandedProjection()
+	{
+		//create4x4Projection takes the norm of the first row where SPAAM_SVD (and the fused builder)//
+		//take that of the third, so the first row is scaled to the same norm for the comparison//
+		final double[] p = Fixtures.unit(Fixtures.groundTruth());
+		final double row0 = Math.sqrt(p[0] * p[0] + p[1] * p[1] + p[2] * p[2]);
+		for ( int c = 0; c < 4; c++ )
+			p[c] /= row0;
+
+		final float near = 0.1f, far = 100.0f;
+		final float[] p3x4 = new float[12];
+		for ( int k = 0; k < 12; k++ )
+			p3x4[k] = (float) p[k];
+		final float[] ortho = GLProjection.createOrthoMatrix(new float[16], LEFT, RIGHT, TOP, BOTTOM, near, far);
+		final float[] expanded = GLProjection.create4x4Projection(p3x4, new float[16], near, far);
+
+		final float[] fused = new float[16];
+		GLProjection.buildProjection(p, LEFT, RIGHT, TOP, BOTTOM, near, far, fused, 0);
+		for ( int r = 0; r < 4; r++ )
+			for ( int c = 0; c < 4; c++ )
+			{
+				//both row major, the fused result is column major//
+				double expected = 0.0, scale = 0.0;
+				for ( int k = 0; k < 4; k++ )
+				{
+					expected += (double) ortho[r * 4 + k] * expanded[k * 4 + c];
+					scale += Math.abs((double) ortho[r * 4 + k] * expanded[k * 4 + c]);
+				}
+				assertEquals("row " + r + " column " + c, expected, fused[c * 4 + r], 1e-6 * Math.max(scale, 1e-3));
+			}
+	}
+
+	@Test
+	public void destinationsAgree()
+	{
+		final double[] p = Fixtures.groundTruth();
+		final double[] doubles = new double[20];
+		GLProjection.buildProjection(p, LEFT, RIGHT, TOP, BOTTOM, 0.25, 40.0, doubles, 4);
+		final float[] floats = new float[19];
+		GLProjection.buildProjection(p, LEFT, RIGHT, TOP, BOTTOM, 0.25, 40.0, floats, 3);
+		final FloatBuffer buffer = FloatBuffer.allocate(24);
+		buffer.position(5);
+		GLProjection.buildProjection(p, LEFT, RIGHT, TOP, BOTTOM, 0.25, 40.0, buffer);
+
+		assertEquals(5, buffer.position());
+		for ( int k = 0; k < 16; k++ )
+		{
+			assertEquals((float) doubles[4 + k], floats[3 + k], 0.0f);
+			assertEquals((float) doubles[4 + k], buffer.get(5 + k), 0.0f);
+		}
+		assertEquals(0.0, doubles[3], 0.0);
+		assertEquals(0.0f, floats[2], 0.0f);
+		assertEquals(0.0f, buffer.get(4), 0.0f);
+	}
+
+	@Test
+	public void clipPlanesMapToTheClipVolume()
+	{
+		final double[] p = Fixtures.groundTruth();
+		final double near = 0.5, far = 3000.0;
+		final double[] gl = new double[16];
+		GLProjection.buildProjection(p, LEFT, RIGHT, TOP, BOTTOM, near, far, gl, 0);
+
+		final ProjectionDecomposition eye = new ProjectionDecomposition();
+		assertTrue(eye.decompose(p));
+		final double len = Math.sqrt(p[8] * p[8] + p[9] * p[9] + p[10] * p[10]);
+		for ( double depth : new double[] { near, far } )
+		{
+			//a point straight ahead of the eye at this depth//
+			final double[] x = { eye.positionX() + depth * p[8] / len, eye.positionY() + depth * p[9] / len,
+					eye.positionZ() + depth * p[10] / len, 1.0 };
+			double z = 0.0, w = 0.0;
+			for ( int k = 0; k < 4; k++ )
+			{
+				z += gl[k * 4 + 2] * x[k];
+				w += gl[k * 4 + 3] * x[k];
+			}
+			assertEquals(depth == near ? -1.0 : 1.0, z / w, 1e-9);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/**************************************************************************************
+ * Tests of the incremental solve from the running normal equations against the Jama
+ * solve and against the ground truth of synthetic sessions.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+public class IncrementalDltTest {
+	@Test
+	public void recoversGroundTruthFromExactPairs()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final SPAAM_SVD svd = Fixtures.solver(Fixtures.session(truth, 20, 11L, 0.0));
+		assertTrue(svd.projectionDLTIncremental());
+		Fixtures.assertProjection(truth, Fixtures.projection(svd), 1e-6);
+	}
+
+	@Test
+	public void matchesJamaSolveAfterEveryPair()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 30, 12L, 2.0);
+		final SPAAM_SVD incremental = new SPAAM_SVD();
+		for ( int i = 0; i < points.size(); i++ )
+		{
+			incremental.addCorrespondence(points.worldX(i), points.worldY(i), points.worldZ(i), points.screenX(i), points.screenY(i));
+			if ( i < 9 )
+				continue;
+			final SPAAM_SVD jama = new SPAAM_SVD();
+			jama.corr_points.copyFrom(incremental.corr_points);
+			assertTrue(jama.projectionDLTImpl());
+			assertTrue(incremental.projectionDLTIncremental());
+			Fixtures.assertProjection(Fixtures.projection(jama), Fixtures.projection(incremental), 1e-7);
+		}
+	}
+
+	@Test
+	public void matchesJamaSolveWithWeights()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 40, 13L, 2.0);
+		for ( int i = 0; i < points.size(); i++ )
+			points.setWeight(i, 0.25 + ( i % 4 ) * 0.5);
+		final SPAAM_SVD jama = Fixtures.solver(points);
+		final SPAAM_SVD incremental = Fixtures.solver(points);
+		assertTrue(jama.projectionDLTImpl());
+		assertTrue(incremental.projectionDLTIncremental());
+		Fixtures.assertProjection(Fixtures.projection(jama), Fixtures.projection(incremental), 1e-7);
+	}
+
+	@Test
+	public void rebuildsAfterDirectBufferChanges()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 25, 14L, 1.0);
+		final SPAAM_SVD folded = Fixtures.solver(points);
+		final SPAAM_SVD rebuilt = new SPAAM_SVD();
+		rebuilt.corr_points.copyFrom(points);
+		assertTrue(folded.projectionDLTIncremental());
+		assertTrue(rebuilt.projectionDLTIncremental());
+		Fixtures.assertProjection(Fixtures.projection(folded), Fixtures.projection(rebuilt), 1e-12);
+	}
+
+	@Test
+	public void needsSixPairs()
+	{
+		final SPAAM_SVD svd = Fixtures.solver(Fixtures.session(Fixtures.groundTruth(), 5, 15L, 0.0));
+		assertFalse(svd.projectionDLTIncremental());
+	}
+}
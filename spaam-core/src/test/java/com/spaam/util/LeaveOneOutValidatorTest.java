@@ -0,0 +1,135 @@
+/**************************************************************************************
+ * Tests of the Woodbury leave-one-out validation against brute force refits without
+ * each pair.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+public class LeaveOneOutValidatorTest {
+	/*************************************************************
+	 * Leave-one-out error of pair out, by a full eigen decomposition of the normal
+	 * matrix of all other pairs under the normalization of the whole session (the
+	 * normalization the validator keeps for every left out solve).
+	 ************************************************************/
+	private static double bruteForceError(CorrespondenceBuffer points, int out)
+	{
+		final PointStatistics statistics = new PointStatistics();
+		for ( int i = 0; i < points.size(); i++ )
+			statistics.add(points.worldX(i), points.worldY(i), points.worldZ(i), points.screenX(i), points.screenY(i), points.weight(i));
+		final double[] worldShift = new double[3], worldScale = new double[3];
+		final double[] screenShift = new double[2], screenScale = new double[2];
+		statistics.normalization(worldShift, worldScale, screenShift, screenScale);
+
+		final double[] rows = new double[24];
+		final double[] gram = new double[144];
+		for ( int i = 0; i < points.size(); i++ )
+		{
+			if ( i == out )
+				continue;
+			DLTMath.fillDesignRows(rows, 0,
+					( points.worldX(i) - worldShift[0] ) / worldScale[0],
+					( points.worldY(i) - worldShift[1] ) / worldScale[1],
+					( points.worldZ(i) - worldShift[2] ) / worldScale[2],
+					( points.screenX(i) - screenShift[0] ) / screenScale[0],
+					( points.screenY(i) - screenShift[1] ) / screenScale[1]);
+			DLTMath.scaleDesignRows(rows, 0, Math.sqrt(points.weight(i)));
+			for ( int r = 0; r < 12; r++ )
+				for ( int c = 0; c < 12; c++ )
+					gram[r * 12 + c] += rows[r] * rows[c] + rows[12 + r] * rows[12 + c];
+		}
+		final double[] v = new double[144], d = new double[12];
+		DLTMath.symmetricEigen(gram, 12, v, d);
+		int smallest = 0;
+		for ( int k = 1; k < 12; k++ )
+			if ( d[k] < d[smallest] )
+				smallest = k;
+		final double[] nullVector = new double[12], p = new double[12];
+		for ( int k = 0; k < 12; k++ )
+			nullVector[k] = v[k * 12 + smallest];
+		DLTMath.denormalize(nullVector, worldShift, worldScale, screenShift, screenScale, p);
+		DLTMath.normalizeViewDirection(p, worldShift[0], worldShift[1], worldShift[2]);
+		return Math.sqrt(RansacEstimator.reprojectionError2(p, points.worldX(out), points.worldY(out), points.worldZ(out),
+				points.screenX(out), points.screenY(out)));
+	}
+
+	@Test
+	public void matchesBruteForceRefits()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 25, 51L, 2.0);
+		final LeaveOneOutValidator validator = new LeaveOneOutValidator();
+		assertTrue(validator.validate(points));
+		assertEquals(25, validator.size());
+		for ( int i = 0; i < points.size(); i++ )
+			assertEquals("pair " + i, bruteForceError(points, i), validator.getErrors()[i], 1e-6);
+	}
+
+	@Test
+	public void matchesBruteForceRefitsWithWeights()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 25, 52L, 2.0);
+		for ( int i = 0; i < points.size(); i++ )
+			points.setWeight(i, 0.2 + ( i % 5 ) * 0.4);
+		final LeaveOneOutValidator validator = new LeaveOneOutValidator();
+		assertTrue(validator.validate(points));
+		for ( int i = 0; i < points.size(); i++ )
+			assertEquals("pair " + i, bruteForceError(points, i), validator.getErrors()[i], 1e-6);
+	}
+
+	@Test
+	public void findsTheMisalignedTap()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 25, 53L, 1.0);
+		final CorrespondenceBuffer bad = new CorrespondenceBuffer();
+		bad.addAll(points);
+		bad.remove(12);
+		bad.add(points.worldX(12), points.worldY(12), points.worldZ(12), points.screenX(12) + 60.0, points.screenY(12) - 40.0);
+		final LeaveOneOutValidator validator = new LeaveOneOutValidator();
+		assertTrue(validator.validate(bad));
+		assertEquals(24, validator.getWorstIndex());
+		assertTrue(validator.getLooRms() > validator.getFitRms());
+	}
+
+	@Test
+	public void fitErrorMatchesTheFullSolve()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 25, 54L, 2.0);
+		final SPAAM_SVD svd = Fixtures.solver(points);
+		assertTrue(svd.projectionDLTPrimitive());
+		final LeaveOneOutValidator validator = new LeaveOneOutValidator();
+		assertTrue(validator.validate(points));
+		assertEquals(Fixtures.reprojectionRms(Fixtures.projection(svd), points), validator.getFitRms(), 1e-6);
+	}
+
+	@Test
+	public void normalizationHoldsFarFromTheOrigin()
+	{
+		//a large world offset, where the power sums E[x^2] - E[x]^2 cancel completely//
+		final double offset = 1e12;
+		final double[] truth = Fixtures.groundTruth();
+		final CorrespondenceBuffer near = Fixtures.session(truth, 25, 56L, 2.0);
+		final CorrespondenceBuffer far = new CorrespondenceBuffer();
+		for ( int i = 0; i < near.size(); i++ )
+			far.add(near.worldX(i) + offset, near.worldY(i) + offset, near.worldZ(i), near.screenX(i), near.screenY(i));
+
+		final LeaveOneOutValidator nearValidator = new LeaveOneOutValidator();
+		final LeaveOneOutValidator farValidator = new LeaveOneOutValidator();
+		assertTrue(nearValidator.validate(near));
+		assertTrue(farValidator.validate(far));
+		assertEquals(nearValidator.getLooRms(), farValidator.getLooRms(), 1e-3);
+		assertEquals(nearValidator.getFitRms(), farValidator.getFitRms(), 1e-3);
+	}
+
+	@Test
+	public void needsSevenPairs()
+	{
+		assertFalse(new LeaveOneOutValidator().validate(Fixtures.session(Fixtures.groundTruth(), 6, 55L, 1.0)));
+	}
+}
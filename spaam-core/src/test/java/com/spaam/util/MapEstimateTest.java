@@ -0,0 +1,134 @@
+/**************************************************************************************
+ * Tests of the MAP estimate under a projection prior: better than the prior after a
+ * few taps and converging to the plain DLT result as the taps accumulate.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+public class MapEstimateTest {
+	//Standard deviation (pixels) of a tap, as in the application//
+	private static final double TAP_SIGMA = 2.0;
+
+	//The stored calibration of an earlier session (slightly different fit and pose than the truth)//
+	private static ProjectionPrior earlierCalibration()
+	{
+		final double[] earlier = Fixtures.groundTruth(1130.0, 1030.0, 460.0, 290.0, 0.32, new double[] { 14.0, -16.0, 26.0 });
+		return ProjectionPrior.fromProjection(earlier, 0.05);
+	}
+
+	private static SPAAM_SVD map(CorrespondenceBuffer points, ProjectionPrior prior)
+	{
+		final SPAAM_SVD svd = Fixtures.solver(points);
+		final ReprojectionRefiner refiner = new ReprojectionRefiner();
+		refiner.setPrior(prior, TAP_SIGMA);
+		assertTrue(svd.projectionMAP(refiner));
+		return svd;
+	}
+
+	@Test
+	public void fewTapsImproveOnThePrior()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final ProjectionPrior prior = earlierCalibration();
+		final double[] mean = new double[12];
+		prior.getMean(mean);
+		final CorrespondenceBuffer check = Fixtures.session(truth, 200, 111L, 0.0);
+		final double priorRms = Fixtures.reprojectionRms(mean, check);
+
+		for ( int taps = 2; taps <= 3; taps++ )
+		{
+			final SPAAM_SVD svd = map(Fixtures.session(truth, taps, 112L, 1.0), prior);
+			assertFalse(svd.isWellConditioned());
+			final double rms = Fixtures.reprojectionRms(Fixtures.projection(svd), check);
+			assertTrue("MAP " + rms + " prior " + priorRms + " after " + taps + " taps", rms < priorRms);
+		}
+	}
+
+	//Reprojection error (pixels) of the MAP and of the DLT result over check, from the first count pairs of points//
+	private static double[] errors(CorrespondenceBuffer points, int count, CorrespondenceBuffer check)
+	{
+		final CorrespondenceBuffer taps = new CorrespondenceBuffer();
+		for ( int i = 0; i < count; i++ )
+			taps.add(points.worldX(i), points.worldY(i), points.worldZ(i), points.screenX(i), points.screenY(i));
+		final SPAAM_SVD svd = map(taps, earlierCalibration());
+		final SPAAM_SVD dlt = Fixtures.solver(taps);
+		assertTrue(dlt.projectionDLTPrimitive());
+		return new double[] { Fixtures.reprojectionRms(Fixtures.projection(svd), check),
+				Fixtures.reprojectionRms(Fixtures.projection(dlt), check) };
+	}
+
+	@Test
+	public void convergesToTheDltResult()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final CorrespondenceBuffer points = Fixtures.session(truth, 100, 113L, 1.0);
+		final CorrespondenceBuffer check = Fixtures.session(truth, 200, 114L, 0.0);
+
+		//the full grid of 25 crosses is close to the truth even though the prior is off by 30 pixels//
+		final double[] grid = errors(points, 25, check);
+		assertTrue("MAP " + grid[0], grid[0] < 2.5);
+
+		//and the taps keep taking over from the prior//
+		final double[] many = errors(points, 100, check);
+		assertTrue("MAP " + many[0] + " DLT " + many[1], many[0] - many[1] < 0.5 * ( grid[0] - grid[1] ));
+		assertTrue(many[0] < grid[0]);
+	}
+
+	@Test
+	public void failedSolveKeepsTheProjection()
+	{
+		//a pair behind the viewer makes the refinement fail from the DLT start and from the prior mean//
+		final double[] truth = Fixtures.groundTruth();
+		final CorrespondenceBuffer points = Fixtures.session(truth, 12, 116L, 1.0);
+		final ProjectionDecomposition eye = new ProjectionDecomposition();
+		assertTrue(eye.decompose(truth));
+		points.add(eye.positionX() - 300.0 * truth[8], eye.positionY() - 300.0 * truth[9], eye.positionZ() - 300.0 * truth[10],
+				470.0, 280.0);
+
+		final SPAAM_SVD svd = Fixtures.solver(points);
+		assertTrue(svd.projectionDLTPrimitive());
+		final double[] before = Fixtures.projection(svd);
+		final ReprojectionRefiner refiner = new ReprojectionRefiner();
+		refiner.setPrior(ProjectionPrior.fromProjection(truth, 0.05), TAP_SIGMA);
+		svd.Proj3x4.set(0, 0, before[0] + 1.0);
+		before[0] += 1.0;
+
+		assertFalse(svd.projectionMAP(refiner));
+		assertArrayEquals(before, Fixtures.projection(svd), 0.0);
+	}
+
+	@Test
+	public void onlyTheRatiosOfTheWeightsMatter()
+	{
+		//uniformly low weights (e.g. every tap taken at a distance) must not hand the result to the prior//
+		final double[] truth = Fixtures.groundTruth();
+		final CorrespondenceBuffer points = Fixtures.session(truth, 4, 117L, 1.0);
+		final SPAAM_SVD full = map(points, earlierCalibration());
+		for ( int i = 0; i < points.size(); i++ )
+			points.setWeight(i, i == 0 ? 0.02 : 0.01);
+		final SPAAM_SVD low = map(points, earlierCalibration());
+		for ( int i = 0; i < points.size(); i++ )
+			points.setWeight(i, i == 0 ? 2.0 : 1.0);
+		final SPAAM_SVD relative = map(points, earlierCalibration());
+
+		Fixtures.assertProjection(Fixtures.projection(relative), Fixtures.projection(low), 1e-9);
+		final CorrespondenceBuffer check = Fixtures.session(truth, 200, 118L, 0.0);
+		assertTrue(Math.abs(Fixtures.reprojectionRms(Fixtures.projection(low), check)
+				- Fixtures.reprojectionRms(Fixtures.projection(full), check)) < 1.0);
+	}
+
+	@Test
+	public void needsAPrior()
+	{
+		final SPAAM_SVD svd = Fixtures.solver(Fixtures.session(Fixtures.groundTruth(), 10, 115L, 1.0));
+		assertFalse(svd.projectionMAP(new ReprojectionRefiner()));
+	}
+}
@@ -0,0 +1,80 @@
+/**************************************************************************************
+ * Tests of the quick recalibration, which keeps the intrinsics of a prior calibration
+ * and solves only the eye pose after the headset slipped.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+public class PoseSolverTest {
+	private static final double[] TRANSLATION = { 10.0, -20.0, 30.0 };
+
+	//The calibration before the slip and the ground truth after it (same intrinsics, moved eye)//
+	private static double[] beforeSlip()
+	{
+		return Fixtures.groundTruth(1100.0, 1050.0, 470.0, 280.0, 0.3, TRANSLATION);
+	}
+
+	private static double[] afterSlip()
+	{
+		return Fixtures.groundTruth(1100.0, 1050.0, 470.0, 280.0, 0.33, new double[] { 14.0, -17.0, 26.0 });
+	}
+
+	@Test
+	public void recoversThePoseAfterASlip()
+	{
+		final double[] truth = afterSlip();
+		final PoseSolver pose = new PoseSolver();
+		assertTrue(pose.setPrior(beforeSlip()));
+
+		final double[] p = new double[12];
+		assertTrue(pose.solve(Fixtures.session(truth, 5, 101L, 0.0), p));
+		Fixtures.assertProjection(truth, p, 1e-6);
+	}
+
+	@Test
+	public void solvesFromThreePairsWithNoise()
+	{
+		final double[] truth = afterSlip();
+		final SPAAM_SVD svd = Fixtures.solver(Fixtures.session(truth, PoseSolver.MIN_PAIRS, 102L, 0.5));
+		final PoseSolver pose = new PoseSolver();
+		assertTrue(pose.setPrior(beforeSlip()));
+		assertTrue(svd.projectionPoseOnly(pose));
+		assertTrue(pose.getRmsError() < 1.0);
+
+		//the intrinsics stay those of the prior//
+		final ProjectionDecomposition decomposition = svd.getDecomposition();
+		assertTrue(Math.abs(decomposition.focalX() - 1100.0) < 1e-6);
+		assertTrue(Math.abs(decomposition.principalY() - 280.0) < 1e-6);
+	}
+
+	@Test
+	public void needsThreePairs()
+	{
+		final PoseSolver pose = new PoseSolver();
+		assertTrue(pose.setPrior(beforeSlip()));
+		assertFalse(pose.solve(Fixtures.session(afterSlip(), PoseSolver.MIN_PAIRS - 1, 103L, 0.0), new double[12]));
+	}
+
+	@Test
+	public void failedPriorDropsThePreviousOne()
+	{
+		final PoseSolver pose = new PoseSolver();
+		assertTrue(pose.setPrior(beforeSlip()));
+		assertTrue(pose.hasPrior());
+
+		assertFalse(pose.setPrior(new double[12]));
+		assertFalse(pose.hasPrior());
+		assertFalse(pose.solve(Fixtures.session(afterSlip(), 5, 104L, 0.0), new double[12]));
+
+		assertTrue(pose.setPrior(beforeSlip()));
+		assertFalse(pose.setPrior(new ProjectionDecomposition()));
+		assertFalse(pose.hasPrior());
+	}
+}
@@ -0,0 +1,71 @@
+/**************************************************************************************
+ * Tests of the allocation-free primitive DLT solve against the original Jama solve and
+ * against the ground truth of synthetic sessions.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+public class PrimitiveDltTest {
+	@Test
+	public void recoversGroundTruthFromExactPairs()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final SPAAM_SVD svd = Fixtures.solver(Fixtures.session(truth, 20, 1L, 0.0));
+		assertTrue(svd.projectionDLTPrimitive());
+		Fixtures.assertProjection(truth, Fixtures.projection(svd), 1e-6);
+	}
+
+	@Test
+	public void matchesJamaSolve()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 40, 2L, 2.0);
+		final SPAAM_SVD jama = Fixtures.solver(points);
+		final SPAAM_SVD primitive = Fixtures.solver(points);
+		assertTrue(jama.projectionDLTImpl());
+		assertTrue(primitive.projectionDLTPrimitive());
+		Fixtures.assertProjection(Fixtures.projection(jama), Fixtures.projection(primitive), 1e-9);
+	}
+
+	@Test
+	public void matchesJamaSolveWithWeights()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 40, 3L, 2.0);
+		for ( int i = 0; i < points.size(); i++ )
+			points.setWeight(i, 0.25 + ( i % 4 ) * 0.5);
+		final SPAAM_SVD jama = Fixtures.solver(points);
+		final SPAAM_SVD primitive = Fixtures.solver(points);
+		assertTrue(jama.projectionDLTImpl());
+		assertTrue(primitive.projectionDLTPrimitive());
+		Fixtures.assertProjection(Fixtures.projection(jama), Fixtures.projection(primitive), 1e-9);
+	}
+
+	@Test
+	public void reusedWorkspaceGivesTheSameResult()
+	{
+		final CorrespondenceBuffer small = Fixtures.session(Fixtures.groundTruth(), 12, 4L, 1.0);
+		final CorrespondenceBuffer large = Fixtures.session(Fixtures.groundTruth(), 200, 5L, 1.0);
+		final SPAAM_SVD reused = Fixtures.solver(large);
+		assertTrue(reused.projectionDLTPrimitive());
+		reused.clearCorrespondences();
+		for ( int i = 0; i < small.size(); i++ )
+			reused.addCorrespondence(small.worldX(i), small.worldY(i), small.worldZ(i), small.screenX(i), small.screenY(i));
+		final SPAAM_SVD fresh = Fixtures.solver(small);
+		assertTrue(reused.projectionDLTPrimitive());
+		assertTrue(fresh.projectionDLTPrimitive());
+		Fixtures.assertProjection(Fixtures.projection(fresh), Fixtures.projection(reused), 0.0);
+	}
+
+	@Test
+	public void needsSixPairs()
+	{
+		final SPAAM_SVD svd = Fixtures.solver(Fixtures.session(Fixtures.groundTruth(), 5, 6L, 0.0));
+		assertFalse(svd.projectionDLTPrimitive());
+	}
+}
@@ -0,0 +1,135 @@
+/**************************************************************************************
+ * Tests of the RQ decomposition of a 3x4 projection into intrinsics and pose, of its
+ * cache in SPAAM_SVD and of the OpenGL projection round trip.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+public class ProjectionDecompositionTest {
+	//K [R | t] from the parts of a decomposition//
+	private static double[] rebuild(ProjectionDecomposition decomposition)
+	{
+		final double[] k = new double[9], r = new double[9], t = new double[3];
+		decomposition.getIntrinsics(k);
+		decomposition.getRotation(r);
+		decomposition.getTranslation(t);
+		final double[] p = new double[12];
+		for ( int row = 0; row < 3; row++ )
+		{
+			for ( int c = 0; c < 3; c++ )
+				for ( int j = 0; j < 3; j++ )
+					p[row * 4 + c] += k[row * 3 + j] * r[j * 3 + c];
+			for ( int j = 0; j < 3; j++ )
+				p[row * 4 + 3] += k[row * 3 + j] * t[j];
+		}
+		return p;
+	}
+
+	@Test
+	public void roundTripRecoversIntrinsicsAndPose()
+	{
+		final double[] t = { 10.0, -20.0, 30.0 };
+		final double[] truth = Fixtures.groundTruth(1100.0, 1050.0, 470.0, 280.0, 0.3, t);
+		final ProjectionDecomposition decomposition = new ProjectionDecomposition();
+		assertTrue(decomposition.decompose(truth));
+
+		assertEquals(1100.0, decomposition.focalX(), 1e-9);
+		assertEquals(1050.0, decomposition.focalY(), 1e-9);
+		assertEquals(470.0, decomposition.principalX(), 1e-9);
+		assertEquals(280.0, decomposition.principalY(), 1e-9);
+		assertEquals(0.0, decomposition.skew(), 1e-9);
+
+		final double[] r = new double[9], translation = new double[3];
+		decomposition.getRotation(r);
+		decomposition.getTranslation(translation);
+		final double c = Math.cos(0.3), s = Math.sin(0.3);
+		final double[] expected = { c, 0.0, s, 0.0, 1.0, 0.0, -s, 0.0, c };
+		for ( int k = 0; k < 9; k++ )
+			assertEquals(expected[k], r[k], 1e-12);
+		for ( int k = 0; k < 3; k++ )
+			assertEquals(t[k], translation[k], 1e-9);
+
+		Fixtures.assertProjection(truth, rebuild(decomposition), 1e-12);
+	}
+
+	@Test
+	public void eyePositionProjectsToNothing()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final ProjectionDecomposition decomposition = new ProjectionDecomposition();
+		assertTrue(decomposition.decompose(truth));
+		final double[] c = new double[3];
+		decomposition.getPosition(c);
+		for ( int row = 0; row < 3; row++ )
+			assertEquals(0.0, truth[row * 4] * c[0] + truth[row * 4 + 1] * c[1] + truth[row * 4 + 2] * c[2] + truth[row * 4 + 3],
+					1e-9 * Math.max(1.0, Math.abs(truth[row * 4 + 3])));
+	}
+
+	@Test
+	public void mirroredScreenKeepsAProperRotation()
+	{
+		final double[] truth = Fixtures.groundTruth(1100.0, -1050.0, 470.0, 280.0, 0.3, new double[] { 10.0, -20.0, 30.0 });
+		final ProjectionDecomposition decomposition = new ProjectionDecomposition();
+		assertTrue(decomposition.decompose(truth));
+		assertEquals(-1050.0, decomposition.focalY(), 1e-9);
+
+		final double[] r = new double[9];
+		decomposition.getRotation(r);
+		final double det = r[0] * ( r[4] * r[8] - r[5] * r[7] ) - r[1] * ( r[3] * r[8] - r[5] * r[6] ) + r[2] * ( r[3] * r[7] - r[4] * r[6] );
+		assertEquals(1.0, det, 1e-12);
+		Fixtures.assertProjection(truth, rebuild(decomposition), 1e-12);
+	}
+
+	@Test
+	public void singularProjectionIsRejected()
+	{
+		final ProjectionDecomposition decomposition = new ProjectionDecomposition();
+		assertFalse(decomposition.decompose(new double[] { 1, 0, 0, 0, 2, 0, 0, 0, 0, 0, 0, 1 }));
+		assertFalse(decomposition.isValid());
+	}
+
+	@Test
+	public void cachedDecompositionFollowsTheProjection()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final CorrespondenceBuffer points = Fixtures.session(truth, 20, 91L, 1.0);
+		final SPAAM_SVD svd = Fixtures.solver(points);
+		assertTrue(svd.projectionDLTPrimitive());
+
+		final ProjectionDecomposition cached = svd.getDecomposition();
+		final ProjectionDecomposition fresh = new ProjectionDecomposition();
+		assertTrue(fresh.decompose(Fixtures.projection(svd)));
+		assertEquals(fresh.focalX(), cached.focalX(), 0.0);
+		assertEquals(fresh.positionZ(), cached.positionZ(), 0.0);
+		assertSame(cached, svd.getDecomposition());
+
+		//a new solve with more pairs changes the projection, the cache follows//
+		final CorrespondenceBuffer more = Fixtures.session(truth, 10, 92L, 1.0);
+		for ( int i = 0; i < more.size(); i++ )
+			svd.addCorrespondence(more.worldX(i), more.worldY(i), more.worldZ(i), more.screenX(i), more.screenY(i), 1.0);
+		assertTrue(svd.projectionDLTPrimitive());
+		assertTrue(fresh.decompose(Fixtures.projection(svd)));
+		assertEquals(fresh.focalX(), svd.getDecomposition().focalX(), 0.0);
+		assertEquals(fresh.principalY(), svd.getDecomposition().principalY(), 0.0);
+	}
+
+	@Test
+	public void glProjectionRoundTrip()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final double[] gl = new double[16];
+		GLProjection.buildProjection(truth, 0, 960, 540, 0, 0.1, 5000.0, gl, 0);
+		final double[] p = new double[12];
+		GLProjection.toProjection3x4(gl, 0, 960, 540, 0, p);
+		Fixtures.assertProjection(Fixtures.unit(truth), Fixtures.unit(p), 1e-12);
+	}
+}
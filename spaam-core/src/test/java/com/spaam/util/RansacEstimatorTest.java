@@ -0,0 +1,139 @@
+/**************************************************************************************
+ * Tests of the parallel RANSAC estimation on synthetic sessions with outliers.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class RansacEstimatorTest {
+	private static CorrespondenceBuffer sessionWithOutliers(double[] truth, boolean[] outliers)
+	{
+		final SyntheticCalibration generator = new SyntheticCalibration(truth, 21L);
+		generator.setOutlierRate(0.25);
+		final CorrespondenceBuffer points = new CorrespondenceBuffer();
+		generator.generate(points, outliers.length, outliers);
+		return points;
+	}
+
+	@Test
+	public void rejectsOutliersAndRecoversGroundTruth()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final boolean[] outliers = new boolean[60];
+		final CorrespondenceBuffer points = sessionWithOutliers(truth, outliers);
+
+		final RansacEstimator ransac = new RansacEstimator();
+		ransac.setParallelism(1);
+		assertTrue(ransac.estimate(points));
+		for ( int i = 0; i < points.size(); i++ )
+			if ( ransac.getInlierMask()[i] )
+				assertFalse("outlier " + i + " kept", outliers[i]);
+
+		final CorrespondenceBuffer exact = Fixtures.session(truth, 100, 22L, 0.0);
+		assertTrue(Fixtures.reprojectionRms(ransac.getProjection(), exact) < 2.0);
+	}
+
+	@Test
+	public void resultDoesNotDependOnTheExecutor() throws Exception
+	{
+		final CorrespondenceBuffer points = sessionWithOutliers(Fixtures.groundTruth(), new boolean[60]);
+
+		final RansacEstimator sequential = new RansacEstimator();
+		sequential.setParallelism(1);
+		assertTrue(sequential.estimate(points));
+
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final RansacEstimator parallel = new RansacEstimator();
+			parallel.setParallelism(4);
+			parallel.setExecutor(executor);
+			assertTrue(parallel.estimate(points));
+			assertArrayEquals(sequential.getProjection(), parallel.getProjection(), 0.0);
+			assertEquals(sequential.getHypothesesEvaluated(), parallel.getHypothesesEvaluated());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void reseededGeneratorMatchesStream()
+	{
+		final FastRandom reused = new FastRandom(0L);
+		for ( long index = 0; index < 8; index++ )
+		{
+			final FastRandom fresh = FastRandom.stream(0x5ba4a3L, index);
+			reused.setStream(0x5ba4a3L, index);
+			for ( int k = 0; k < 6; k++ )
+				assertEquals(fresh.nextLong(), reused.nextLong());
+		}
+	}
+
+	//count pairs of a session with the given weight appended to points//
+	private static void append(CorrespondenceBuffer points, CorrespondenceBuffer session, double weight)
+	{
+		for ( int i = 0; i < session.size(); i++ )
+			points.add(session.worldX(i), session.worldY(i), session.worldZ(i), session.screenX(i), session.screenY(i),
+					weight, 0L);
+	}
+
+	@Test
+	public void samplesOnlyWeightedPairs()
+	{
+		//two thirds of the pairs are switched off garbage: drawn from all pairs, hardly any of 5//
+		//samples would be outlier free//
+		final double[] truth = Fixtures.groundTruth();
+		final CorrespondenceBuffer points = new CorrespondenceBuffer();
+		append(points, Fixtures.session(truth, 20, 24L, 0.5), 1.0);
+		append(points, Fixtures.session(Fixtures.groundTruth(900.0, 1200.0, 700.0, 100.0, -0.2, new double[] { -40.0, 30.0, 10.0 }),
+				40, 25L, 0.0), 0.0);
+
+		final RansacEstimator ransac = new RansacEstimator();
+		ransac.setParallelism(1);
+		ransac.setMaxHypotheses(5);
+		assertTrue(ransac.estimate(points));
+		assertTrue(Fixtures.reprojectionRms(ransac.getProjection(), Fixtures.session(truth, 100, 26L, 0.0)) < 2.0);
+	}
+
+	@Test
+	public void costIsWeightedLikeTheRefit()
+	{
+		//more pairs, but with little weight, agree with a second projection 200 pixels off//
+		final double[] truth = Fixtures.groundTruth();
+		final CorrespondenceBuffer points = new CorrespondenceBuffer();
+		append(points, Fixtures.session(truth, 28, 27L, 0.5), 1.0);
+		append(points, Fixtures.session(Fixtures.groundTruth(1100.0, 1050.0, 670.0, 280.0, 0.3, new double[] { 10.0, -20.0, 30.0 }),
+				32, 28L, 0.5), 0.05);
+
+		final RansacEstimator ransac = new RansacEstimator();
+		ransac.setParallelism(1);
+		ransac.setConfidence(0.9999);
+		assertTrue(ransac.estimate(points));
+		for ( int i = 0; i < points.size(); i++ )
+			assertEquals("pair " + i, i < 28, ransac.getInlierMask()[i]);
+		assertTrue(Fixtures.reprojectionRms(ransac.getProjection(), Fixtures.session(truth, 100, 29L, 0.0)) < 2.0);
+	}
+
+	@Test
+	public void needsSixWeightedPairs()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 10, 30L, 0.0);
+		for ( int i = 0; i < 5; i++ )
+			points.setWeight(i, 0.0);
+		assertFalse(new RansacEstimator().estimate(points));
+	}
+
+	@Test
+	public void needsSixPairs()
+	{
+		assertFalse(new RansacEstimator().estimate(Fixtures.session(Fixtures.groundTruth(), 5, 23L, 0.0)));
+	}
+}
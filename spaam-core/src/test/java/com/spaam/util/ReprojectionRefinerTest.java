@@ -0,0 +1,150 @@
+/**************************************************************************************
+ * Tests of the Levenberg-Marquardt refinement on its own: convergence to the truth
+ * from a perturbed start, the cost trace, the iteration and time limits and the
+ * cases that leave the projection untouched.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+public class ReprojectionRefinerTest {
+
+	//The truth with a relative error of about scale on every element//
+	private static double[] perturbed(double[] truth, double scale)
+	{
+		final double[] p = truth.clone();
+		for ( int i = 0; i < 12; i++ )
+			p[i] += scale * ( i % 2 == 0 ? 1.0 : -1.0 ) * ( 1.0 + 0.1 * i ) * Math.max(Math.abs(truth[i]), 1e-3);
+		return p;
+	}
+
+	@Test
+	public void convergesToTheTruthWithoutNoise()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final CorrespondenceBuffer points = Fixtures.session(truth, 30, 141L, 0.0);
+		final double[] p = perturbed(truth, 1e-2);
+		assertTrue(Fixtures.reprojectionRms(p, points) > 1.0);
+
+		final ReprojectionRefiner refiner = new ReprojectionRefiner();
+		refiner.setMaxIterations(50);
+		assertTrue(refiner.refine(points, p));
+		Fixtures.assertProjection(Fixtures.unit(truth), p, 1e-6);
+		assertTrue(refiner.getRmsError() < 1e-6);
+	}
+
+	@Test
+	public void lowersTheDltErrorWithNoise()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final CorrespondenceBuffer points = Fixtures.session(truth, 40, 142L, 2.0);
+		final SPAAM_SVD svd = Fixtures.solver(points);
+		assertTrue(svd.projectionDLTPrimitive());
+		final double[] p = Fixtures.projection(svd);
+		final double dltRms = Fixtures.reprojectionRms(p, points);
+
+		final ReprojectionRefiner refiner = new ReprojectionRefiner();
+		assertTrue(refiner.refine(points, p));
+		assertTrue(refiner.getRmsError() <= dltRms);
+		assertEquals(Fixtures.reprojectionRms(p, points), refiner.getRmsError(), 1e-9);
+
+		//one trace entry per accepted step after the start, the cost never rises//
+		assertEquals(refiner.getIterations() + 1, refiner.getTraceLength());
+		assertEquals(40 * dltRms * dltRms, refiner.getInitialCost(), 1e-9 * refiner.getInitialCost());
+		for ( int i = 1; i < refiner.getTraceLength(); i++ )
+		{
+			assertTrue(refiner.getCostTrace()[i] < refiner.getCostTrace()[i - 1]);
+			assertTrue(refiner.getTimeTrace()[i] >= refiner.getTimeTrace()[i - 1]);
+		}
+
+		//the viewing direction is normalized like the DLT result//
+		assertEquals(1.0, Math.sqrt(p[8] * p[8] + p[9] * p[9] + p[10] * p[10]), 1e-12);
+	}
+
+	@Test
+	public void iterationLimitBoundsTheSteps()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final CorrespondenceBuffer points = Fixtures.session(truth, 30, 143L, 1.0);
+		final ReprojectionRefiner refiner = new ReprojectionRefiner();
+		refiner.setMaxIterations(2);
+		refiner.setTolerance(0.0);
+		assertTrue(refiner.refine(points, perturbed(truth, 1e-3)));
+		assertEquals(2, refiner.getIterations());
+		assertEquals(3, refiner.getTraceLength());
+
+		//a longer limit grows the traces//
+		refiner.setMaxIterations(40);
+		assertTrue(refiner.getCostTrace().length >= 41 && refiner.getTimeTrace().length >= 41);
+		assertTrue(refiner.refine(points, perturbed(truth, 1e-3)));
+		assertTrue(refiner.getIterations() > 2);
+	}
+
+	@Test
+	public void spentTimeBudgetOnlyNormalizes()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final CorrespondenceBuffer points = Fixtures.session(truth, 30, 144L, 1.0);
+		final double[] start = perturbed(truth, 1e-3);
+		final double[] p = start.clone();
+
+		final ReprojectionRefiner refiner = new ReprojectionRefiner();
+		refiner.setTimeBudgetNanos(1L);
+		assertTrue(refiner.refine(points, p));
+		assertEquals(0, refiner.getIterations());
+		assertEquals(1, refiner.getTraceLength());
+		Fixtures.assertProjection(Fixtures.unit(start), p, 1e-12);
+	}
+
+	@Test
+	public void zeroWeightPairIsIgnored()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final CorrespondenceBuffer points = Fixtures.session(truth, 20, 145L, 0.0);
+		//a tap 80 pixels off the cross, dropped by its weight//
+		final int outlier = points.add(points.worldX(0), points.worldY(0), points.worldZ(0),
+				points.screenX(0) + 80.0, points.screenY(0), 0.0, 0L);
+
+		final double[] p = perturbed(truth, 1e-4);
+		final ReprojectionRefiner refiner = new ReprojectionRefiner();
+		refiner.setMaxIterations(50);
+		assertTrue(refiner.refine(points, p));
+		Fixtures.assertProjection(Fixtures.unit(truth), p, 1e-6);
+
+		//with its weight the tap pulls the result away//
+		points.setWeight(outlier, 1.0);
+		final double[] q = perturbed(truth, 1e-4);
+		assertTrue(refiner.refine(points, q));
+		assertTrue(Fixtures.reprojectionRms(q, Fixtures.session(truth, 100, 146L, 0.0)) > 1.0);
+	}
+
+	@Test
+	public void unusableInputLeavesTheProjection()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final ReprojectionRefiner refiner = new ReprojectionRefiner();
+
+		//fewer than 6 pairs without a prior//
+		final double[] p = perturbed(truth, 1e-3);
+		final double[] before = p.clone();
+		assertFalse(refiner.refine(Fixtures.session(truth, 5, 147L, 1.0), p));
+		assertArrayEquals(before, p, 0.0);
+
+		//a pair behind the viewer of the start//
+		final CorrespondenceBuffer points = Fixtures.session(truth, 12, 148L, 1.0);
+		final ProjectionDecomposition eye = new ProjectionDecomposition();
+		assertTrue(eye.decompose(truth));
+		points.add(eye.positionX() - 300.0 * truth[8], eye.positionY() - 300.0 * truth[9], eye.positionZ() - 300.0 * truth[10],
+				470.0, 280.0);
+		assertFalse(refiner.refine(points, p));
+		assertArrayEquals(before, p, 0.0);
+	}
+}
@@ -0,0 +1,55 @@
+/**************************************************************************************
+ * Tests of the streaming capture solve, which keeps only the normal equations of the
+ * streamed samples, against the Jama solve over the same samples.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+public class StreamingDltTest {
+	private static SPAAM_SVD streamed(CorrespondenceBuffer points)
+	{
+		final SPAAM_SVD svd = new SPAAM_SVD();
+		for ( int i = 0; i < points.size(); i++ )
+			svd.addStreamingSample(points.worldX(i), points.worldY(i), points.worldZ(i), points.screenX(i), points.screenY(i));
+		return svd;
+	}
+
+	@Test
+	public void matchesJamaSolve()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 500, 31L, 2.0);
+		final SPAAM_SVD jama = Fixtures.solver(points);
+		final SPAAM_SVD stream = streamed(points);
+		assertTrue(jama.projectionDLTImpl());
+		assertTrue(stream.projectionDLTStreaming());
+		assertEquals(0, stream.corr_points.size());
+		assertEquals(points.size(), stream.streamingSampleCount());
+		Fixtures.assertProjection(Fixtures.projection(jama), Fixtures.projection(stream), 1e-7);
+	}
+
+	@Test
+	public void recoversGroundTruthFromExactSamples()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		final SPAAM_SVD stream = streamed(Fixtures.session(truth, 100, 32L, 0.0));
+		assertTrue(stream.projectionDLTStreaming());
+		Fixtures.assertProjection(truth, Fixtures.projection(stream), 1e-6);
+	}
+
+	@Test
+	public void clearDiscardsTheSamples()
+	{
+		final SPAAM_SVD stream = streamed(Fixtures.session(Fixtures.groundTruth(), 50, 33L, 1.0));
+		stream.clearStreaming();
+		assertEquals(0, stream.streamingSampleCount());
+		assertFalse(stream.projectionDLTStreaming());
+	}
+}
@@ -0,0 +1,83 @@
+/**************************************************************************************
+ * Tests of the chunked tall-skinny QR solve against the Jama and primitive solves and
+ * across chunk sizes and block counts.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+public class TsqrTest {
+	private static double[] solve(CorrespondenceBuffer points, int chunkSize, int parallelism, ExecutorService executor)
+	{
+		final TsqrSolver tsqr = new TsqrSolver();
+		tsqr.setChunkSize(chunkSize);
+		tsqr.setParallelism(parallelism);
+		tsqr.setExecutor(executor);
+		final double[] p = new double[12];
+		assertTrue(tsqr.solve(points, p));
+		return p;
+	}
+
+	@Test
+	public void matchesJamaAndPrimitiveSolves()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 400, 81L, 2.0);
+		final SPAAM_SVD jama = Fixtures.solver(points);
+		final SPAAM_SVD primitive = Fixtures.solver(points);
+		final SPAAM_SVD tsqr = Fixtures.solver(points);
+		final TsqrSolver solver = new TsqrSolver();
+		solver.setChunkSize(64);
+		assertTrue(jama.projectionDLTImpl());
+		assertTrue(primitive.projectionDLTPrimitive());
+		assertTrue(tsqr.projectionDLTTsqr(solver));
+		Fixtures.assertProjection(Fixtures.projection(jama), Fixtures.projection(tsqr), 1e-9);
+		Fixtures.assertProjection(Fixtures.projection(primitive), Fixtures.projection(tsqr), 1e-9);
+	}
+
+	@Test
+	public void sameResultForAnyBlockCount()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 1000, 82L, 2.0);
+		final double[] serial = solve(points, 50, 1, null);
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for ( int blocks = 2; blocks <= 7; blocks++ )
+				assertArrayEquals(serial, solve(points, 50, blocks, executor), 0.0);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void chunkSizeOnlyChangesRounding()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 300, 83L, 2.0);
+		final double[] single = solve(points, 300, 1, null);
+		for ( int chunk : new int[] { 6, 7, 64, 299 } )
+			Fixtures.assertProjection(single, solve(points, chunk, 1, null), 1e-10);
+	}
+
+	@Test
+	public void recoversGroundTruthFromExactPairs()
+	{
+		final double[] truth = Fixtures.groundTruth();
+		Fixtures.assertProjection(truth, solve(Fixtures.session(truth, 200, 84L, 0.0), 32, 1, null), 1e-7);
+	}
+
+	@Test
+	public void needsSixPairs()
+	{
+		final CorrespondenceBuffer points = Fixtures.session(Fixtures.groundTruth(), 5, 85L, 0.0);
+		assertFalse(new TsqrSolver().solve(points, new double[12]));
+	}
+}
@@ -0,0 +1,75 @@
+/**************************************************************************************
+ * Tests of the weight policies on synthetic tracking histories: distance and viewing
+ * angle falloff, and the pose jitter policy telling tracker noise from head motion.
+ *************************************************************************************/
+
+package com.spaam.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class WeightPolicyTest {
+	//30 frames at 30 fps of a marker 0.5 m ahead, moving at the given speed (m/s) with jitter//
+	//(standard deviation per axis, metres) on top//
+	private static TrackingHistory history(double speed, double jitter, long seed)
+	{
+		final FastRandom random = new FastRandom(seed);
+		final TrackingHistory history = new TrackingHistory(30);
+		for ( int i = 0; i < 45; i++ )
+		{
+			final double drift = speed * i / 30.0;
+			history.push(0.05 + drift + jitter * random.nextGaussian(), 0.02 + jitter * random.nextGaussian(),
+					0.5 + jitter * random.nextGaussian(), 0.0, 0.0, 1.0);
+		}
+		return history;
+	}
+
+	@Test
+	public void jitterVarianceEstimatesTrackerNoise()
+	{
+		//3 axes of 1 mm: 3e-6 square metres per frame//
+		double sum = 0.0;
+		for ( long seed = 0; seed < 50; seed++ )
+			sum += history(0.0, 0.001, seed).jitterVariance();
+		assertEquals(3e-6, sum / 50, 0.3e-6);
+
+		//a still marker without noise has no jitter//
+		assertEquals(0.0, history(0.0, 0.0, 1L).jitterVariance(), 0.0);
+	}
+
+	@Test
+	public void headMotionBarelyLowersTheWeight()
+	{
+		final WeightPolicy policy = new WeightPolicy.PoseVariance(4e-6);
+
+		//3 cm/s, a slow head motion while aligning, spreads the positions by 3 cm over the history//
+		final TrackingHistory moving = history(0.03, 0.0005, 2L);
+		assertTrue(moving.positionVariance() > 10 * 4e-6);
+		assertTrue(policy.weight(moving) > 0.7);
+
+		//2 mm of jitter per frame halves it//
+		final double w = policy.weight(history(0.0, 0.002 / Math.sqrt(3.0), 3L));
+		assertTrue("weight " + w, w > 0.35 && w < 0.65);
+	}
+
+	@Test
+	public void distanceAndViewingAngle()
+	{
+		final TrackingHistory history = new TrackingHistory(4);
+		history.push(0.0, 0.0, 1.0, 0.0, 0.0, -1.0);
+		assertEquals(0.25, new WeightPolicy.Distance(0.5, 2.0).weight(history), 1e-12);
+		assertEquals(1.0, new WeightPolicy.ViewingAngle(1.0, Math.toRadians(75.0)).weight(history), 1e-12);
+
+		//60 degrees off the line of sight, and beyond the cutoff//
+		history.push(0.0, 0.0, 0.4, Math.sin(Math.PI / 3), 0.0, Math.cos(Math.PI / 3));
+		assertEquals(1.0, new WeightPolicy.Distance(0.5, 2.0).weight(history), 0.0);
+		assertEquals(0.5, new WeightPolicy.ViewingAngle(1.0, Math.toRadians(75.0)).weight(history), 1e-12);
+		assertEquals(0.0, new WeightPolicy.ViewingAngle(1.0, Math.toRadians(45.0)).weight(history), 0.0);
+
+		final WeightPolicy product = new WeightPolicy.Product(new WeightPolicy.Distance(0.2, 1.0),
+				new WeightPolicy.ViewingAngle(2.0, Math.toRadians(75.0)));
+		assertEquals(0.5 * 0.25, product.weight(history), 1e-12);
+	}
+}
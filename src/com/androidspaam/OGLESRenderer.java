@@ -37,7 +37,6 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
@@ -54,8 +53,12 @@ import android.util.Log;
 
 import com.androidspaam.util.ShaderHelper;
 import com.androidspaam.util.TextResourceReader;
-import com.spaam.util.spaamutil.SPAAM_SVD;
-import com.spaam.util.spaamutil.SPAAM_SVD.Correspondence_Pair;
+import com.spaam.util.CalibrationFile;
+import com.spaam.util.ClipPlanes;
+import com.spaam.util.CorrespondenceBuffer;
+import com.spaam.util.ProjectionPrior;
+import com.spaam.util.TrackingHistory;
+import com.spaam.util.WeightPolicy;
 /******Java specific Libraries******/
 /******Android Specific Libraries******/
 /******Qualcomm Specific Libraries required by Vuforia******/
@@ -145,6 +148,10 @@ public class OGLESRenderer extends Activity implements Renderer {
 	//and right eye viewpoint as well as the transformation needed to properly locate the verification
 	//square (the location obtained via the Vuforia marker tracker. These values simply create identity
 	//matrices in order to initial the members for later use//
+	static final float[] IDENTITY = {1f, 0f, 0f, 0f,
+							0f, 1f, 0f, 0f,
+							0f, 0f, 1f, 0f,
+							0f, 0f, 0f, 1f};
 	float[] u_ProjectionLeft = {1f, 0f, 0f, 0f,
 							0f, 1, 0f, 0f,
 							0f, 0f, 1f, 0f,
@@ -185,9 +192,39 @@ public class OGLESRenderer extends Activity implements Renderer {
 	float cam_z = 0f;
 	
 	//////////////////////////
-	SPAAM_SVD svd = new SPAAM_SVD();
+	//Pairs recorded during the current session (GL thread only)//
+	final CorrespondenceBuffer taps = new CorrespondenceBuffer();
+	//Background thread solving the SPAAM projection and writing the calibration file//
+	final SolverWorker solver = new SolverWorker();
 	File SPAAM_File = null;
 	File calibFile = null;
+	//Leave-one-out RMS (pixels) below which further crosses are optional, the grid is then ended early//
+	static final double LOO_TARGET_RMS = 5.0;
+	boolean looConverged = false;
+	//Relative standard deviation of the projection prior taken from the stored calibration//
+	static final double PRIOR_SIGMA = 0.05;
+	//Streaming capture: while the touchpad is held a sample is streamed every tracked frame//
+	boolean streamCapture = false;
+	boolean capturing = false;
+	boolean streamOpen = false;
+	//Calibration modes, see SetCalibrationMode( )//
+	static final int MODE_FULL = 0;
+	//Quick recalibration: the stored calibration's intrinsics are kept and only the eye pose is solved//
+	static final int MODE_QUICK_RECALIBRATION = 1;
+	//Prior calibration: the stored calibration regularizes a new full calibration (MAP estimate)//
+	static final int MODE_PRIOR = 2;
+	int calibrationMode = MODE_FULL;
+	//Marker poses of the recent tracked frames (about one second) and the policy turning them into pair//
+	//weights. Positions are in metres (the tracker's cm / 100): full weight up to 0.5 m, and half the//
+	//weight at 2 mm (root mean square) frame to frame jitter of the marker position//
+	final TrackingHistory trackingHistory = new TrackingHistory(30);
+	static final double JITTER_VARIANCE = 0.002 * 0.002;
+	WeightPolicy weightPolicy = new WeightPolicy.Product(new WeightPolicy.Distance(0.5, 2.0),
+			new WeightPolicy.ViewingAngle(1.0, Math.toRadians(75.0)), new WeightPolicy.PoseVariance(JITTER_VARIANCE));
+	//3x4 SPAAM results of the eyes (null until solved), the 4x4 matrices are rebuilt from these//
+	//when the clip planes change, without another solve//
+	double[] solvedLeft3x4 = null;
+	double[] solvedRight3x4 = null;
 	//////////////////////////
 	
 	////////Functions for Handling File Access///////
@@ -236,7 +273,89 @@ public class OGLESRenderer extends Activity implements Renderer {
     	crossNum = -4;
     	crossCount = crossVertices.length/2;
     	
-    	svd.corr_points.clear();
+    	taps.clear();
+    	looConverged = false;
+    	capturing = false;
+    	streamOpen = false;
+    	solver.cancel();
+    }
+    
+    //Switches between recording a pair per tap and streaming samples while the touchpad is held//
+    //(resets the session state, so it must run on the GL thread, see SPAAM.onKeyDown( ))//
+    public void SetStreamCapture(boolean enabled)
+    {
+    	streamCapture = enabled;
+    	ResetState();
+    }
+    
+    //Switches the calibration mode, restarting the session. The quick recalibration (after the headset//
+    //slipped, 3 to 5 taps) and the prior calibration (a usable result after 2 or 3 taps, the file is only//
+    //replaced once the taps are well spread on their own) build on the stored calibration of the eye;//
+    //without a usable one the full calibration is kept. Returns the mode in effect.//
+    public int SetCalibrationMode(int mode)
+    {
+    	final double[] stored = mode == MODE_FULL ? null : readStoredProjection();
+    	ProjectionPrior prior = null;
+    	if ( mode == MODE_PRIOR && stored != null )
+    	{
+    		try {
+    			prior = ProjectionPrior.fromProjection(stored, PRIOR_SIGMA);
+    		} catch (IllegalArgumentException e) {
+    			Log.i("OGLESRenderer", "The stored calibration cannot serve as a prior");
+    		}
+    	}
+    	if ( ( mode == MODE_QUICK_RECALIBRATION && stored != null ) || ( mode == MODE_PRIOR && prior != null ) )
+    		calibrationMode = mode;
+    	else
+    	{
+    		if ( mode != MODE_FULL )
+    			Log.i("OGLESRenderer", "No usable stored calibration, staying in the full calibration");
+    		calibrationMode = MODE_FULL;
+    	}
+    	//the modes exclude each other, the solver gets the prior of the active one only//
+    	solver.setPosePrior(calibrationMode == MODE_QUICK_RECALIBRATION ? stored : null);
+    	solver.setProjectionPrior(calibrationMode == MODE_PRIOR ? prior : null);
+    	ResetState();
+    	return calibrationMode;
+    }
+    
+    //The stored calibration of the selected eye as a 3x4 projection, null if there is none//
+    private double[] readStoredProjection()
+    {
+    	final double[] stored = new double[12];
+    	try {
+    		if ( calibFile == null || !CalibrationFile.readProjection3x4(calibFile, stored) )
+    			return null;
+    	} catch (IOException e) {
+    		Log.e("OGLESRenderer", "Could not read " + calibFile.getAbsolutePath(), e);
+    		return null;
+    	}
+    	return stored;
+    }
+    
+    //Confidence weight of a pair recorded in the current frame//
+    double SampleWeight()
+    {
+    	return trackingHistory.size() > 0 ? weightPolicy.weight(trackingHistory) : 1.0;
+    }
+    
+    //Sets fixed clip planes for the application (null derives them from the depth of the recorded//
+    //points) and rebuilds the projections solved so far with them. GL thread only.//
+    public void SetClipPlanes(ClipPlanes profile)
+    {
+    	solver.setClipPlanes(profile);
+    	if ( profile == null )
+    		return;
+    	if ( solvedLeft3x4 != null )
+    		profile.buildProjection(solvedLeft3x4, 0, 960, 540, 0, u_ProjectionLeft, 0);
+    	if ( solvedRight3x4 != null )
+    		profile.buildProjection(solvedRight3x4, 0, 960, 540, 0, u_ProjectionRight, 0);
+    }
+    
+    //Stops the background solver thread//
+    public void ShutdownSolver()
+    {
+    	solver.shutdown();
     }
     
     /****************************************************************
@@ -249,6 +368,13 @@ public class OGLESRenderer extends Activity implements Renderer {
      ***************************************************************/
 	public void SetupFileFunc( boolean eye) throws IOException
 	{
+		//The quick recalibration and prior calibration modes build on the previously selected eye//
+		if ( calibrationMode != MODE_FULL )
+		{
+			calibrationMode = MODE_FULL;
+			solver.setPosePrior(null);
+			solver.setProjectionPrior(null);
+		}
 		//Is the storage of the device readable//
 		if (isExternalStorageReadable() && isExternalStorageWritable()) {
 			File storageDirectory = getAlbumStorageDir("SPAAM_Calib");
@@ -292,23 +418,8 @@ public class OGLESRenderer extends Activity implements Renderer {
 					}
 					
 					//Attempt to read from the file. If the file is empty (just created, nothing is read)//
-					RandomAccessFile rac_file = new RandomAccessFile(calibFile.getAbsolutePath(), "r");
-					if ( rac_file.length() >= 16*8 )
-					{
-						//Store the calibration result into the correct projection for the selected eye//
-						if ( eye ){
-							for ( int i = 0; i < 16; i++ )
-							{
-				                u_ProjectionRight[i] = (float)rac_file.readDouble();
-							}
-						}else{
-							for ( int i = 0; i < 16; i++ )
-							{
-				                u_ProjectionLeft[i] = (float)rac_file.readDouble();
-							}
-						}
-					}
-					rac_file.close();
+					//Store the calibration result into the correct projection for the selected eye//
+					CalibrationFile.readProjection(calibFile, eye ? u_ProjectionRight : u_ProjectionLeft);
 				}
 			}
 		}//File Storage could not be accessed
@@ -318,31 +429,17 @@ public class OGLESRenderer extends Activity implements Renderer {
 	}
 
 	/***************************************************************
+	 * @param calibFile - the calibration file of the eye
+	 * @param projection - the 4x4 OpenGL projection (column major order)
 	 * @throws IOException - exception thrown when the file cannot be accessed
 	 * 
-	 * This function attempts to write the calibration results to the correct
-	 * file for the selected eye. The results are written as doubles in
-	 * column major order (4x4 OpenGL matrix).
+	 * This function attempts to write the calibration results to the
+	 * passed in file. The results are written as doubles in
+	 * column major order (4x4 OpenGL matrix). It is called from the
+	 * SolverWorker thread.
 	 **************************************************************/
-	public void WriteFileFunc( ) throws IOException{
-		//Open the file for read/write access//
-		RandomAccessFile rac_file = new RandomAccessFile(calibFile.getAbsolutePath(), "rw");
-		rac_file.setLength(0);
-		//Write the Right eye results//
-		if ( eye ){
-			for ( int i = 0; i < 16; i++ )
-			{
-				rac_file.writeDouble((double)u_ProjectionRight[i]);
-			}
-			rac_file.close();
-		}//Write the Left eye results//
-		else{
-			for ( int i = 0; i < 16; i++ )
-			{
-				rac_file.writeDouble((double)u_ProjectionLeft[i]);
-			}
-			rac_file.close();
-		}
+	public static void WriteFileFunc( File calibFile, float[] projection ) throws IOException{
+		CalibrationFile.writeProjection(calibFile, projection);
 	}
 	
 	/***************************************************************
@@ -493,6 +590,57 @@ public class OGLESRenderer extends Activity implements Renderer {
 	@Override
 	public void onDrawFrame(GL10 gl) {
 		updateTracking();
+		//Remember the marker pose (position and normal) of every tracked frame for the weight policy//
+		if ( tracking )
+			trackingHistory.push(u_Transform[12], u_Transform[13], u_Transform[14], u_Transform[8], u_Transform[9], u_Transform[10]);
+		else
+			trackingHistory.clear();
+		//Pick up the newest projection finished by the solver thread//
+		SolverWorker.Result solved = solver.poll();
+		if ( solved != null && solved.isWithdrawn() )
+		{
+			//The remaining pairs do not yield a projection (e.g. after an undo), show the calibration//
+			//the eye had before the session again//
+			final float[] restored = solved.projection != null ? solved.projection : IDENTITY;
+			System.arraycopy(restored, 0, solved.eye ? u_ProjectionRight : u_ProjectionLeft, 0, 16);
+			if ( solved.eye )
+				solvedRight3x4 = null;
+			else
+				solvedLeft3x4 = null;
+		}
+		else if ( solved != null )
+		{
+			if ( solved.eye )
+			{
+				System.arraycopy(solved.projection, 0, u_ProjectionRight, 0, 16);
+				solvedRight3x4 = solved.projection3x4;
+			}
+			else
+			{
+				System.arraycopy(solved.projection, 0, u_ProjectionLeft, 0, 16);
+				solvedLeft3x4 = solved.projection3x4;
+			}
+			//Once the leave-one-out error reaches the target the remaining crosses are optional: the grid//
+			//is ended (all crosses shown, as after the last one). Only once per session, further taps//
+			//continue with the first cross//
+			if ( !Double.isNaN(solved.looRms) )
+			{
+				Log.i("OGLESRenderer", "Leave-one-out RMS " + solved.looRms + " px over " + taps.size() + " taps");
+				if ( solved.looRms <= LOO_TARGET_RMS && !looConverged && !stereo )
+				{
+					looConverged = true;
+					crossNum = -4;
+					crossCount = crossVertices.length/2;
+					Log.i("OGLESRenderer", "Calibration converged, grid ended");
+				}
+			}
+		}
+		//Stream the current alignment while the touchpad is held//
+		if ( capturing && tracking )
+		{
+			solver.stream(cam_x, cam_y, cam_z,
+					crossVertices[crossNum*2+4]/2*960f + 480f, crossVertices[crossNum*2+1]/2f*540f + 270f, SampleWeight());
+		}
 		//Reset the Display Buffers//
 		glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 		
@@ -623,10 +771,29 @@ public class OGLESRenderer extends Activity implements Renderer {
 	 * This function handles the tap event for the touchpad of the Moverio.
 	 * It checks to make sure that the marker is being tracked and then checks
 	 * the state (which cross) and passes the 2D pixel location of the cross
-	 * and the 3D position data of the marker center to the SVD related math functions
-	 * to solve for the SPAAM solution.
+	 * and the 3D position data of the marker center to the SolverWorker, which
+	 * solves for the SPAAM solution off the rendering thread.
 	 **************************************************************************/
 	public void handleTouchPress() throws IOException{
+		//In the streaming mode the press starts the capture on the displayed cross//
+		if ( streamCapture )
+		{
+			if ( tracking && !stereo )
+			{
+				if ( crossNum >= 0 )
+				{
+					if ( !streamOpen )
+					{
+						solver.beginStream(eye, calibFile);
+						streamOpen = true;
+					}
+					capturing = true;
+				}
+				else
+					SkipCross();
+			}
+			return;
+		}
 		
 		//Verify the marker is being tracker//
 		if ( tracking && !stereo)
@@ -637,24 +804,10 @@ public class OGLESRenderer extends Activity implements Renderer {
 				if ( crossNum >= 0)
 				{	
 					//record the pixel and 3D point location data//
-					svd.corr_points.add(new Correspondence_Pair(cam_x, cam_y, cam_z,
-							crossVertices[crossNum*2+4]/2*960f + 480f, crossVertices[crossNum*2+1]/2f*540f + 270f));
-					//Call the SVD function, a minimum of 6 points is required//
-					if ( svd.projectionDLTImpl() ) {
-						//Build the OpenGL 4x4 projection matrix with a near clip plane of .1 and far clip plane of 100//
-						svd.BuildGLMatrix3x4(.1, 100.0, 960, 0, 540, 0);
-						//write the calibration results to the proper file//
-						if ( !eye ){
-			                for (int i = 0; i < 16; i++) {
-			                	u_ProjectionLeft[i] = (float)svd.projMat3x4[i];
-			                }
-		                } else {
-			                for (int i = 0; i < 16; i++) {
-			                	u_ProjectionRight[i] = (float)svd.projMat3x4[i];
-			                }
-		                }
-						WriteFileFunc();
-					}	
+					taps.add(cam_x, cam_y, cam_z,
+							crossVertices[crossNum*2+4]/2*960f + 480f, crossVertices[crossNum*2+1]/2f*540f + 270f, SampleWeight(), 0L);
+					//Hand the pairs to the solver thread, the result is picked up in onDrawFrame//
+					solver.submit(eye, calibFile, taps);
 				}
 				crossNum = -4;
 				crossCount = crossVertices.length/2;
@@ -664,23 +817,10 @@ public class OGLESRenderer extends Activity implements Renderer {
 				if ( crossNum >= 0)
 				{	
 					//record the pixel and 3D point location data//
-					svd.corr_points.add(new Correspondence_Pair(cam_x, cam_y, cam_z,
-							crossVertices[crossNum*2+4]/2*960f + 480f, crossVertices[crossNum*2+1]/2f*540f + 270f));
-					//Call the SVD function, a minimum of 6 points is required//
-					if ( svd.projectionDLTImpl() ){
-						svd.BuildGLMatrix3x4(.1, 100.0, 960, 0, 540, 0);
-						//write the calibration results to the proper file//
-						if ( !eye ) {
-			                for (int i = 0; i < 16; i++) {
-			                	u_ProjectionLeft[i] = (float)svd.projMat3x4[i];
-			                }
-		                } else {
-			                for (int i = 0; i < 16; i++) {
-			                	u_ProjectionRight[i] = (float)svd.projMat3x4[i];
-			                }
-		                }
-						WriteFileFunc();
-					}
+					taps.add(cam_x, cam_y, cam_z,
+							crossVertices[crossNum*2+4]/2*960f + 480f, crossVertices[crossNum*2+1]/2f*540f + 270f, SampleWeight(), 0L);
+					//Hand the pairs to the solver thread, the result is picked up in onDrawFrame//
+					solver.submit(eye, calibFile, taps);
 				}
 				crossNum += 4;
 				crossCount = 4;
@@ -688,6 +828,40 @@ public class OGLESRenderer extends Activity implements Renderer {
 		}
 	}
 	
+	/***************************************************************************
+	 * This function discards the most recent tap (a bad alignment) and shows
+	 * its cross again so the alignment can be redone. The remaining pairs are
+	 * handed to the SolverWorker again, which solves them if the active mode
+	 * has enough of them and otherwise withdraws the result of the session.
+	 * Not used in the streaming mode.
+	 **************************************************************************/
+	public void UndoTap(){
+		if ( streamCapture || stereo || taps.isEmpty() )
+			return;
+		taps.removeLast();
+
+		//Step back to the cross of the discarded tap (the last cross if the grid is shown)//
+		crossNum -= 4;
+		if ( crossNum < 0 )
+			crossNum = crossVertices.length/2-4;
+		crossCount = 4;
+
+		solver.submit(eye, calibFile, taps);
+	}
+	
+	/***************************************************************************
+	 * This function handles the release of the touchpad. In the streaming mode
+	 * it ends the capture on the current cross, has the SolverWorker write the
+	 * result so far and moves on to the next cross.
+	 **************************************************************************/
+	public void handleTouchRelease(){
+		if ( !capturing )
+			return;
+		capturing = false;
+		solver.save();
+		SkipCross();
+	}
+	
 	/***************************************************************************
 	 * This function is needed for the touch events callback setup. It does not
 	 * currently perform any meaningful function however.
@@ -626,6 +626,52 @@ public class SPAAM extends Activity {
 	        	oglRenderer.mDisplayControl.setMode(DisplayControl.DISPLAY_MODE_3D, false);
 	        	return true;
 	        }
+	        else if (keyCode == KeyEvent.KEYCODE_DPAD_LEFT && contentViewID == 1)
+	        {
+	        	//discard the last tap and redo its alignment//
+	        	glSurfaceView.queueEvent(new Runnable(){
+	        		@Override
+	        		public void run(){
+	        			oglRenderer.UndoTap();
+	        		}
+	        	});
+	        	return true;
+	        }
+	        else if (keyCode == KeyEvent.KEYCODE_DPAD_RIGHT && contentViewID == 1)
+	        {
+	        	//toggle the quick recalibration of the stored result (restarts the session)//
+	        	glSurfaceView.queueEvent(new Runnable(){
+	        		@Override
+	        		public void run(){
+	        			oglRenderer.SetCalibrationMode(oglRenderer.calibrationMode == OGLESRenderer.MODE_QUICK_RECALIBRATION
+	        					? OGLESRenderer.MODE_FULL : OGLESRenderer.MODE_QUICK_RECALIBRATION);
+	        		}
+	        	});
+	        	return true;
+	        }
+	        else if (keyCode == KeyEvent.KEYCODE_DPAD_UP && contentViewID == 1)
+	        {
+	        	//toggle the stored result as the prior of a full calibration (restarts the session)//
+	        	glSurfaceView.queueEvent(new Runnable(){
+	        		@Override
+	        		public void run(){
+	        			oglRenderer.SetCalibrationMode(oglRenderer.calibrationMode == OGLESRenderer.MODE_PRIOR
+	        					? OGLESRenderer.MODE_FULL : OGLESRenderer.MODE_PRIOR);
+	        		}
+	        	});
+	        	return true;
+	        }
+	        else if (keyCode == KeyEvent.KEYCODE_DPAD_CENTER && contentViewID == 1)
+	        {
+	        	//toggle between tap and streaming capture (restarts the session)//
+	        	glSurfaceView.queueEvent(new Runnable(){
+	        		@Override
+	        		public void run(){
+	        			oglRenderer.SetStreamCapture(!oglRenderer.streamCapture);
+	        		}
+	        	});
+	        	return true;
+	        }
 	        
 	        return super.onKeyDown(keyCode, event);
 	    }
@@ -693,6 +739,13 @@ public class SPAAM extends Activity {
 									}
 								}
 							});
+						} else if (event.getAction() == MotionEvent.ACTION_UP){
+							glSurfaceView.queueEvent(new Runnable(){
+								@Override
+								public void run(){
+									oglRenderer.handleTouchRelease();
+								}
+							});
 						} else if (event.getAction() == MotionEvent.ACTION_MOVE){
 							glSurfaceView.queueEvent(new Runnable(){
 								@Override
@@ -828,6 +881,12 @@ public class SPAAM extends Activity {
     {
         super.onDestroy();
         
+        // Stop the calibration solver thread
+        if (oglRenderer != null)
+        {
+            oglRenderer.ShutdownSolver();
+        }
+        
         // Cancel potentially running tasks
         if (mInitQCARTask != null &&
             mInitQCARTask.getStatus() != InitQCARTask.Status.FINISHED)
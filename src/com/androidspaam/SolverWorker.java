@@ -0,0 +1,562 @@
+/**************************************************************************************
+ * Description: This file contains the SolverWorker which runs the SPAAM solve, the
+ * conversion to the OpenGL projection and the writing of the calibration file on a
+ * dedicated background thread, so that the renderer never stalls during a solve.
+ *************************************************************************************/
+
+/******Package Name******/
+package com.androidspaam;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import android.util.Log;
+
+import com.spaam.util.CalibrationFile;
+import com.spaam.util.ClipPlanes;
+import com.spaam.util.CorrespondenceBuffer;
+import com.spaam.util.GLProjection;
+import com.spaam.util.LeaveOneOutValidator;
+import com.spaam.util.PoseSolver;
+import com.spaam.util.ProjectionPrior;
+import com.spaam.util.ReprojectionRefiner;
+import com.spaam.util.spaamutil.SPAAM_SVD;
+
+/**********************************************************************
+ * Class: SolverWorker
+ * Description: The renderer submits a snapshot of the recorded
+ * correspondence pairs after every tap. The worker thread solves the
+ * newest snapshot only; a snapshot which is still pending when a newer
+ * one arrives is dropped, and a solve which is already running is
+ * abandoned at the next stage boundary (after the DLT, after the
+ * refinement, before the file is written).
+ *
+ * Finished projections are handed back through an AtomicReference to an
+ * immutable Result, which onDrawFrame( ) picks up with poll( ). Neither
+ * side ever blocks the other and the renderer can never observe a half
+ * written matrix.
+ *
+ * In the streaming capture mode the renderer instead pushes one sample
+ * per tracked frame with stream( ). The samples pass through a fixed size
+ * single producer / single consumer ring and are folded into the solver's
+ * streaming normal equations, so neither the ring nor the solver grows
+ * with the length of the session. Samples arriving while the ring is full
+ * are dropped.
+ *********************************************************************/
+public class SolverWorker implements Runnable {
+	private static final String TAG = "SolverWorker";
+	//Standard deviation (pixels) of a tap, weighs the taps against the projection prior//
+	private static final double TAP_SIGMA = 2.0;
+
+	/********************************************************************
+	 * A finished OpenGL projection for one eye (column major 4x4), with
+	 * the leave-one-out RMS error of the tapped pairs (pixels, NaN if it
+	 * is not available, e.g. for streamed sessions). The 3x4 SPAAM result
+	 * and the clip planes the 4x4 was built with are kept, so the renderer
+	 * can rebuild the 4x4 for other planes without another solve.
+	 *
+	 * A withdrawn result (projection3x4 is null) is published when the
+	 * pairs of the session no longer yield a projection (e.g. after an
+	 * undo): projection then holds the calibration the eye had before
+	 * the session, or is null if it had none.
+	 *******************************************************************/
+	public static final class Result {
+		public final boolean eye;
+		public final float[] projection;
+		public final double[] projection3x4;
+		public final ClipPlanes clipPlanes;
+		public final double looRms;
+		final int generation;
+
+		Result(int generation, boolean eye, float[] projection, double[] projection3x4, ClipPlanes clipPlanes, double looRms)
+		{
+			this.generation = generation;
+			this.eye = eye;
+			this.projection = projection;
+			this.projection3x4 = projection3x4;
+			this.clipPlanes = clipPlanes;
+			this.looRms = looRms;
+		}
+
+		//true if the session's result was withdrawn, see above//
+		public boolean isWithdrawn() { return projection3x4 == null; }
+	}
+
+	//A snapshot of the correspondence pairs of one session//
+	private static final class Request {
+		final int generation;
+		final int session;
+		final boolean eye;
+		final File calibFile;
+		final CorrespondenceBuffer points;
+
+		Request(int generation, int session, boolean eye, File calibFile, CorrespondenceBuffer points)
+		{
+			this.generation = generation;
+			this.session = session;
+			this.eye = eye;
+			this.calibFile = calibFile;
+			this.points = points;
+		}
+	}
+
+	//A streaming capture session and its sample ring (written by the renderer, read by the worker)//
+	private static final class Stream {
+		static final int CAPACITY = 1024;
+
+		final int generation;
+		final boolean eye;
+		final File calibFile;
+		//wx, wy, wz, sx, sy and weight per sample//
+		final double[] ring = new double[6 * CAPACITY];
+		volatile long head = 0;
+		volatile long tail = 0;
+		volatile long saveRequest = 0;
+		long saved = 0;
+		//samples the renderer could not queue because the ring was full (only the renderer writes it),//
+		//reported by the worker when the result is saved//
+		volatile long dropped = 0;
+		long reported = 0;
+
+		Stream(int generation, boolean eye, File calibFile)
+		{
+			this.generation = generation;
+			this.eye = eye;
+			this.calibFile = calibFile;
+		}
+	}
+
+	////Handoff between the renderer and the worker thread////
+	private final AtomicInteger generation = new AtomicInteger();
+	//Incremented by cancel( ), i.e. whenever the renderer starts a new session//
+	private final AtomicInteger session = new AtomicInteger();
+	private final AtomicReference<Request> pending = new AtomicReference<Request>();
+	private final AtomicReference<Result> published = new AtomicReference<Result>();
+	private final AtomicReference<Stream> stream = new AtomicReference<Stream>();
+	private final Thread thread;
+	private volatile boolean running = true;
+	private volatile boolean refine = true;
+	//Fixed clip planes of the application, null derives them from the depth of the recorded points//
+	private volatile ClipPlanes clipProfile = null;
+	//Earlier 3x4 projection of the quick recalibration mode, null for a full calibration//
+	private volatile double[] posePrior = null;
+	//Prior of the full calibration (earlier or population calibration), null for the plain DLT//
+	private volatile ProjectionPrior projectionPrior = null;
+
+	////Solver state, only touched by the worker thread////
+	private final SPAAM_SVD svd = new SPAAM_SVD();
+	private Stream folding = null;
+	private final ReprojectionRefiner refiner = new ReprojectionRefiner();
+	private final LeaveOneOutValidator validator = new LeaveOneOutValidator();
+	private final PoseSolver poseSolver = new PoseSolver();
+	private double[] appliedPrior = null;
+	private final ReprojectionRefiner mapRefiner = new ReprojectionRefiner();
+	//Bounds of the world points of the stream being folded, for its clip planes//
+	private final double[] streamMin = new double[3];
+	private final double[] streamMax = new double[3];
+	//Calibration the eye had before the tap session wrote its first result (null if none), restored//
+	//when the session's pairs no longer yield a projection//
+	private int baselineSession = -1;
+	private float[] baseline = null;
+	private boolean baselineKnown = false;
+	private boolean sessionModified = false;
+
+	public SolverWorker()
+	{
+		thread = new Thread(this, "SPAAM Solver");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	//Enables the reprojection error refinement of every DLT result//
+	public void setRefine(boolean refine)
+	{
+		this.refine = refine;
+	}
+
+	//Sets fixed clip planes (a per application profile) for all further results, null to derive//
+	//them from the depth range of the recorded world points//
+	public void setClipPlanes(ClipPlanes profile)
+	{
+		clipProfile = profile;
+	}
+
+	//Enables the quick recalibration mode: the intrinsics of the passed in 3x4 projection (an//
+	//earlier calibration of the eye) are kept and only the eye pose is solved, from 3 taps on.//
+	//null returns to the full calibration. Applies to requests submitted afterwards.//
+	public void setPosePrior(double[] projection3x4)
+	{
+		posePrior = projection3x4 == null ? null : projection3x4.clone();
+	}
+
+	//Regularizes the full calibration with a prior (e.g. from the last Left.calib/Right.calib or a//
+	//population average), which gives a MAP estimate from the first taps on that sharpens as more//
+	//pairs arrive. The estimate is published from the first tap but only written to the calibration//
+	//file once the pairs are well conditioned on their own (see process( )). null returns to the//
+	//plain DLT. Applies to requests submitted afterwards.//
+	public void setProjectionPrior(ProjectionPrior prior)
+	{
+		projectionPrior = prior;
+	}
+
+	/****************************************************************
+	 * @param eye - the eye the pairs were recorded for
+	 * @param calibFile - file the result is written to (may be null)
+	 * @param points - the pairs recorded so far, copied before returning
+	 *
+	 * Queues a solve of the passed in pairs, superseding any solve
+	 * that has not finished yet.
+	 ***************************************************************/
+	public void submit(boolean eye, File calibFile, CorrespondenceBuffer points)
+	{
+		final CorrespondenceBuffer snapshot = new CorrespondenceBuffer(points.size());
+		snapshot.addAll(points);
+		stream.set(null);
+		pending.set(new Request(generation.incrementAndGet(), session.get(), eye, calibFile, snapshot));
+		LockSupport.unpark(thread);
+	}
+
+	/****************************************************************
+	 * @param eye - the eye the samples are streamed for
+	 * @param calibFile - file the result is written to by save( ) (may be null)
+	 *
+	 * Starts a streaming capture session, superseding any solve or
+	 * stream that has not finished yet.
+	 ***************************************************************/
+	public void beginStream(boolean eye, File calibFile)
+	{
+		pending.set(null);
+		stream.set(new Stream(generation.incrementAndGet(), eye, calibFile));
+		LockSupport.unpark(thread);
+	}
+
+	//Queues one sample of the current streaming session (renderer thread only)//
+	//Returns false if there is no session or the sample had to be dropped//
+	public boolean stream(double wx, double wy, double wz, double sx, double sy)
+	{
+		return stream(wx, wy, wz, sx, sy, 1.0);
+	}
+
+	//Queues one sample with a confidence weight (see WeightPolicy)//
+	public boolean stream(double wx, double wy, double wz, double sx, double sy, double weight)
+	{
+		final Stream s = stream.get();
+		if ( s == null )
+			return false;
+		final long head = s.head;
+		if ( head - s.tail >= Stream.CAPACITY )
+		{
+			s.dropped++;
+			return false;
+		}
+		final int o = 6 * (int)( head % Stream.CAPACITY );
+		s.ring[o] = wx; s.ring[o + 1] = wy; s.ring[o + 2] = wz;
+		s.ring[o + 3] = sx; s.ring[o + 4] = sy; s.ring[o + 5] = weight;
+		s.head = head + 1;
+		LockSupport.unpark(thread);
+		return true;
+	}
+
+	//Asks the worker to write the newest streaming result to the session's file//
+	public void save()
+	{
+		final Stream s = stream.get();
+		if ( s == null )
+			return;
+		s.saveRequest = s.head;
+		LockSupport.unpark(thread);
+	}
+
+	//Drops any pending or running solve, streaming session and any result not yet picked up//
+	public void cancel()
+	{
+		session.incrementAndGet();
+		generation.incrementAndGet();
+		pending.set(null);
+		stream.set(null);
+		published.set(null);
+	}
+
+	//Returns the newest finished projection (once), or null if there is none//
+	public Result poll()
+	{
+		final Result result = published.getAndSet(null);
+		if ( result == null || result.generation != generation.get() )
+			return null;
+		return result;
+	}
+
+	//Stops the worker thread//
+	public void shutdown()
+	{
+		running = false;
+		cancel();
+		LockSupport.unpark(thread);
+	}
+
+	@Override
+	public void run()
+	{
+		while ( running )
+		{
+			//A failed solve must not end the thread, or no later tap would ever be solved//
+			final Request request = pending.getAndSet(null);
+			if ( request != null )
+			{
+				try {
+					process(request);
+				} catch (RuntimeException e) {
+					Log.e(TAG, "Solve of a request failed", e);
+				}
+				continue;
+			}
+			final Stream s = stream.get();
+			try {
+				if ( s != null && drain(s) )
+					continue;
+			} catch (RuntimeException e) {
+				//drop the stream rather than failing on the same samples again//
+				Log.e(TAG, "Solve of the stream failed, stream dropped", e);
+				stream.compareAndSet(s, null);
+				folding = null;
+				continue;
+			}
+			LockSupport.park(this);
+		}
+	}
+
+	//A request is stale as soon as a newer one has been submitted (or the session was reset)//
+	private boolean superseded(Request request)
+	{
+		return request.generation != generation.get();
+	}
+
+	/****************************************************************
+	 * Folds the queued samples of the stream into the streaming normal
+	 * equations, publishes the updated projection and writes it if a
+	 * save was requested. Returns false if there was nothing to do.
+	 ***************************************************************/
+	private boolean drain(Stream s)
+	{
+		if ( folding != s )
+		{
+			svd.clearStreaming();
+			folding = s;
+			for ( int k = 0; k < 3; k++ )
+			{
+				streamMin[k] = Double.POSITIVE_INFINITY;
+				streamMax[k] = Double.NEGATIVE_INFINITY;
+			}
+		}
+
+		final long head = s.head;
+		long tail = s.tail;
+		final boolean save = s.saveRequest > s.saved && s.saveRequest <= head;
+		if ( tail == head && !save )
+			return false;
+		for ( ; tail < head; tail++ )
+		{
+			final int o = 6 * (int)( tail % Stream.CAPACITY );
+			svd.addStreamingSample(s.ring[o], s.ring[o + 1], s.ring[o + 2], s.ring[o + 3], s.ring[o + 4], s.ring[o + 5]);
+			for ( int k = 0; k < 3; k++ )
+			{
+				streamMin[k] = Math.min(streamMin[k], s.ring[o + k]);
+				streamMax[k] = Math.max(streamMax[k], s.ring[o + k]);
+			}
+		}
+		s.tail = tail;
+		if ( save )
+		{
+			s.saved = s.saveRequest;
+			final long dropped = s.dropped;
+			if ( dropped > s.reported )
+			{
+				Log.w(TAG, ( dropped - s.reported ) + " streamed samples dropped since the last save, the solver fell behind");
+				s.reported = dropped;
+			}
+		}
+
+		//A minimum of 6 samples is required//
+		if ( !svd.projectionDLTStreaming() || s.generation != generation.get() )
+			return true;
+		final double[] projection3x4 = new double[12];
+		svd.getProjection(projection3x4);
+		final ClipPlanes planes = clipProfile != null ? clipProfile
+				: ClipPlanes.fromBounds(projection3x4, streamMin, streamMax, ClipPlanes.DEFAULT_MARGIN, ClipPlanes.LEGACY);
+		final float[] projection = buildProjection(projection3x4, planes);
+		published.set(new Result(s.generation, s.eye, projection, projection3x4, planes, Double.NaN));
+
+		if ( !save || s.calibFile == null || s.generation != generation.get() )
+			return true;
+		try {
+			OGLESRenderer.WriteFileFunc(s.calibFile, storedProjection(projection3x4, planes, projection));
+		} catch (IOException e) {
+			Log.e(TAG, "Could not write " + s.calibFile.getAbsolutePath(), e);
+		}
+		return true;
+	}
+
+	private void process(Request request)
+	{
+		//Snapshots usually extend or shorten (undo) the previous one, so only the pairs past the//
+		//common prefix are downdated out of and folded into the solver's normal equations//
+		final CorrespondenceBuffer points = request.points;
+		final CorrespondenceBuffer current = svd.corr_points;
+		int keep = 0;
+		final int limit = Math.min(current.size(), points.size());
+		while ( keep < limit && current.worldX(keep) == points.worldX(keep) && current.worldY(keep) == points.worldY(keep)
+				&& current.worldZ(keep) == points.worldZ(keep) && current.screenX(keep) == points.screenX(keep)
+				&& current.screenY(keep) == points.screenY(keep) && current.weight(keep) == points.weight(keep) )
+			keep++;
+		svd.truncateCorrespondences(keep);
+		for ( int i = keep; i < points.size(); i++ )
+			svd.addCorrespondence(points.worldX(i), points.worldY(i), points.worldZ(i), points.screenX(i), points.screenY(i),
+					points.weight(i));
+
+		//Each mode applies its own minimum, below it (e.g. after an undo) the session's result is withdrawn//
+		boolean solved;
+		boolean persist = true;
+		final double[] prior = posePrior;
+		if ( prior != null )
+		{
+			//Quick recalibration, only the eye pose is solved (a minimum of 3 points is required)//
+			if ( prior != appliedPrior )
+			{
+				appliedPrior = poseSolver.setPrior(prior) ? prior : null;
+				if ( appliedPrior == null )
+					Log.e(TAG, "The prior calibration cannot be decomposed");
+			}
+			//Without a usable prior nothing is published (the pose would be solved from a stale one)//
+			solved = appliedPrior != null && svd.projectionPoseOnly(poseSolver);
+		}
+		else if ( projectionPrior != null )
+		{
+			//MAP estimate, the prior stands in for the pairs not recorded yet (and for degenerate ones)//
+			mapRefiner.setPrior(projectionPrior, TAP_SIGMA);
+			solved = svd.projectionMAP(mapRefiner);
+			//A result leaning mostly on the prior is only shown, the stored calibration is replaced once the//
+			//taps alone constrain the projection (6 well spread pairs)//
+			persist = svd.isWellConditioned();
+		}
+		else
+		{
+			//Degenerate pairs (e.g. all recorded at the same distance) would give an arbitrary matrix,//
+			//which must neither be shown nor overwrite the stored calibration//
+			if ( points.size() >= 6 && !svd.isWellConditioned() )
+			{
+				Log.i(TAG, "Pairs do not constrain the projection yet (spread condition world "
+						+ svd.getConditioning().worldCondition() + ", screen " + svd.getConditioning().screenCondition() + ")");
+			}
+			//Call the SVD function, a minimum of 6 points is required//
+			solved = svd.projectionDLTIncremental();
+			//Polish the DLT result by minimizing the reprojection error//
+			if ( solved && refine && !superseded(request) )
+				svd.refineProjection(refiner);
+		}
+		if ( superseded(request) )
+			return;
+		if ( !solved )
+		{
+			withdraw(request);
+			return;
+		}
+		rememberBaseline(request);
+
+		final double[] projection3x4 = new double[12];
+		svd.getProjection(projection3x4);
+		final ClipPlanes planes = clipProfile != null ? clipProfile
+				: ClipPlanes.fromPoints(projection3x4, svd.corr_points, ClipPlanes.DEFAULT_MARGIN, ClipPlanes.LEGACY);
+		final float[] projection = buildProjection(projection3x4, planes);
+
+		//Leave-one-out error of the taps so far, tells whether more crosses are worth collecting//
+		final double looRms = validator.validate(svd.corr_points) ? validator.getLooRms() : Double.NaN;
+		published.set(new Result(request.generation, request.eye, projection, projection3x4, planes, looRms));
+
+		//write the calibration results (and the pairs, for later analysis) to the proper files//
+		if ( request.calibFile == null || !persist || superseded(request) )
+			return;
+		try {
+			OGLESRenderer.WriteFileFunc(request.calibFile, storedProjection(projection3x4, planes, projection));
+			CalibrationFile.writeSession(sessionFile(request.calibFile), svd.corr_points);
+		} catch (IOException e) {
+			Log.e(TAG, "Could not write " + request.calibFile.getAbsolutePath(), e);
+		}
+	}
+
+	//Reads the calibration the eye has before the first result of a tap session replaces it//
+	private void rememberBaseline(Request request)
+	{
+		if ( request.session == baselineSession )
+		{
+			sessionModified = true;
+			return;
+		}
+		baselineSession = request.session;
+		baseline = null;
+		baselineKnown = true;
+		if ( request.calibFile != null )
+		{
+			try {
+				final float[] stored = new float[16];
+				if ( CalibrationFile.readProjection(request.calibFile, stored) )
+					baseline = stored;
+			} catch (IOException e) {
+				//never clear a file whose content is unknown//
+				baselineKnown = false;
+				Log.e(TAG, "Could not read " + request.calibFile.getAbsolutePath(), e);
+			}
+		}
+		sessionModified = true;
+	}
+
+	//Withdraws the result of the session (if it published one): the renderer and the calibration//
+	//file return to the calibration the eye had before the session//
+	private void withdraw(Request request)
+	{
+		if ( request.session != baselineSession || !sessionModified )
+			return;
+		sessionModified = false;
+		published.set(new Result(request.generation, request.eye, baseline, null, null, Double.NaN));
+
+		if ( request.calibFile == null || !baselineKnown || superseded(request) )
+			return;
+		try {
+			if ( baseline != null )
+				OGLESRenderer.WriteFileFunc(request.calibFile, baseline);
+			else
+				CalibrationFile.clearProjection(request.calibFile);
+			CalibrationFile.writeSession(sessionFile(request.calibFile), svd.corr_points);
+		} catch (IOException e) {
+			Log.e(TAG, "Could not write " + request.calibFile.getAbsolutePath(), e);
+		}
+	}
+
+	//Build the OpenGL 4x4 projection matrix for the 960x540 screen with the given clip planes,//
+	//a new array since it is handed to the renderer inside an immutable Result//
+	private static float[] buildProjection(double[] projection3x4, ClipPlanes planes)
+	{
+		final float[] projection = new float[16];
+		GLProjection.buildProjection(projection3x4, 0, 960, 540, 0, planes.near(), planes.far(), projection, 0);
+		return projection;
+	}
+
+	//The matrix written to the calibration file. Other programs use the file directly as their projection,//
+	//so it keeps the application's fixed planes (or the former 0.1 to 100) instead of the depth range of//
+	//the recorded points, which only serves the rendering in the app//
+	private float[] storedProjection(double[] projection3x4, ClipPlanes planes, float[] projection)
+	{
+		final ClipPlanes stored = clipProfile != null ? clipProfile : ClipPlanes.LEGACY;
+		return stored == planes ? projection : buildProjection(projection3x4, stored);
+	}
+
+	//Left.calib -> Left.session//
+	private static File sessionFile(File calibFile)
+	{
+		final String name = calibFile.getName();
+		final int dot = name.lastIndexOf('.');
+		return new File(calibFile.getParentFile(), ( dot < 0 ? name : name.substring(0, dot) ) + ".session");
+	}
+}
@@ -23,6 +23,8 @@ import static android.opengl.GLES20.glDeleteProgram;
 import static android.opengl.GLES20.glValidateProgram;
 import static android.opengl.GLES20.GL_VALIDATE_STATUS;
 
+import com.spaam.util.GLProjection;
+
 
 /*******************************************************************
  * Interface for loading shader files, compiling shader code,
@@ -107,15 +109,10 @@ public class ShaderHelper {
 	 * @param near - value representing the near plane
 	 * @param far - value representing the far plane
 	 * Returns an orthographic matrix with the passed in values for near and far clip plane
-	 * and screen resolutions
+	 * and screen resolutions (see com.spaam.util.GLProjection in the spaam-core module)
 	 ***********************************************************/
 	public static float[] createOrthoMatrix( float[] ortho, int left, int right, int top, int bottom, float near, float far){
-		ortho[0] = 2.0f/(right - left); ortho[1] = 0.0f; ortho[2] = 0.0f; ortho[3] = (right + left)/(left - right);
-		ortho[4] = 0.0f; ortho[5] = 2.0f/(top - bottom); ortho[6] = 0.0f; ortho[7] = (top + bottom)/(bottom - top);
-		ortho[8] = 0.0f; ortho[9] = 0.0f; ortho[10] = 2.0f/(near - far); ortho[11] = (far + near)/(near - far);
-		ortho[12] = 0.0f; ortho[13] = 0.0f; ortho[14] = 0.0f; ortho[15] = 1.0f;
-		
-		return ortho;
+		return GLProjection.createOrthoMatrix(ortho, left, right, top, bottom, near, far);
 	}
 	
 	/***********************************************************
@@ -126,30 +123,11 @@ public class ShaderHelper {
 	 * Combines an orthographic matrix with a 3x4 projection amtrix to produce a 4x4 projection matrix used by OpenGL
 	 **********************************************************/
 	public static float[] create4x4Projection( float[] proj3x4, float[] proj4x4, float near, float far ){
-		//Create Needed Extra Values to expand 3x4 to 4x4//
-		double norm = java.lang.Math.sqrt(proj3x4[0]*proj3x4[0] + proj3x4[1]*proj3x4[1] + proj3x4[2]*proj3x4[2]);
-		double add = near*far*norm;
-		double mult = (-far - near);
-		
-		//Copy Unchanged Values//
-		proj4x4[0] = proj3x4[0]; proj4x4[1] = proj3x4[1]; proj4x4[2] = proj3x4[2]; proj4x4[3] = proj3x4[3];
-		proj4x4[4] = proj3x4[4]; proj4x4[5] = proj3x4[5]; proj4x4[6] = proj3x4[6]; proj4x4[7] = proj3x4[7];
-		proj4x4[8] = proj3x4[8]; proj4x4[9] = proj3x4[9]; proj4x4[10] = proj3x4[10]; proj4x4[11] = proj3x4[11];
-		proj4x4[12] = proj3x4[8]; proj4x4[13] = proj3x4[9]; proj4x4[14] = proj3x4[10]; proj4x4[15] = proj3x4[11];
-		
-		//Modify New Values;
-		proj4x4[8] *= mult; proj4x4[9] *= mult; proj4x4[10] *= mult; proj4x4[11] *= mult; proj4x4[11] += add;
-		
-		return proj4x4;
+		return GLProjection.create4x4Projection(proj3x4, proj4x4, near, far);
 	}
 	
 	//Helper function to transpose a matrix (from row major to column major ro vice versa//
 	public static float[] transposeMatrix(float [] m){
-        float[] temp = new float[m.length];
-        temp[0] = m[0]; temp[1] = m[4]; temp[2] = m[8]; temp[3] = m[12];
-		temp[4] = m[1]; temp[5] = m[5]; temp[6] = m[9]; temp[7] = m[13];
-		temp[8] = m[2]; temp[9] = m[6]; temp[10] = m[10]; temp[11] = m[14];
-		temp[12] = m[3]; temp[13] = m[7]; temp[14] = m[11]; temp[15] = m[15];
-        return temp;
-    }
+		return GLProjection.transposeMatrix(m);
+	}
 }